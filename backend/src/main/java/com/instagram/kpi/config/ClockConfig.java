@@ -0,0 +1,16 @@
+package com.instagram.kpi.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Clock;
+
+// Time source for scheduling decisions, replaceable with a fixed or virtual clock in tests
+@Configuration
+public class ClockConfig {
+
+    @Bean
+    public Clock clock() {
+        return Clock.systemDefaultZone();
+    }
+}
@@ -0,0 +1,27 @@
+package com.instagram.kpi.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * Fork/join pool MediaPageMapper decodes large media pages on. It is separate from the common
+ * pool so its size is set here rather than by whatever else runs in the JVM, and
+ * instagram.refresh.decode-parallelism=0 sizes it to the available cores.
+ */
+@Configuration
+public class MediaDecodePoolConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    public ForkJoinPool mediaDecodePool(@Value("${instagram.refresh.decode-parallelism:0}") int parallelism) {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        return new ForkJoinPool(threads, pool -> {
+            ForkJoinWorkerThread worker = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            worker.setName("media-decode-" + worker.getPoolIndex());
+            return worker;
+        }, null, false);
+    }
+}
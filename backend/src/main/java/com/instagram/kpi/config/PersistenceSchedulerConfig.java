@@ -0,0 +1,32 @@
+package com.instagram.kpi.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Scheduler the ingestion pipelines move their blocking JPA work onto: a bounded elastic pool
+ * of at most instagram.refresh.max-concurrency platform threads, so ingestion never asks for
+ * more connections than it is meant to take from the Hikari pool. It stays on platform threads
+ * with spring.threads.virtual.enabled too. Request virtual threads queue on the carriers in
+ * arrival order, and when reads saturate the CPU a persistence task queued behind them waited
+ * seconds for its turn; the OS scheduler gives these threads their share instead.
+ */
+@Configuration
+public class PersistenceSchedulerConfig {
+    private static final Logger log = LoggerFactory.getLogger(PersistenceSchedulerConfig.class);
+
+    @Bean(destroyMethod = "dispose")
+    public Scheduler persistenceScheduler(@Value("${instagram.refresh.max-concurrency:4}") int maxConcurrency,
+                                          @Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize) {
+        if (maxConcurrency >= poolSize) {
+            log.warn("instagram.refresh.max-concurrency ({}) leaves no room in the Hikari pool ({}) for request handling",
+                maxConcurrency, poolSize);
+        }
+        return Schedulers.newBoundedElastic(maxConcurrency, 1000, "instagram-persist");
+    }
+}
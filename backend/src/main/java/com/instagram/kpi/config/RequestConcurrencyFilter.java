@@ -0,0 +1,69 @@
+package com.instagram.kpi.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caps the /api requests in flight when they run on virtual threads. Tomcat no longer bounds
+ * them by its worker pool, so without a cap readers take every Hikari connection and the
+ * ingestion persistence stage waits behind them. By default the cap is what the pool has left
+ * after instagram.refresh.max-concurrency, so ingestion always finds its connections. Waiting
+ * requests park on the semaphore rather than in Hikari and get a 503 after the connection timeout.
+ */
+@Component
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class RequestConcurrencyFilter extends OncePerRequestFilter {
+    private static final Logger log = LoggerFactory.getLogger(RequestConcurrencyFilter.class);
+
+    private final Semaphore permits;
+    private final long waitMs;
+
+    public RequestConcurrencyFilter(@Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize,
+                                    @Value("${instagram.refresh.max-concurrency:4}") int ingestionConcurrency,
+                                    @Value("${dashboard.request-concurrency:0}") int requestConcurrency,
+                                    @Value("${spring.datasource.hikari.connection-timeout:30000}") long waitMs) {
+        int limit = requestConcurrency > 0 ? requestConcurrency : Math.max(poolSize - ingestionConcurrency, 1);
+        this.permits = new Semaphore(limit, true);
+        this.waitMs = waitMs;
+        log.info("At most {} API requests run at once", limit);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(waitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value());
+            return;
+        }
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            permits.release();
+        }
+    }
+}
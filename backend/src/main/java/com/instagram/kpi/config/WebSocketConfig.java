@@ -1,20 +1,36 @@
 package com.instagram.kpi.config;
 
+import com.instagram.kpi.service.KpiMetrics;
+import com.instagram.kpi.service.KpiSubscriptionRegistry;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.socket.server.HandshakeInterceptor;
 
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     private final String[] allowedOrigins;
+    private final KpiMetrics metrics;
+    private final KpiSubscriptionRegistry subscriptions;
 
     public WebSocketConfig(
-            @Value("${spring.websocket.allowed-origins:http://localhost:3000}") String allowedOrigins) {
+            @Value("${spring.websocket.allowed-origins:http://localhost:3000}") String allowedOrigins,
+            KpiMetrics metrics,
+            KpiSubscriptionRegistry subscriptions) {
+        this.metrics = metrics;
+        this.subscriptions = subscriptions;
         this.allowedOrigins = java.util.Arrays.stream(allowedOrigins.split(","))
                 .map(String::trim)
                 .filter(origin -> !origin.isEmpty())
@@ -32,6 +48,42 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         registry.addEndpoint("/ws/kpi")
                 .setAllowedOrigins(allowedOrigins)
                 .withSockJS();
+        // Plain WebSocket endpoint for clients that subscribe with a binary payload encoding
+        registry.addEndpoint("/ws/kpi-binary")
+                .setAllowedOrigins(allowedOrigins)
+                .addInterceptors(new HandshakeInterceptor() {
+                    @Override
+                    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                                   WebSocketHandler wsHandler, java.util.Map<String, Object> attributes) {
+                        attributes.put(KpiSubscriptionRegistry.BINARY_FRAMES_ATTRIBUTE, Boolean.TRUE);
+                        return true;
+                    }
+
+                    @Override
+                    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                               WebSocketHandler wsHandler, Exception exception) {
+                    }
+                });
+    }
+
+    // Routes SUBSCRIBE frames to the destination of the payload encoding they ask for
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.interceptors(subscriptions);
+    }
+
+    // Every message the broker fans out to a session passes here with its serialized body
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.interceptors(new ChannelInterceptor() {
+            @Override
+            public Message<?> preSend(Message<?> message, MessageChannel channel) {
+                if (message.getPayload() instanceof byte[] payload) {
+                    metrics.payloadSent(payload.length);
+                }
+                return message;
+            }
+        });
     }
 
     @Override
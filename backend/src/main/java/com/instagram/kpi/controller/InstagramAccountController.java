@@ -0,0 +1,68 @@
+package com.instagram.kpi.controller;
+
+import com.instagram.kpi.model.InstagramAccount;
+import com.instagram.kpi.service.InstagramAccountRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/instagram/accounts")
+public class InstagramAccountController {
+    public static final String ADMIN_KEY_HEADER = "X-Admin-Key";
+
+    private final InstagramAccountRegistry accounts;
+    private final byte[] adminKey;
+
+    public InstagramAccountController(InstagramAccountRegistry accounts,
+                                      @Value("${instagram.accounts.admin-key:}") String adminKey) {
+        this.accounts = accounts;
+        this.adminKey = adminKey.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public record AccountRegistration(String accountId, String name, String accessToken) {
+    }
+
+    // Tokens are never serialized, only ids, names and the outcome of the last refresh
+    @GetMapping
+    public List<InstagramAccount> getAccounts() {
+        return accounts.findAll();
+    }
+
+    @PostMapping
+    public ResponseEntity<InstagramAccount> registerAccount(@RequestHeader(name = ADMIN_KEY_HEADER, required = false) String key,
+                                                            @RequestBody AccountRegistration registration) {
+        if (!authorized(key)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        try {
+            return ResponseEntity.status(HttpStatus.CREATED)
+                .body(accounts.register(registration.accountId(), registration.name(), registration.accessToken()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    // Stops refreshing the account; its stored data is kept
+    @DeleteMapping("/{accountId}")
+    public ResponseEntity<Void> disableAccount(@RequestHeader(name = ADMIN_KEY_HEADER, required = false) String key,
+                                               @PathVariable String accountId) {
+        if (!authorized(key)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return accounts.disable(accountId)
+            ? ResponseEntity.noContent().build()
+            : ResponseEntity.notFound().build();
+    }
+
+    // Without a configured key nobody may change accounts; the comparison takes the same time for any wrong key
+    private boolean authorized(String key) {
+        return adminKey.length > 0 && key != null
+            && MessageDigest.isEqual(adminKey, key.getBytes(StandardCharsets.UTF_8));
+    }
+}
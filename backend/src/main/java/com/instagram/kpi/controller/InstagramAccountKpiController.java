@@ -1,25 +1,78 @@
 package com.instagram.kpi.controller;
 
-import com.instagram.kpi.model.InstagramAccountKpi;
+import com.instagram.kpi.model.AccountKpiSeries;
 import com.instagram.kpi.repository.InstagramAccountKpiRepository;
+import com.instagram.kpi.service.DashboardResponseCache;
+import com.instagram.kpi.service.DashboardResponseCache.CachedResponse;
+import com.instagram.kpi.service.InstagramAccountRegistry;
+import com.instagram.kpi.service.KpiRollupStore;
+import com.instagram.kpi.service.KpiRollupStore.Bucket;
+import com.instagram.kpi.service.KpiRollupStore.Metric;
+import com.instagram.kpi.service.KpiRollupStore.Rollup;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.List;
 
 @RestController
 @RequestMapping("/api/instagram/account-kpis")
 public class InstagramAccountKpiController {
     private final InstagramAccountKpiRepository kpiRepository;
+    private final DashboardResponseCache responseCache;
+    private final KpiRollupStore rollupStore;
+    private final InstagramAccountRegistry accounts;
 
-    public InstagramAccountKpiController(InstagramAccountKpiRepository kpiRepository) {
+    public InstagramAccountKpiController(InstagramAccountKpiRepository kpiRepository,
+                                         DashboardResponseCache responseCache,
+                                         KpiRollupStore rollupStore,
+                                         InstagramAccountRegistry accounts) {
         this.kpiRepository = kpiRepository;
+        this.responseCache = responseCache;
+        this.rollupStore = rollupStore;
+        this.accounts = accounts;
     }
 
+    // Columnar daily KPIs for an inclusive date range, e.g. ?from=2024-01-01&to=2024-03-31; defaults to the last 30 days
     @GetMapping
-    public ResponseEntity<List<InstagramAccountKpi>> getAllAccountKpis() {
-        return ResponseEntity.ok(kpiRepository.findAll());
+    public ResponseEntity<byte[]> getAccountKpis(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) String accountId) {
+        String account = accounts.resolve(accountId);
+        LocalDate end = to != null ? to : LocalDate.now();
+        LocalDate start = from != null ? from : AccountKpiSeries.defaultFrom(end);
+        if (start.isAfter(end)) {
+            return ResponseEntity.badRequest().build();
+        }
+        CachedResponse cached = responseCache.get("account-kpis:" + account + ":" + start + ":" + end,
+            key -> new CachedResponse(responseCache.toJson(AccountKpiSeries.of(start, end,
+                kpiRepository.findByAccountIdAndDateBetweenOrderByDateAsc(account, start, end))), null));
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(cached.body());
     }
-} 
\ No newline at end of file
+
+    // Rollups cover the primary account, e.g. /rollup?bucket=week&metrics=reach,newFollowers&from=2024-01-01&to=2024-06-30&window=4
+    // The range is clamped to the stored days; more than KpiRollupStore.MAX_BUCKETS buckets or a window above MAX_WINDOW is a 400
+    @GetMapping("/rollup")
+    public ResponseEntity<Rollup> getRollup(
+            @RequestParam(defaultValue = "week") String bucket,
+            @RequestParam(required = false) List<String> metrics,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "0") int window) {
+        try {
+            List<Metric> selected = metrics == null || metrics.isEmpty()
+                ? Arrays.asList(Metric.values())
+                : metrics.stream().map(Metric::parse).toList();
+            return ResponseEntity.ok(rollupStore.rollup(Bucket.parse(bucket), selected, from, to, window));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+}
@@ -1,23 +1,48 @@
 package com.instagram.kpi.controller;
 
 import com.instagram.kpi.model.InstagramPost;
-import com.instagram.kpi.model.InstagramStory;
 import com.instagram.kpi.repository.InstagramStoryRepository;
+import com.instagram.kpi.service.DashboardResponseCache;
+import com.instagram.kpi.service.DashboardResponseCache.CachedResponse;
+import com.instagram.kpi.service.DataVersionTracker;
+import com.instagram.kpi.service.InstagramAccountRegistry;
 import com.instagram.kpi.service.InstagramService;
 // import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import reactor.core.publisher.Mono;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 public class InstagramController {
+    private static final Logger log = LoggerFactory.getLogger(InstagramController.class);
+
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final InstagramService instagramService;
     private final InstagramStoryRepository storyRepository;
+    private final DataVersionTracker versionTracker;
+    private final DashboardResponseCache responseCache;
+    private final InstagramAccountRegistry accounts;
 
-    public InstagramController(InstagramService instagramService, InstagramStoryRepository storyRepository) {
+    public InstagramController(InstagramService instagramService, InstagramStoryRepository storyRepository,
+                               DataVersionTracker versionTracker, DashboardResponseCache responseCache,
+                               InstagramAccountRegistry accounts) {
         this.instagramService = instagramService;
         this.storyRepository = storyRepository;
+        this.versionTracker = versionTracker;
+        this.responseCache = responseCache;
+        this.accounts = accounts;
     }
 
     @GetMapping("/")
@@ -26,8 +51,87 @@ public class InstagramController {
     }
 
     @GetMapping("/api/instagram/posts")
-    public ResponseEntity<List<InstagramPost>> getAllPosts() {
-        return ResponseEntity.ok(instagramService.getAllPosts());
+    public ResponseEntity<byte[]> getAllPosts(
+            @RequestParam(required = false) List<String> fields,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "500") int limit,
+            @RequestParam(required = false) String accountId,
+            WebRequest webRequest) {
+        String account = accounts.resolve(accountId);
+        String pageKey = postsPageKey(account, fields, after, limit);
+        // The version is held in memory, so a matching If-None-Match is answered without a query
+        String etag = "\"" + versionTracker.postsVersion() + "-" + sha256(pageKey) + "\"";
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+
+        CachedResponse cached;
+        try {
+            cached = responseCache.get("posts:" + pageKey, key -> {
+                List<Map<String, Object>> page = instagramService.getPostsPage(account, fields, after, limit);
+                String nextCursor = page.size() == Math.min(Math.max(limit, 1), InstagramService.MAX_POSTS_PAGE_SIZE)
+                    ? InstagramService.postsCursor(page.get(page.size() - 1))
+                    : null;
+                return new CachedResponse(responseCache.toJson(page), nextCursor);
+            });
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().eTag(etag).contentType(MediaType.APPLICATION_JSON);
+        if (cached.nextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, cached.nextCursor());
+        }
+        return response.body(cached.body());
+    }
+
+    // Every parameter length-prefixed, so no two requests for different pages share a key
+    static String postsPageKey(String account, List<String> fields, String after, int limit) {
+        StringBuilder key = new StringBuilder();
+        appendPart(key, account);
+        if (fields == null) {
+            key.append('-');
+        } else {
+            key.append(fields.size()).append('[');
+            fields.forEach(field -> appendPart(key, field));
+        }
+        appendPart(key, after);
+        return key.append(limit).toString();
+    }
+
+    private static void appendPart(StringBuilder key, String value) {
+        if (value == null) {
+            key.append("-;");
+        } else {
+            key.append(value.length()).append(':').append(value).append(';');
+        }
+    }
+
+    private static String sha256(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // e.g. /api/instagram/posts/top?metric=engagementRate&limit=20
+    @GetMapping("/api/instagram/posts/top")
+    public ResponseEntity<byte[]> getTopPosts(
+            @RequestParam(defaultValue = "engagementRate") String metric,
+            @RequestParam(defaultValue = "10") int limit,
+            @RequestParam(required = false) String accountId) {
+        String account = accounts.resolve(accountId);
+        CachedResponse cached;
+        try {
+            cached = responseCache.get("posts-top:" + account + ":" + metric + ":" + limit, key ->
+                new CachedResponse(responseCache.toJson(instagramService.getTopPosts(account, metric, limit)), null));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(cached.body());
     }
 
     @GetMapping("/api/instagram/posts/{postId}")
@@ -36,15 +140,31 @@ public class InstagramController {
     }
 
     @PostMapping("/api/instagram/refresh")
-    public ResponseEntity<Void> refreshPosts() {
-        instagramService.refreshAllData();
-        return ResponseEntity.ok().build();
+    public Mono<ResponseEntity<Void>> refreshPosts() {
+        // Returned asynchronously so the Tomcat worker is released while the Graph API calls run
+        return instagramService.refreshAllDataAsync()
+            .then(Mono.fromSupplier(() -> ResponseEntity.ok().<Void>build()));
+    }
+
+    @PostMapping("/api/instagram/backfill")
+    public ResponseEntity<Void> backfillMediaHistory() {
+        // Full history can take far longer than a request, so run it in the background and return immediately
+        instagramService.backfillMediaHistory()
+            .subscribe(
+                count -> log.info("Media backfill ingested {} items", count),
+                e -> log.error("Media backfill failed", e));
+        return ResponseEntity.accepted().build();
     }
 
     @GetMapping("/api/instagram/latest-story")
-    public ResponseEntity<InstagramStory> getLatestStory() {
-        return storyRepository.findTopByOrderByPostedAtDesc()
-            .map(ResponseEntity::ok)
-            .orElseGet(() -> ResponseEntity.notFound().build());
+    public ResponseEntity<byte[]> getLatestStory(@RequestParam(required = false) String accountId) {
+        String account = accounts.resolve(accountId);
+        CachedResponse cached = responseCache.get("latest-story:" + account, key -> storyRepository.findTopByAccountIdOrderByPostedAtDesc(account)
+            .map(story -> new CachedResponse(responseCache.toJson(story), null))
+            .orElse(CachedResponse.NOT_FOUND));
+        if (cached.isNotFound()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(cached.body());
     }
 } 
\ No newline at end of file
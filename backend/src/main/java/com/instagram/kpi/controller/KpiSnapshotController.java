@@ -0,0 +1,31 @@
+package com.instagram.kpi.controller;
+
+import com.instagram.kpi.model.KpiUpdateMessage;
+import com.instagram.kpi.service.InstagramAccountRegistry;
+import com.instagram.kpi.service.KpiSnapshotService;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.simp.annotation.SubscribeMapping;
+import org.springframework.stereotype.Controller;
+
+@Controller
+public class KpiSnapshotController {
+    private final KpiSnapshotService snapshots;
+    private final InstagramAccountRegistry accounts;
+
+    public KpiSnapshotController(KpiSnapshotService snapshots, InstagramAccountRegistry accounts) {
+        this.snapshots = snapshots;
+        this.accounts = accounts;
+    }
+
+    // Subscribing to /app/kpi-snapshot replies to that session only, used by clients that detected a sequence gap
+    @SubscribeMapping("/kpi-snapshot")
+    public KpiUpdateMessage snapshot() {
+        return snapshots.snapshot(accounts.primary().accountId());
+    }
+
+    // Counterpart of /topic/kpi-updates/{accountId}
+    @SubscribeMapping("/kpi-snapshot/{accountId}")
+    public KpiUpdateMessage accountSnapshot(@DestinationVariable String accountId) {
+        return snapshots.snapshot(accountId);
+    }
+}
@@ -0,0 +1,51 @@
+package com.instagram.kpi.controller;
+
+import com.instagram.kpi.model.KpiUpdateMessage;
+import com.instagram.kpi.service.InstagramAccountRegistry;
+import com.instagram.kpi.service.KpiSnapshotService;
+import com.instagram.kpi.service.KpiUpdateStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+
+/**
+ * Server-Sent Events alternative to the STOMP topics: one plain HTTP response per client that
+ * starts with a snapshot event and continues with the posts, account_kpis and story deltas,
+ * each with its sequence as event id. The event name is the lower-cased message type.
+ */
+@RestController
+public class KpiStreamController {
+    private final KpiUpdateStream updateStream;
+    private final KpiSnapshotService snapshots;
+    private final InstagramAccountRegistry accounts;
+    private final Duration keepaliveInterval;
+
+    public KpiStreamController(KpiUpdateStream updateStream, KpiSnapshotService snapshots,
+                               InstagramAccountRegistry accounts,
+                               @Value("${instagram.stream.keepalive-ms:15000}") long keepaliveMs) {
+        this.updateStream = updateStream;
+        this.snapshots = snapshots;
+        this.accounts = accounts;
+        this.keepaliveInterval = Duration.ofMillis(keepaliveMs);
+    }
+
+    @GetMapping(path = "/api/instagram/kpi-stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<KpiUpdateMessage>> stream(@RequestParam(required = false) String accountId) {
+        String account = accounts.resolve(accountId);
+        Flux<ServerSentEvent<KpiUpdateMessage>> updates = updateStream.updates(account, () -> snapshots.snapshot(account))
+            .map(message -> ServerSentEvent.builder(message)
+                .id(Long.toString(message.getSequence()))
+                .event(message.getType().name().toLowerCase())
+                .build());
+        // Comments keep idle connections open through proxies and surface clients that went away
+        Flux<ServerSentEvent<KpiUpdateMessage>> keepalive = Flux.interval(keepaliveInterval)
+            .map(tick -> ServerSentEvent.<KpiUpdateMessage>builder().comment("keepalive").build());
+        return Flux.merge(updates, keepalive);
+    }
+}
@@ -0,0 +1,40 @@
+package com.instagram.kpi.controller;
+
+import com.instagram.kpi.service.MetricHistoryStore;
+import com.instagram.kpi.service.MetricHistoryStore.EntityType;
+import com.instagram.kpi.service.MetricHistoryStore.History;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDateTime;
+
+@RestController
+@RequestMapping("/api/instagram/history")
+public class MetricHistoryController {
+    private final MetricHistoryStore historyStore;
+
+    public MetricHistoryController(MetricHistoryStore historyStore) {
+        this.historyStore = historyStore;
+    }
+
+    // e.g. /post?id=17900000000000000&from=2024-01-01T00:00:00; daily KPI rows use id={accountId}/{date}
+    @GetMapping("/{entityType}")
+    public ResponseEntity<History> getHistory(
+            @PathVariable String entityType,
+            @RequestParam String id,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        EntityType type;
+        try {
+            type = EntityType.parse(entityType);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(historyStore.history(type, id, from, to));
+    }
+}
@@ -0,0 +1,91 @@
+package com.instagram.kpi.model;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import org.springframework.beans.factory.annotation.Value;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Encrypts Graph API access tokens with AES-GCM before they are written to the database.
+ * Stored values are "v1:" followed by base64 of a random 12-byte IV and the ciphertext with
+ * its tag. The key is instagram.accounts.token-key, base64 of 16, 24 or 32 bytes; without it
+ * no token can be stored. Values without the prefix were written before encryption and are
+ * read as they are (InstagramAccountRegistry encrypts them at startup).
+ *
+ * Hibernate creates the converter through Spring's bean container, so the key is injected.
+ */
+@Converter
+public class AccessTokenConverter implements AttributeConverter<String, String> {
+    public static final String PREFIX = "v1:";
+
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+
+    private final SecretKeySpec key;
+    private final SecureRandom random = new SecureRandom();
+
+    public AccessTokenConverter(@Value("${instagram.accounts.token-key:}") String encodedKey) {
+        if (encodedKey == null || encodedKey.isBlank()) {
+            this.key = null;
+            return;
+        }
+        byte[] bytes = Base64.getDecoder().decode(encodedKey.trim());
+        if (bytes.length != 16 && bytes.length != 24 && bytes.length != 32) {
+            throw new IllegalArgumentException("instagram.accounts.token-key must be base64 of 16, 24 or 32 bytes");
+        }
+        this.key = new SecretKeySpec(bytes, "AES");
+    }
+
+    public static boolean isEncrypted(String stored) {
+        return stored != null && stored.startsWith(PREFIX);
+    }
+
+    @Override
+    public String convertToDatabaseColumn(String token) {
+        if (token == null) {
+            return null;
+        }
+        try {
+            byte[] iv = new byte[IV_LENGTH];
+            random.nextBytes(iv);
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, requireKey(), new GCMParameterSpec(TAG_BITS, iv));
+            byte[] sealed = cipher.doFinal(token.getBytes(StandardCharsets.UTF_8));
+            return PREFIX + Base64.getEncoder().encodeToString(
+                ByteBuffer.allocate(IV_LENGTH + sealed.length).put(iv).put(sealed).array());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not encrypt access token", e);
+        }
+    }
+
+    @Override
+    public String convertToEntityAttribute(String stored) {
+        if (!isEncrypted(stored)) {
+            return stored;
+        }
+        try {
+            byte[] data = Base64.getDecoder().decode(stored.substring(PREFIX.length()));
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, requireKey(), new GCMParameterSpec(TAG_BITS, data, 0, IV_LENGTH));
+            return new String(cipher.doFinal(data, IV_LENGTH, data.length - IV_LENGTH), StandardCharsets.UTF_8);
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            // A wrong key fails the GCM tag check rather than producing a garbled token
+            throw new IllegalStateException("Could not decrypt access token", e);
+        }
+    }
+
+    private SecretKeySpec requireKey() {
+        if (key == null) {
+            throw new IllegalStateException("instagram.accounts.token-key is not set, access tokens cannot be stored");
+        }
+        return key;
+    }
+}
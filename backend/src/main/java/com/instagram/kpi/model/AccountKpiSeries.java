@@ -0,0 +1,104 @@
+package com.instagram.kpi.model;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Columnar form of the daily account KPIs in [from, to]: entry i of every metric array
+ * belongs to dates[i]. Field names are written once instead of once per row, which keeps
+ * the payload roughly proportional to the number of values. Days without a value are null.
+ */
+public class AccountKpiSeries {
+    // Window served when the caller doesn't ask for one, matching what the insights API reports
+    public static final int DEFAULT_WINDOW_DAYS = 30;
+
+    private LocalDate from;
+    private LocalDate to;
+    private List<LocalDate> dates;
+    private Integer[] followers;
+    private Integer[] newFollowers;
+    private Integer[] profileViews;
+    private Integer[] reach;
+    private Integer[] pinnedReelComments;
+    private Integer[] pinnedReelShares;
+    private Integer[] pinnedReelLikes;
+    private Integer[] pinnedReelSaves;
+    private Integer[] pinnedReelWatchTime;
+
+    public AccountKpiSeries() {
+    }
+
+    // Start of the default window ending on the given day
+    public static LocalDate defaultFrom(LocalDate to) {
+        return to.minusDays(DEFAULT_WINDOW_DAYS - 1);
+    }
+
+    // Rows are expected in date order, as returned by findByAccountIdAndDateBetweenOrderByDateAsc
+    public static AccountKpiSeries of(LocalDate from, LocalDate to, List<InstagramAccountKpi> rows) {
+        int n = rows.size();
+        AccountKpiSeries series = new AccountKpiSeries();
+        series.from = from;
+        series.to = to;
+        series.dates = new ArrayList<>(n);
+        series.followers = new Integer[n];
+        series.newFollowers = new Integer[n];
+        series.profileViews = new Integer[n];
+        series.reach = new Integer[n];
+        series.pinnedReelComments = new Integer[n];
+        series.pinnedReelShares = new Integer[n];
+        series.pinnedReelLikes = new Integer[n];
+        series.pinnedReelSaves = new Integer[n];
+        series.pinnedReelWatchTime = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            InstagramAccountKpi kpi = rows.get(i);
+            series.dates.add(kpi.getDate());
+            series.followers[i] = kpi.getFollowers();
+            series.newFollowers[i] = kpi.getNewFollowers();
+            series.profileViews[i] = kpi.getProfileViews();
+            series.reach[i] = kpi.getReach();
+            series.pinnedReelComments[i] = kpi.getPinnedReelComments();
+            series.pinnedReelShares[i] = kpi.getPinnedReelShares();
+            series.pinnedReelLikes[i] = kpi.getPinnedReelLikes();
+            series.pinnedReelSaves[i] = kpi.getPinnedReelSaves();
+            series.pinnedReelWatchTime[i] = kpi.getPinnedReelWatchTime();
+        }
+        return series;
+    }
+
+    public LocalDate getFrom() { return from; }
+    public void setFrom(LocalDate from) { this.from = from; }
+
+    public LocalDate getTo() { return to; }
+    public void setTo(LocalDate to) { this.to = to; }
+
+    public List<LocalDate> getDates() { return dates; }
+    public void setDates(List<LocalDate> dates) { this.dates = dates; }
+
+    public Integer[] getFollowers() { return followers; }
+    public void setFollowers(Integer[] followers) { this.followers = followers; }
+
+    public Integer[] getNewFollowers() { return newFollowers; }
+    public void setNewFollowers(Integer[] newFollowers) { this.newFollowers = newFollowers; }
+
+    public Integer[] getProfileViews() { return profileViews; }
+    public void setProfileViews(Integer[] profileViews) { this.profileViews = profileViews; }
+
+    public Integer[] getReach() { return reach; }
+    public void setReach(Integer[] reach) { this.reach = reach; }
+
+    public Integer[] getPinnedReelComments() { return pinnedReelComments; }
+    public void setPinnedReelComments(Integer[] pinnedReelComments) { this.pinnedReelComments = pinnedReelComments; }
+
+    public Integer[] getPinnedReelShares() { return pinnedReelShares; }
+    public void setPinnedReelShares(Integer[] pinnedReelShares) { this.pinnedReelShares = pinnedReelShares; }
+
+    public Integer[] getPinnedReelLikes() { return pinnedReelLikes; }
+    public void setPinnedReelLikes(Integer[] pinnedReelLikes) { this.pinnedReelLikes = pinnedReelLikes; }
+
+    public Integer[] getPinnedReelSaves() { return pinnedReelSaves; }
+    public void setPinnedReelSaves(Integer[] pinnedReelSaves) { this.pinnedReelSaves = pinnedReelSaves; }
+
+    public Integer[] getPinnedReelWatchTime() { return pinnedReelWatchTime; }
+    public void setPinnedReelWatchTime(Integer[] pinnedReelWatchTime) { this.pinnedReelWatchTime = pinnedReelWatchTime; }
+}
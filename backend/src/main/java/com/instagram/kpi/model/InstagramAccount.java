@@ -0,0 +1,46 @@
+package com.instagram.kpi.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+import lombok.NoArgsConstructor;
+
+// Additional business account tracked next to the configured one, refreshed by AccountRefreshCoordinator
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "instagram_account")
+public class InstagramAccount {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "instagram_account_seq")
+    @SequenceGenerator(name = "instagram_account_seq", sequenceName = "instagram_account_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(nullable = false, unique = true)
+    private String accountId;
+
+    private String name;
+
+    // Encrypted at rest, see AccessTokenConverter
+    @JsonIgnore
+    @Convert(converter = AccessTokenConverter.class)
+    @Column(nullable = false, length = 2048)
+    private String accessToken;
+
+    private boolean enabled = true;
+
+    // Outcome of the last refresh; accounts are refreshed least recently refreshed first
+    private LocalDateTime lastRefreshedAt;
+
+    @Column(length = 1000)
+    private String lastRefreshError;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
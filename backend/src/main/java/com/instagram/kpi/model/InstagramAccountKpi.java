@@ -11,9 +11,13 @@ import lombok.NoArgsConstructor; // constructor for class initialization
 @Table(name = "instagram_account_kpi")
 public class InstagramAccountKpi {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "instagram_account_kpi_seq")
+    @SequenceGenerator(name = "instagram_account_kpi_seq", sequenceName = "instagram_account_kpi_seq", allocationSize = 50)
     private Long id;
 
+    @Column(name = "account_id")
+    private String accountId;
+
     private LocalDate date; // for time series (e.g., reach, profile views)
     private Integer followers;
     private Integer newFollowers;
@@ -26,6 +30,9 @@ public class InstagramAccountKpi {
     private Integer pinnedReelWatchTime;
 
     // Manual getters and setters
+    public String getAccountId() { return accountId; }
+    public void setAccountId(String accountId) { this.accountId = accountId; }
+    
     public LocalDate getDate() { return date; }
     public void setDate(LocalDate date) { this.date = date; }
     
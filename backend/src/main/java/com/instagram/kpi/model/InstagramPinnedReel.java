@@ -7,7 +7,8 @@ import java.time.LocalDateTime;
 @Table(name = "instagram_pinned_reel")
 public class InstagramPinnedReel {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "instagram_pinned_reel_seq")
+    @SequenceGenerator(name = "instagram_pinned_reel_seq", sequenceName = "instagram_pinned_reel_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false, unique = true)
@@ -11,9 +11,14 @@ import lombok.NoArgsConstructor;
 @Table(name = "instagram_posts")
 public class InstagramPost {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "instagram_posts_seq")
+    @SequenceGenerator(name = "instagram_posts_seq", sequenceName = "instagram_posts_seq", allocationSize = 50)
     private Long id;
 
+    // Business account the post belongs to
+    @Column(name = "account_id")
+    private String accountId;
+
     @Column(nullable = false, unique = true)
     private String postId;
 
@@ -30,6 +35,11 @@ public class InstagramPost {
     private Integer reach;
     private Integer impressions;
 
+    // Derived at ingest from the counters above, null while reach is unknown or zero
+    private Double engagementRate; // (likes + comments + shares + saves) / reach
+    private Double saveRate;       // saves / reach
+    private Double virality;       // shares / reach
+
     @Column(name = "created_at")
     private LocalDateTime createdAt;
 
@@ -37,6 +47,9 @@ public class InstagramPost {
     private LocalDateTime updatedAt;
 
     // Manual getters and setters
+    public String getAccountId() { return accountId; }
+    public void setAccountId(String accountId) { this.accountId = accountId; }
+    
     public String getPostId() { return postId; }
     public void setPostId(String postId) { this.postId = postId; }
     
@@ -63,6 +76,15 @@ public class InstagramPost {
     
     public Integer getImpressions() { return impressions; }
     public void setImpressions(Integer impressions) { this.impressions = impressions; }
+    
+    public Double getEngagementRate() { return engagementRate; }
+    public void setEngagementRate(Double engagementRate) { this.engagementRate = engagementRate; }
+    
+    public Double getSaveRate() { return saveRate; }
+    public void setSaveRate(Double saveRate) { this.saveRate = saveRate; }
+    
+    public Double getVirality() { return virality; }
+    public void setVirality(Double virality) { this.virality = virality; }
 
     @PrePersist
     protected void onCreate() {
@@ -7,9 +7,13 @@ import java.time.LocalDateTime;
 @Table(name = "instagram_story")
 public class InstagramStory {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "instagram_story_seq")
+    @SequenceGenerator(name = "instagram_story_seq", sequenceName = "instagram_story_seq", allocationSize = 50)
     private Long id;
 
+    @Column(name = "account_id")
+    private String accountId;
+
     @Column(nullable = false, unique = true)
     private String storyId;
 
@@ -28,6 +32,9 @@ public class InstagramStory {
     private LocalDateTime updatedAt;
 
     // Manual getters and setters
+    public String getAccountId() { return accountId; }
+    public void setAccountId(String accountId) { this.accountId = accountId; }
+    
     public String getStoryId() { return storyId; }
     public void setStoryId(String storyId) { this.storyId = storyId; }
     
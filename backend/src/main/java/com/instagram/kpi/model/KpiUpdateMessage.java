@@ -0,0 +1,53 @@
+package com.instagram.kpi.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.List;
+
+// Envelope for everything pushed on /topic/kpi-updates and the SSE stream; sequence increases by one per message
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class KpiUpdateMessage {
+    public enum Type { POSTS, ACCOUNT_KPIS, STORY, SNAPSHOT }
+
+    private Type type;
+    private long sequence;
+    private List<InstagramPost> posts;
+    private List<InstagramAccountKpi> accountKpis;
+    // Latest story of the account, on STORY updates and snapshots
+    private InstagramStory story;
+    // On snapshots holding only the newest posts: the /api/instagram/posts cursor for the older ones
+    private String postsCursor;
+
+    public KpiUpdateMessage() {
+    }
+
+    public KpiUpdateMessage(Type type, long sequence, List<InstagramPost> posts, List<InstagramAccountKpi> accountKpis) {
+        this.type = type;
+        this.sequence = sequence;
+        this.posts = posts;
+        this.accountKpis = accountKpis;
+    }
+
+    public KpiUpdateMessage(Type type, long sequence, List<InstagramPost> posts, List<InstagramAccountKpi> accountKpis,
+                            InstagramStory story) {
+        this(type, sequence, posts, accountKpis);
+        this.story = story;
+    }
+
+    public Type getType() { return type; }
+    public void setType(Type type) { this.type = type; }
+
+    public long getSequence() { return sequence; }
+    public void setSequence(long sequence) { this.sequence = sequence; }
+
+    public List<InstagramPost> getPosts() { return posts; }
+    public void setPosts(List<InstagramPost> posts) { this.posts = posts; }
+
+    public List<InstagramAccountKpi> getAccountKpis() { return accountKpis; }
+    public void setAccountKpis(List<InstagramAccountKpi> accountKpis) { this.accountKpis = accountKpis; }
+
+    public InstagramStory getStory() { return story; }
+    public void setStory(InstagramStory story) { this.story = story; }
+
+    public String getPostsCursor() { return postsCursor; }
+    public void setPostsCursor(String postsCursor) { this.postsCursor = postsCursor; }
+}
@@ -0,0 +1,38 @@
+package com.instagram.kpi.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+import lombok.NoArgsConstructor;
+
+// Progress of the full media history backfill, one row per business account so a crashed run can resume
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "instagram_media_backfill_checkpoint")
+public class MediaBackfillCheckpoint {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "instagram_media_backfill_checkpoint_seq")
+    @SequenceGenerator(name = "instagram_media_backfill_checkpoint_seq", sequenceName = "instagram_media_backfill_checkpoint_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(nullable = false, unique = true)
+    private String accountId;
+
+    // Graph API "after" cursor of the next page to fetch; null means start from the newest media
+    @Column(length = 1024)
+    private String afterCursor;
+
+    private LocalDateTime lastPostedAt;
+    private long ingestedCount;
+    private boolean completed;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    protected void onSave() {
+        updatedAt = LocalDateTime.now();
+    }
+}
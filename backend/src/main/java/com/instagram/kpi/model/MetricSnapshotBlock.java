@@ -0,0 +1,42 @@
+package com.instagram.kpi.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+import lombok.NoArgsConstructor;
+
+// Block of delta-encoded metric samples of one post, story or daily KPI row, see MetricHistoryStore
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "instagram_metric_snapshot_block")
+public class MetricSnapshotBlock {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "instagram_metric_snapshot_block_seq")
+    @SequenceGenerator(name = "instagram_metric_snapshot_block_seq", sequenceName = "instagram_metric_snapshot_block_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(nullable = false, length = 32)
+    private String entityType;
+
+    @Column(nullable = false)
+    private String entityId;
+
+    @Column(nullable = false)
+    private LocalDateTime firstObservedAt;
+
+    @Column(nullable = false)
+    private LocalDateTime lastObservedAt;
+
+    private int sampleCount;
+
+    // Full blocks are sealed and never written again; only the newest block of an entity is appended to
+    private boolean sealed;
+
+    @Column(nullable = false, length = 16384)
+    private byte[] data;
+
+    // Concurrent ingestions appending to the same open block must not overwrite each other's samples
+    @Version
+    private long version;
+}
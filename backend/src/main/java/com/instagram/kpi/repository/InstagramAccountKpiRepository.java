@@ -2,13 +2,26 @@ package com.instagram.kpi.repository;
 
 import com.instagram.kpi.model.InstagramAccountKpi;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
+import java.util.List;
 import java.util.Optional;
  
 @Repository
 public interface InstagramAccountKpiRepository extends JpaRepository<InstagramAccountKpi, Long> {
-    Optional<InstagramAccountKpi> findTopByOrderByDateDesc();
-    Optional<InstagramAccountKpi> findByDate(LocalDate date);
+    Optional<InstagramAccountKpi> findTopByAccountIdOrderByDateDesc(String accountId);
+    Optional<InstagramAccountKpi> findByAccountIdAndDate(String accountId, LocalDate date);
+    List<InstagramAccountKpi> findByAccountId(String accountId);
+    List<InstagramAccountKpi> findByAccountIdAndDateBetween(String accountId, LocalDate from, LocalDate to);
+    List<InstagramAccountKpi> findByAccountIdAndDateBetweenOrderByDateAsc(String accountId, LocalDate from, LocalDate to);
+
+    @Transactional
+    @Modifying
+    @Query("update InstagramAccountKpi k set k.accountId = :accountId where k.accountId is null")
+    int assignUnownedTo(@Param("accountId") String accountId);
 } 
\ No newline at end of file
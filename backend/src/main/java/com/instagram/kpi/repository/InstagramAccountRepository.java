@@ -0,0 +1,31 @@
+package com.instagram.kpi.repository;
+
+import com.instagram.kpi.model.InstagramAccount;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface InstagramAccountRepository extends JpaRepository<InstagramAccount, Long> {
+    Optional<InstagramAccount> findByAccountId(String accountId);
+
+    // never refreshed accounts first, then the ones that waited longest
+    @Query("select a from InstagramAccount a where a.enabled = true order by a.lastRefreshedAt asc nulls first, a.id asc")
+    List<InstagramAccount> findEnabledByRefreshDue();
+
+    // rows whose token was stored before tokens were encrypted (see AccessTokenConverter)
+    @Query(value = "select id from instagram_account where access_token not like 'v1:%'", nativeQuery = true)
+    List<Long> findIdsWithPlaintextToken();
+
+    // the token parameter goes through AccessTokenConverter like any write of the attribute
+    @Transactional
+    @Modifying
+    @Query("update InstagramAccount a set a.accessToken = :accessToken where a.id = :id")
+    int updateAccessToken(@Param("id") Long id, @Param("accessToken") String accessToken);
+}
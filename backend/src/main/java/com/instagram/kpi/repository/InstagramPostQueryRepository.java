@@ -0,0 +1,24 @@
+package com.instagram.kpi.repository;
+
+import com.instagram.kpi.model.InstagramPost;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+// Custom query fragment mixed into InstagramPostRepository for reads that derived queries can't express
+public interface InstagramPostQueryRepository {
+
+    /**
+     * Returns at most limit posts of the account ordered by postedAt desc, id desc, starting strictly after the
+     * (beforePostedAt, beforeId) keyset position when both are given. Only the requested
+     * attributes are selected, one map per row in the order of fields, so no entity is loaded.
+     */
+    List<Map<String, Object>> findPageProjected(String accountId, List<String> fields, LocalDateTime beforePostedAt, Long beforeId, int limit);
+
+    /**
+     * The limit posts of the account with the highest value of metric, ties broken by newest id.
+     * Posts without a value are skipped. Served from the (account_id, metric) index.
+     */
+    List<InstagramPost> findTopByMetric(String accountId, String metric, int limit);
+}
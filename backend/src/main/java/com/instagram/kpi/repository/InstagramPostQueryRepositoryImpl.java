@@ -0,0 +1,78 @@
+package com.instagram.kpi.repository;
+
+import com.instagram.kpi.model.InstagramPost;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class InstagramPostQueryRepositoryImpl implements InstagramPostQueryRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<Map<String, Object>> findPageProjected(String accountId, List<String> fields, LocalDateTime beforePostedAt, Long beforeId, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<InstagramPost> root = query.from(InstagramPost.class);
+
+        List<Selection<?>> selections = new ArrayList<>(fields.size());
+        for (String field : fields) {
+            selections.add(root.get(field).alias(field));
+        }
+        query.multiselect(selections);
+
+        Path<LocalDateTime> postedAt = root.get("postedAt");
+        Path<Long> id = root.get("id");
+        Predicate sameAccount = cb.equal(root.get("accountId"), accountId);
+        if (beforePostedAt != null && beforeId != null) {
+            query.where(sameAccount, cb.or(
+                cb.lessThan(postedAt, beforePostedAt),
+                cb.and(cb.equal(postedAt, beforePostedAt), cb.lessThan(id, beforeId))));
+        } else {
+            query.where(sameAccount);
+        }
+        // Read in order from (account_id, posted_at desc, id desc); the index doesn't cover the projected columns,
+        // so each row of the page is still fetched from the table
+        query.orderBy(cb.desc(postedAt), cb.desc(id));
+
+        List<Tuple> rows = entityManager.createQuery(query)
+            .setMaxResults(limit)
+            .getResultList();
+
+        List<Map<String, Object>> page = new ArrayList<>(rows.size());
+        for (Tuple row : rows) {
+            Map<String, Object> post = new LinkedHashMap<>();
+            for (String field : fields) {
+                post.put(field, row.get(field));
+            }
+            page.add(post);
+        }
+        return page;
+    }
+
+    @Override
+    public List<InstagramPost> findTopByMetric(String accountId, String metric, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<InstagramPost> query = cb.createQuery(InstagramPost.class);
+        Root<InstagramPost> root = query.from(InstagramPost.class);
+        Path<Object> value = root.get(metric);
+        query.where(cb.equal(root.get("accountId"), accountId), cb.isNotNull(value));
+        query.orderBy(cb.desc(value), cb.desc(root.get("id")));
+        return entityManager.createQuery(query)
+            .setMaxResults(limit)
+            .getResultList();
+    }
+}
@@ -1,13 +1,51 @@
 package com.instagram.kpi.repository;
 
 import com.instagram.kpi.model.InstagramPost;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository; // CRUDs
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 // provides CRUD methods (-> findBy.Post.Id )so dont need to write SQL code
 @Repository
-public interface InstagramPostRepository extends JpaRepository<InstagramPost, Long> {
+public interface InstagramPostRepository extends JpaRepository<InstagramPost, Long>, InstagramPostQueryRepository {
     Optional<InstagramPost> findByPostId(String postId);
+
+    // bulk lookup used by ingestion so a refresh costs one SELECT per batch instead of one per post
+    List<InstagramPost> findByPostIdIn(Collection<String> postIds);
+
+    // walks an account's posts older than the cutoff in id order, 50 at a time, for periodic insight refreshes
+    List<InstagramPost> findTop50ByAccountIdAndPostedAtBeforeAndIdGreaterThanOrderByIdAsc(String accountId, LocalDateTime postedBefore, Long afterId);
+
+    List<InstagramPost> findByAccountId(String accountId);
+
+    // newest posts first, in the same order as the keyset pages of /api/instagram/posts
+    List<InstagramPost> findByAccountIdOrderByPostedAtDescIdDesc(String accountId, Limit limit);
+
+    // rows stored before accounts were tracked belong to the configured account
+    @Transactional
+    @Modifying
+    @Query("update InstagramPost p set p.accountId = :accountId where p.accountId is null")
+    int assignUnownedTo(@Param("accountId") String accountId);
+
+    // same formulas as InstagramService.applyDerivedMetrics, for rows stored before the columns existed
+    @Transactional
+    @Modifying
+    @Query("update InstagramPost p set "
+        + "p.engagementRate = cast(coalesce(p.likes, 0) + coalesce(p.comments, 0) + coalesce(p.shares, 0) + coalesce(p.saves, 0) as double) / p.reach, "
+        + "p.saveRate = cast(coalesce(p.saves, 0) as double) / p.reach, "
+        + "p.virality = cast(coalesce(p.shares, 0) as double) / p.reach "
+        + "where p.reach > 0 and p.engagementRate is null")
+    int fillMissingDerivedMetrics();
+
+    @Query("select max(p.updatedAt) from InstagramPost p")
+    Optional<LocalDateTime> findLatestUpdatedAt();
 } 
\ No newline at end of file
@@ -2,11 +2,21 @@ package com.instagram.kpi.repository;
 
 import com.instagram.kpi.model.InstagramStory;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 
 @Repository
 public interface InstagramStoryRepository extends JpaRepository<InstagramStory, Long> {
-    Optional<InstagramStory> findTopByOrderByPostedAtDesc();
+    Optional<InstagramStory> findTopByAccountIdOrderByPostedAtDesc(String accountId);
+    Optional<InstagramStory> findByStoryId(String storyId);
+
+    @Transactional
+    @Modifying
+    @Query("update InstagramStory s set s.accountId = :accountId where s.accountId is null")
+    int assignUnownedTo(@Param("accountId") String accountId);
 } 
\ No newline at end of file
@@ -0,0 +1,12 @@
+package com.instagram.kpi.repository;
+
+import com.instagram.kpi.model.MediaBackfillCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface MediaBackfillCheckpointRepository extends JpaRepository<MediaBackfillCheckpoint, Long> {
+    Optional<MediaBackfillCheckpoint> findByAccountId(String accountId);
+}
@@ -0,0 +1,23 @@
+package com.instagram.kpi.repository;
+
+import com.instagram.kpi.model.MetricSnapshotBlock;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface MetricSnapshotBlockRepository extends JpaRepository<MetricSnapshotBlock, Long> {
+    // the block each entity is currently appending to, fetched for a whole ingestion batch at once
+    List<MetricSnapshotBlock> findByEntityTypeAndSealedFalseAndEntityIdIn(String entityType, Collection<String> entityIds);
+
+    // only blocks whose time span overlaps the range, so the rest are never decoded
+    @Query("select b from MetricSnapshotBlock b where b.entityType = :entityType and b.entityId = :entityId "
+        + "and b.firstObservedAt <= :to and b.lastObservedAt >= :from order by b.firstObservedAt")
+    List<MetricSnapshotBlock> findOverlapping(@Param("entityType") String entityType, @Param("entityId") String entityId,
+                                              @Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+}
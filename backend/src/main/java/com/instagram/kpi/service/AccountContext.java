@@ -0,0 +1,11 @@
+package com.instagram.kpi.service;
+
+// Business account an ingestion run works on, with the token its Graph API calls are made with
+public record AccountContext(String accountId, String accessToken) {
+
+    @Override
+    public String toString() {
+        // Keeps the token out of log lines
+        return "AccountContext[" + accountId + "]";
+    }
+}
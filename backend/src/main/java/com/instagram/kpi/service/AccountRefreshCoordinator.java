@@ -0,0 +1,112 @@
+package com.instagram.kpi.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Refreshes the registered accounts in rounds. Each round takes up to maxPerRound enabled
+ * accounts, least recently refreshed first, and refreshes them with at most workers accounts
+ * in flight. Every account runs under its own timeout and its failure is only recorded
+ * against that account, so a slow or broken account neither holds a worker past its
+ * timeout nor stops the others. Accounts that didn't fit a round are the first in the next.
+ * Rounds run without blocking the scheduling thread, which the primary account's polling
+ * and the token refresh share.
+ */
+@Component
+public class AccountRefreshCoordinator {
+    private static final Logger log = LoggerFactory.getLogger(AccountRefreshCoordinator.class);
+
+    private final InstagramService instagramService;
+    private final InstagramAccountRegistry accounts;
+    private final boolean enabled;
+    private final int workers;
+    private final int maxPerRound;
+    private final Duration accountTimeout;
+    private final AtomicBoolean roundRunning = new AtomicBoolean();
+
+    public AccountRefreshCoordinator(InstagramService instagramService,
+                                     InstagramAccountRegistry accounts,
+                                     @Value("${instagram.accounts.enabled:true}") boolean enabled,
+                                     @Value("${instagram.accounts.workers:8}") int workers,
+                                     @Value("${instagram.accounts.max-per-round:100}") int maxPerRound,
+                                     @Value("${instagram.accounts.timeout-ms:60000}") long accountTimeoutMs) {
+        this.instagramService = instagramService;
+        this.accounts = accounts;
+        this.enabled = enabled;
+        this.workers = workers;
+        this.maxPerRound = maxPerRound;
+        this.accountTimeout = Duration.ofMillis(accountTimeoutMs);
+    }
+
+    // A round that overruns the interval skips the next tick instead of overlapping it
+    @Scheduled(fixedDelayString = "${instagram.accounts.refresh-interval-ms:900000}",
+               initialDelayString = "${instagram.accounts.refresh-interval-ms:900000}")
+    public void refreshRound() {
+        if (!enabled) {
+            return;
+        }
+        if (!roundRunning.compareAndSet(false, true)) {
+            log.info("Previous account refresh round still running, skipping this one");
+            return;
+        }
+        refreshDueAccounts()
+            .doFinally(signal -> roundRunning.set(false))
+            .subscribe(null, e -> log.error("Account refresh round failed", e));
+    }
+
+    // Emits the number of accounts refreshed without error
+    public Mono<Integer> refreshDueAccounts() {
+        return Mono.fromCallable(() -> accounts.dueAccounts(maxPerRound))
+            .subscribeOn(Schedulers.boundedElastic())
+            .flatMap(this::refresh);
+    }
+
+    private Mono<Integer> refresh(List<AccountContext> due) {
+        if (due.isEmpty()) {
+            return Mono.just(0);
+        }
+        long startNanos = System.nanoTime();
+        AtomicInteger succeeded = new AtomicInteger();
+        return Flux.fromIterable(due)
+            .flatMap(account -> refreshAccount(account, succeeded), workers)
+            .then(Mono.fromCallable(() -> {
+                log.info("Refreshed {}/{} accounts in {} ms", succeeded.get(), due.size(),
+                    Duration.ofNanos(System.nanoTime() - startNanos).toMillis());
+                return succeeded.get();
+            }));
+    }
+
+    private Mono<Void> refreshAccount(AccountContext account, AtomicInteger succeeded) {
+        return instagramService.refreshAccountAsync(account)
+            .timeout(accountTimeout)
+            .then(Mono.just(Optional.<Throwable>empty()))
+            .onErrorResume(e -> Mono.just(Optional.of(e)))
+            // The registry write blocks, so it is moved off the HTTP client threads
+            .publishOn(Schedulers.boundedElastic())
+            .doOnNext(error -> {
+                if (error.isPresent()) {
+                    log.warn("Refresh of account {} failed: {}", account.accountId(), error.get().getMessage());
+                } else {
+                    succeeded.incrementAndGet();
+                }
+                accounts.recordRefresh(account.accountId(), error.orElse(null));
+            })
+            .onErrorResume(e -> {
+                log.error("Could not record refresh of account {}", account.accountId(), e);
+                return Mono.empty();
+            })
+            .then();
+    }
+}
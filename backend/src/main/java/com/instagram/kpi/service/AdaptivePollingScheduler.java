@@ -0,0 +1,233 @@
+package com.instagram.kpi.service;
+
+import com.instagram.kpi.repository.InstagramStoryRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Polls each kind of data of the primary account on its own adaptive interval within an hourly
+ * Graph API call budget. After every poll the fraction of rows that changed is folded into a
+ * moving change score; the interval slides from its maximum towards its minimum as that score
+ * rises, so targets whose values are still moving are polled often and settled ones rarely.
+ * Stories are only polled fast while the latest one is still live. The budget is charged
+ * with the calls GraphApiClient actually made for the primary account, manual refreshes
+ * included; registered accounts are rate limited by Meta on their own tokens and don't draw
+ * on it. A target is only polled while the budget covers the calls its previous poll took. All decisions are taken against the injected Clock so they can be
+ * driven by a virtual clock.
+ */
+@Component
+public class AdaptivePollingScheduler {
+    private static final Logger log = LoggerFactory.getLogger(AdaptivePollingScheduler.class);
+
+    // Weight of the latest poll in the moving change score
+    private static final double CHANGE_SCORE_ALPHA = 0.3;
+
+    private static final Duration STORY_LIFETIME = Duration.ofHours(24);
+    private static final Duration SETTLED_POST_AGE = Duration.ofDays(7);
+
+    public enum Target {
+        // Graph API calls expected of the first poll, fastest and slowest interval
+        LATEST_STORY(1, Duration.ofMinutes(5), Duration.ofHours(2)),
+        // media page, plus a batch of insights for posts that came without them
+        RECENT_POSTS(2, Duration.ofMinutes(10), Duration.ofHours(3)),
+        ACCOUNT_KPIS(3, Duration.ofMinutes(30), Duration.ofHours(6)),
+        // one batch of 50 insights requests, each counted by Meta
+        SETTLED_POSTS(50, Duration.ofHours(1), Duration.ofHours(24));
+
+        final int initialCalls;
+        final Duration minInterval;
+        final Duration maxInterval;
+
+        Target(int initialCalls, Duration minInterval, Duration maxInterval) {
+            this.initialCalls = initialCalls;
+            this.minInterval = minInterval;
+            this.maxInterval = maxInterval;
+        }
+    }
+
+    private static final class TargetState {
+        double changeScore = 1.0; // start fast until the first polls show how volatile the target is
+        Instant nextPollAt = Instant.MIN;
+        long expectedCalls; // calls the last successful poll made
+    }
+
+    private final InstagramService instagramService;
+    private final GraphApiClient graphApiClient;
+    private final InstagramStoryRepository storyRepository;
+    private final InstagramAccountRegistry accounts;
+    private final Clock clock;
+    private final boolean enabled;
+    private final double hourlyCallBudget;
+
+    // Guarded by this
+    private final Map<Target, TargetState> states = new EnumMap<>(Target.class);
+    private double availableCalls;
+    private Instant lastRefill;
+    private long chargedCalls; // primary account calls already taken off the budget
+
+    public AdaptivePollingScheduler(InstagramService instagramService,
+                                    GraphApiClient graphApiClient,
+                                    InstagramStoryRepository storyRepository,
+                                    InstagramAccountRegistry accounts,
+                                    Clock clock,
+                                    @Value("${instagram.polling.enabled:true}") boolean enabled,
+                                    @Value("${instagram.polling.hourly-call-budget:150}") int hourlyCallBudget) {
+        this.instagramService = instagramService;
+        this.graphApiClient = graphApiClient;
+        this.storyRepository = storyRepository;
+        this.accounts = accounts;
+        this.clock = clock;
+        this.enabled = enabled;
+        this.hourlyCallBudget = hourlyCallBudget;
+        this.availableCalls = hourlyCallBudget;
+        this.lastRefill = clock.instant();
+        this.chargedCalls = primaryCallCount();
+        for (Target target : Target.values()) {
+            TargetState state = new TargetState();
+            state.expectedCalls = target.initialCalls;
+            states.put(target, state);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${instagram.polling.tick-ms:30000}", initialDelayString = "${instagram.polling.tick-ms:30000}")
+    public void tick() {
+        if (enabled) {
+            pollDueTargets();
+        }
+    }
+
+    /**
+     * Polls every target whose interval has elapsed, most overdue first, as long as the
+     * call budget allows. Targets that don't fit the budget stay due for the next tick.
+     */
+    public void pollDueTargets() {
+        for (Target target = reserveNextDueTarget(); target != null; target = reserveNextDueTarget()) {
+            Target polled = target;
+            long callsBefore = primaryCallCount();
+            PollOutcome outcome = poll(polled).onErrorResume(e -> {
+                log.error("Polling {} failed", polled, e);
+                return Mono.empty();
+            }).block();
+            recordOutcome(polled, outcome, primaryCallCount() - callsBefore);
+        }
+    }
+
+    public synchronized Duration currentInterval(Target target) {
+        TargetState state = states.get(target);
+        return interpolate(target, state.changeScore);
+    }
+
+    // Calls left in the budget after charging every call made so far; negative once other callers overdrew it
+    public synchronized double availableCalls() {
+        refillBudget(clock.instant());
+        return availableCalls;
+    }
+
+    private synchronized Target reserveNextDueTarget() {
+        Instant now = clock.instant();
+        refillBudget(now);
+
+        Target mostOverdue = null;
+        Duration longestOverdue = Duration.ZERO.minusNanos(1);
+        for (Map.Entry<Target, TargetState> entry : states.entrySet()) {
+            TargetState state = entry.getValue();
+            if (state.nextPollAt.isAfter(now) || state.expectedCalls > availableCalls) {
+                continue;
+            }
+            Duration overdue = state.nextPollAt == Instant.MIN ? Duration.ofDays(365) : Duration.between(state.nextPollAt, now);
+            if (overdue.compareTo(longestOverdue) > 0) {
+                mostOverdue = entry.getKey();
+                longestOverdue = overdue;
+            }
+        }
+        if (mostOverdue != null) {
+            // Pushed out while the poll runs so a concurrent tick cannot pick the same target
+            states.get(mostOverdue).nextPollAt = now.plus(mostOverdue.maxInterval);
+        }
+        return mostOverdue;
+    }
+
+    private synchronized void recordOutcome(Target target, PollOutcome outcome, long calls) {
+        TargetState state = states.get(target);
+        Instant now = clock.instant();
+        if (outcome == null) {
+            // Failed polls keep the current score and retry after the fastest interval
+            state.nextPollAt = now.plus(target.minInterval);
+            return;
+        }
+        state.expectedCalls = calls;
+        double changedFraction = outcome.observed() == 0 ? 0.0 : (double) outcome.changed() / outcome.observed();
+        state.changeScore = CHANGE_SCORE_ALPHA * changedFraction + (1 - CHANGE_SCORE_ALPHA) * state.changeScore;
+
+        Duration interval = interpolate(target, state.changeScore);
+        if (target == Target.LATEST_STORY && !hasLiveStory()) {
+            interval = target.maxInterval;
+        }
+        state.nextPollAt = now.plus(interval);
+        log.debug("Polled {} with {} calls: {}/{} changed, score {}, next poll in {}",
+            target, calls, outcome.changed(), outcome.observed(), String.format("%.2f", state.changeScore), interval);
+    }
+
+    private Mono<PollOutcome> poll(Target target) {
+        switch (target) {
+            case LATEST_STORY:
+                return instagramService.fetchLatestStoryAsync();
+            case RECENT_POSTS:
+                return instagramService.fetchLatestPostsAsync();
+            case ACCOUNT_KPIS:
+                return instagramService.fetchAccountKpisAsync();
+            case SETTLED_POSTS:
+                return instagramService.refreshSettledPostInsightsAsync(utcNow().minus(SETTLED_POST_AGE));
+            default:
+                throw new IllegalStateException("Unknown poll target " + target);
+        }
+    }
+
+    private boolean hasLiveStory() {
+        return storyRepository.findTopByAccountIdOrderByPostedAtDesc(accounts.primary().accountId())
+            .map(story -> story.getPostedAt() != null
+                && story.getPostedAt().isAfter(utcNow().minus(STORY_LIFETIME)))
+            .orElse(false);
+    }
+
+    // Graph API timestamps are stored as UTC local date-times
+    private LocalDateTime utcNow() {
+        return LocalDateTime.ofInstant(clock.instant(), ZoneOffset.UTC);
+    }
+
+    // Token bucket: every call made since the last refill is taken out, then the hourly budget
+    // trickles back continuously, capped at one hour's worth
+    private void refillBudget(Instant now) {
+        long calls = primaryCallCount();
+        availableCalls -= calls - chargedCalls;
+        chargedCalls = calls;
+        double elapsedHours = Duration.between(lastRefill, now).toMillis() / 3_600_000.0;
+        if (elapsedHours > 0) {
+            availableCalls = Math.min(hourlyCallBudget, availableCalls + elapsedHours * hourlyCallBudget);
+            lastRefill = now;
+        }
+    }
+
+    private long primaryCallCount() {
+        return graphApiClient.callCount(accounts.primary().accountId());
+    }
+
+    private static Duration interpolate(Target target, double changeScore) {
+        double score = Math.max(0.0, Math.min(1.0, changeScore));
+        long min = target.minInterval.toMillis();
+        long max = target.maxInterval.toMillis();
+        return Duration.ofMillis(Math.round(max - (max - min) * score));
+    }
+}
@@ -0,0 +1,111 @@
+package com.instagram.kpi.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Read-through cache of the dashboard REST responses, held as serialized JSON so a hit
+ * neither touches the connection pool nor runs Jackson. Bounded by total bytes. Any
+ * ingestion commit moves the cache to a new generation, so a response loaded concurrently
+ * from pre-commit data can never be served afterwards. Loaders run on the calling thread
+ * outside any cache lock, so a query never holds a monitor (which would pin a virtual
+ * thread to its carrier); concurrent readers of the same key wait for the first load.
+ */
+@Component
+public class DashboardResponseCache {
+
+    // Serialized body plus the cursor header that belongs to it (null for unpaged responses)
+    public record CachedResponse(byte[] body, String nextCursor) {
+        public static final CachedResponse NOT_FOUND = new CachedResponse(new byte[0], null);
+
+        public boolean isNotFound() {
+            return this == NOT_FOUND;
+        }
+    }
+
+    private record Key(long generation, String name) {
+    }
+
+    private final ObjectMapper objectMapper;
+    private final AsyncCache<Key, CachedResponse> cache;
+    private final AtomicLong generation = new AtomicLong();
+
+    public DashboardResponseCache(ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                                  @Value("${dashboard.cache.max-bytes:8388608}") long maxBytes) {
+        this.objectMapper = objectMapper;
+        this.cache = Caffeine.newBuilder()
+            .maximumWeight(maxBytes)
+            .weigher((Key key, CachedResponse value) -> key.name().length() + value.body().length)
+            .recordStats()
+            .buildAsync();
+        // Exposed as cache.gets{result=hit|miss}, cache.evictions, cache.size under /actuator/metrics
+        CaffeineCacheMetrics.monitor(meterRegistry, cache.synchronous(), "dashboard.responses");
+    }
+
+    public CachedResponse get(String name, Function<String, CachedResponse> loader) {
+        Key key = new Key(generation.get(), name);
+        CompletableFuture<CachedResponse> loading = new CompletableFuture<>();
+        // The mapping function only installs the empty future, so nothing runs under the cache's lock;
+        // going through get rather than asMap() keeps the hit and miss counts
+        CompletableFuture<CachedResponse> existing = cache.get(key, (k, executor) -> loading);
+        if (existing == loading) {
+            try {
+                loading.complete(loader.apply(name));
+            } catch (RuntimeException e) {
+                // Failed futures are dropped by the cache, so the next read loads again
+                loading.completeExceptionally(e);
+                throw e;
+            }
+        }
+        try {
+            return existing.join();
+        } catch (CompletionException e) {
+            // Waiters see the loader's own exception, e.g. IllegalArgumentException for a bad cursor
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    public byte[] toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Called from inside ingestion transactions; takes effect once the data is visible to readers
+    public void invalidateAfterCommit() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidate();
+                }
+            });
+        } else {
+            invalidate();
+        }
+    }
+
+    private void invalidate() {
+        generation.incrementAndGet();
+        cache.synchronous().invalidateAll();
+    }
+}
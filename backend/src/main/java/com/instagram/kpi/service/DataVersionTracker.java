@@ -0,0 +1,67 @@
+package com.instagram.kpi.service;
+
+import com.instagram.kpi.model.InstagramPost;
+import com.instagram.kpi.repository.InstagramPostRepository;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps the latest updatedAt of the stored posts in memory so read endpoints can
+ * answer conditional requests without going to the database.
+ */
+@Component
+public class DataVersionTracker {
+    private final InstagramPostRepository postRepository;
+    private final AtomicReference<LocalDateTime> postsVersion = new AtomicReference<>();
+
+    public DataVersionTracker(InstagramPostRepository postRepository) {
+        this.postRepository = postRepository;
+    }
+
+    public LocalDateTime postsVersion() {
+        LocalDateTime version = postsVersion.get();
+        if (version == null) {
+            // Only the first read after startup queries the table
+            LocalDateTime stored = postRepository.findLatestUpdatedAt().orElse(LocalDateTime.MIN);
+            version = postsVersion.accumulateAndGet(stored, DataVersionTracker::latest);
+        }
+        return version;
+    }
+
+    /**
+     * Records posts written by ingestion. Inside a transaction the version only moves once it
+     * commits, since updatedAt is assigned at flush and readers must not see the new version early.
+     */
+    public void postsSaved(Collection<InstagramPost> posts) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    advancePosts(posts);
+                }
+            });
+        } else {
+            advancePosts(posts);
+        }
+    }
+
+    private void advancePosts(Collection<InstagramPost> posts) {
+        for (InstagramPost post : posts) {
+            if (post.getUpdatedAt() != null) {
+                postsVersion.accumulateAndGet(post.getUpdatedAt(), DataVersionTracker::latest);
+            }
+        }
+    }
+
+    private static LocalDateTime latest(LocalDateTime current, LocalDateTime candidate) {
+        if (current == null) {
+            return candidate;
+        }
+        return candidate.isAfter(current) ? candidate : current;
+    }
+}
@@ -0,0 +1,329 @@
+package com.instagram.kpi.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.channel.ChannelOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.util.context.Context;
+import reactor.util.retry.Retry;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * The single way out to the Graph API. Every request waits for a permit from a token bucket
+ * whose rate follows the X-App-Usage / X-Business-Use-Case-Usage headers of the previous
+ * responses, throttling errors are retried with jittered exponential backoff, identical GETs
+ * that are in flight at the same time share one HTTP call, and each call is timed per
+ * endpoint into graph.api.requests. callCount() counts the calls Meta charges against the
+ * rate limit: every attempt sent, with each request of a batch counted on its own. Calls
+ * subscribed with forAccount(accountId) in their context are also counted for that account.
+ */
+@Component
+public class GraphApiClient {
+    private static final Logger log = LoggerFactory.getLogger(GraphApiClient.class);
+
+    // Numeric object ids in paths are collapsed so the latency histograms stay per endpoint
+    private static final Pattern OBJECT_ID = Pattern.compile("/\\d+(?=/|$)");
+
+    // Reactor context key naming the account a call is made for
+    private static final String ACCOUNT_KEY = GraphApiClient.class.getName() + ".account";
+
+    private final WebClient webClient;
+    private final ObjectMapper objectMapper;
+    private final GraphApiJsonDecoder decoder;
+    private final MeterRegistry meterRegistry;
+    private final UsageRateLimiter rateLimiter;
+    private final int maxRetries;
+    private final Duration minBackoff;
+    private final Map<String, Mono<byte[]>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong callCount = new AtomicLong();
+    private final Map<String, AtomicLong> accountCallCounts = new ConcurrentHashMap<>();
+
+    public GraphApiClient(WebClient.Builder webClientBuilder,
+                          ObjectMapper objectMapper,
+                          GraphApiJsonDecoder decoder,
+                          MeterRegistry meterRegistry,
+                          @Value("${instagram.api.client.base-url:https://graph.facebook.com}") String baseUrl,
+                          @Value("${instagram.api.client.requests-per-second:20}") double requestsPerSecond,
+                          @Value("${instagram.api.client.timeout-ms:30000}") long timeoutMillis,
+                          @Value("${instagram.api.client.max-retries:3}") int maxRetries,
+                          @Value("${instagram.api.client.min-backoff-ms:500}") long minBackoffMillis) {
+        HttpClient httpClient = HttpClient.create()
+            .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 5000)
+            .responseTimeout(Duration.ofMillis(timeoutMillis));
+        this.webClient = webClientBuilder
+            .baseUrl(baseUrl)
+            .clientConnector(new ReactorClientHttpConnector(httpClient))
+            .build();
+        this.objectMapper = objectMapper;
+        this.decoder = decoder;
+        this.meterRegistry = meterRegistry;
+        this.rateLimiter = new UsageRateLimiter(requestsPerSecond);
+        this.maxRetries = maxRetries;
+        this.minBackoff = Duration.ofMillis(minBackoffMillis);
+    }
+
+    public Mono<JsonNode> getJson(String uri) {
+        return get(uri).map(bytes -> {
+            try {
+                return bytes.length == 0 ? MissingNode.getInstance() : objectMapper.readTree(bytes);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    // Reads the buffered response body token by token instead of building a JsonNode tree
+    public <T> Mono<T> get(String uri, GraphApiJsonDecoder.PayloadReader<T> reader) {
+        return get(uri)
+            .filter(bytes -> bytes.length > 0)
+            .mapNotNull(bytes -> {
+                try (JsonParser parser = decoder.getJsonFactory().createParser(bytes)) {
+                    return reader.read(parser);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+    }
+
+    // Non-empty response body, for decoders that work on the bytes themselves
+    public Mono<byte[]> getBody(String uri) {
+        return get(uri).filter(bytes -> bytes.length > 0);
+    }
+
+    // Graph API calls made so far, for budgets kept by callers
+    public long callCount() {
+        return callCount.get();
+    }
+
+    // Graph API calls made so far for one account, counted for calls subscribed with forAccount
+    public long callCount(String accountId) {
+        AtomicLong count = accountCallCounts.get(accountId);
+        return count == null ? 0 : count.get();
+    }
+
+    // Context to write into a call's subscription so it is counted against the account
+    public static Context forAccount(String accountId) {
+        return Context.of(ACCOUNT_KEY, accountId);
+    }
+
+    public Mono<JsonNode> postForm(String uri, MultiValueMap<String, String> form) {
+        return withResilience("POST " + uri, calls(form), () -> webClient.post()
+                .uri(uri)
+                .body(BodyInserters.fromFormData(form))
+                .exchangeToMono(this::readBody))
+            .map(bytes -> {
+                try {
+                    return bytes.length == 0 ? MissingNode.getInstance() : objectMapper.readTree(bytes);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+    }
+
+    /**
+     * Raw body of a GET. Concurrent callers asking for the same URI subscribe to the same
+     * request; the entry is dropped as soon as it completes so later calls fetch fresh data.
+     */
+    private Mono<byte[]> get(String uri) {
+        return Mono.defer(() -> inFlight.computeIfAbsent(uri, key ->
+            withResilience("GET " + key, 1, () -> webClient.get().uri(key).exchangeToMono(this::readBody))
+                .doFinally(signal -> inFlight.remove(key))
+                .cache()));
+    }
+
+    // calls is what one attempt costs against the rate limit
+    private Mono<byte[]> withResilience(String request, int calls, Supplier<Mono<byte[]>> call) {
+        String endpoint = endpointTag(request);
+        return Mono.defer(() -> rateLimiter.acquire()
+                .then(Mono.deferContextual(context -> {
+                    callCount.addAndGet(calls);
+                    context.<String>getOrEmpty(ACCOUNT_KEY).ifPresent(accountId ->
+                        accountCallCounts.computeIfAbsent(accountId, key -> new AtomicLong()).addAndGet(calls));
+                    Timer.Sample sample = Timer.start(meterRegistry);
+                    return call.get()
+                        .doOnSuccess(body -> sample.stop(timer(endpoint, "success")))
+                        .doOnError(e -> sample.stop(timer(endpoint, isThrottled(e) ? "throttled" : "error")));
+                })))
+            .retryWhen(Retry.backoff(maxRetries, minBackoff)
+                .jitter(0.5)
+                .filter(this::isThrottled)
+                .doBeforeRetry(signal -> log.warn("Graph API throttled on {}, retry #{}",
+                    endpoint, signal.totalRetries() + 1)));
+    }
+
+    // The whole body is buffered: MediaPageMapper needs a page in one array to index it and decode
+    // its entries in parallel, so a page is held once as bytes, never as a tree
+    private Mono<byte[]> readBody(ClientResponse response) {
+        rateLimiter.update(response.headers().asHttpHeaders());
+        if (response.statusCode().isError()) {
+            return response.createError();
+        }
+        return DataBufferUtils.join(response.bodyToFlux(DataBuffer.class))
+            .map(buffer -> {
+                try {
+                    byte[] bytes = new byte[buffer.readableByteCount()];
+                    buffer.read(bytes);
+                    return bytes;
+                } finally {
+                    DataBufferUtils.release(buffer);
+                }
+            })
+            .defaultIfEmpty(new byte[0]);
+    }
+
+    // Meta counts every request inside a batch as a call of its own
+    private int calls(MultiValueMap<String, String> form) {
+        String batch = form.getFirst("batch");
+        if (batch == null) {
+            return 1;
+        }
+        try {
+            return Math.max(1, objectMapper.readTree(batch).size());
+        } catch (IOException e) {
+            return 1;
+        }
+    }
+
+    // HTTP 429 or one of the Graph API rate limit error codes in the error body
+    private boolean isThrottled(Throwable e) {
+        if (!(e instanceof WebClientResponseException responseException)) {
+            return false;
+        }
+        if (responseException.getStatusCode().value() == 429) {
+            return true;
+        }
+        try {
+            int code = objectMapper.readTree(responseException.getResponseBodyAsByteArray())
+                .path("error").path("code").asInt();
+            return code == 4 || code == 17 || code == 32 || code == 613 || (code >= 80001 && code <= 80014);
+        } catch (IOException ignored) {
+            return false;
+        }
+    }
+
+    private Timer timer(String endpoint, String outcome) {
+        return Timer.builder("graph.api.requests")
+            .description("Graph API call latency")
+            .tag("endpoint", endpoint)
+            .tag("outcome", outcome)
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+    }
+
+    private static String endpointTag(String request) {
+        int query = request.indexOf('?');
+        String path = query >= 0 ? request.substring(0, query) : request;
+        return OBJECT_ID.matcher(path).replaceAll("/{id}");
+    }
+
+    /**
+     * Token bucket whose refill rate shrinks as Meta reports higher usage. Usage is the highest
+     * percentage found in either header; above 95% or while Meta reports a time to regain
+     * access, no permits are handed out until that time has passed.
+     */
+    static final class UsageRateLimiter {
+        private static final ObjectMapper USAGE_MAPPER = new ObjectMapper();
+
+        private final double maxRate;
+
+        // Guarded by this
+        private double rate;
+        private double tokens;
+        private long lastRefillNanos = System.nanoTime();
+        private long pausedUntilNanos;
+
+        UsageRateLimiter(double maxRate) {
+            this.maxRate = maxRate;
+            this.rate = maxRate;
+            this.tokens = maxRate;
+        }
+
+        // Reserves one permit and completes once it may be used
+        synchronized Mono<Void> acquire() {
+            long now = System.nanoTime();
+            refill(now);
+            long waitNanos = Math.max(0, pausedUntilNanos - now);
+            tokens -= 1;
+            if (tokens < 0) {
+                waitNanos = Math.max(waitNanos, (long) (-tokens / rate * 1_000_000_000L));
+            }
+            return waitNanos > 0 ? Mono.delay(Duration.ofNanos(waitNanos)).then() : Mono.empty();
+        }
+
+        synchronized void update(HttpHeaders headers) {
+            double usage = 0;
+            long regainMinutes = 0;
+            try {
+                String appUsage = headers.getFirst("X-App-Usage");
+                if (appUsage != null) {
+                    usage = Math.max(usage, maxPercent(USAGE_MAPPER.readTree(appUsage)));
+                }
+                String businessUsage = headers.getFirst("X-Business-Use-Case-Usage");
+                if (businessUsage != null) {
+                    // {"<business id>": [{"type": ..., "call_count": n, ..., "estimated_time_to_regain_access": m}]}
+                    for (JsonNode entries : USAGE_MAPPER.readTree(businessUsage)) {
+                        for (JsonNode entry : entries) {
+                            usage = Math.max(usage, maxPercent(entry));
+                            regainMinutes = Math.max(regainMinutes, entry.path("estimated_time_to_regain_access").asLong());
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                log.debug("Ignoring unparsable usage header: {}", e.getMessage());
+                return;
+            }
+
+            long now = System.nanoTime();
+            refill(now);
+            rate = Math.max(maxRate * (1 - usage / 100.0), maxRate * 0.05);
+            if (regainMinutes > 0 || usage >= 95) {
+                long pauseNanos = Duration.ofMinutes(Math.max(regainMinutes, 1)).toNanos();
+                pausedUntilNanos = Math.max(pausedUntilNanos, now + pauseNanos);
+                log.warn("Graph API usage at {}%, pausing requests for {} min", usage, Math.max(regainMinutes, 1));
+            }
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(maxRate, tokens + (now - lastRefillNanos) / 1_000_000_000.0 * rate);
+            lastRefillNanos = now;
+        }
+
+        private static double maxPercent(JsonNode usage) {
+            double max = 0;
+            for (Iterator<String> it = usage.fieldNames(); it.hasNext(); ) {
+                String field = it.next();
+                if (field.equals("call_count") || field.equals("total_cputime") || field.equals("total_time")) {
+                    max = Math.max(max, usage.get(field).asDouble());
+                }
+            }
+            return max;
+        }
+    }
+}
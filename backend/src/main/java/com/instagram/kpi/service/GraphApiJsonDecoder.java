@@ -0,0 +1,318 @@
+package com.instagram.kpi.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.instagram.kpi.model.InstagramPost;
+import com.instagram.kpi.model.InstagramStory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Token-level decoder for the Graph API media, insights and story payloads.
+ * Fields are read straight from the parser into the entities, so no intermediate
+ * JsonNode tree is built for every response.
+ */
+@Component
+public class GraphApiJsonDecoder {
+
+    private final JsonFactory jsonFactory;
+
+    public GraphApiJsonDecoder(ObjectMapper objectMapper) {
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    @FunctionalInterface
+    public interface PayloadReader<T> {
+        T read(JsonParser parser) throws IOException;
+    }
+
+    /**
+     * One page of the /media edge. Posts without an inline insights block are also
+     * listed in missingInsights; afterCursor is only set when the API reports a next page.
+     */
+    public record MediaPage(List<InstagramPost> posts, List<InstagramPost> missingInsights, String afterCursor) {
+        public static final MediaPage EMPTY = new MediaPage(List.of(), List.of(), null);
+    }
+
+    /**
+     * Where each entry of a /media page's data array sits in the response body, found without
+     * decoding the entries so MediaPageMapper can decode them independently with decodePost.
+     */
+    public record MediaPageIndex(int[] offsets, int[] lengths, String afterCursor) {
+        public static final MediaPageIndex EMPTY = new MediaPageIndex(new int[0], new int[0], null);
+
+        public int size() {
+            return offsets.length;
+        }
+    }
+
+    public JsonFactory getJsonFactory() {
+        return jsonFactory;
+    }
+
+    public MediaPageIndex indexMediaPage(byte[] body) throws IOException {
+        int[] offsets = new int[16];
+        int[] lengths = new int[16];
+        int count = 0;
+        String afterCursor = null;
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return MediaPageIndex.EMPTY;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("data".equals(field) && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        if (count == offsets.length) {
+                            offsets = Arrays.copyOf(offsets, count * 2);
+                            lengths = Arrays.copyOf(lengths, count * 2);
+                        }
+                        int start = (int) parser.currentTokenLocation().getByteOffset();
+                        parser.skipChildren();
+                        offsets[count] = start;
+                        lengths[count] = (int) parser.currentLocation().getByteOffset() - start;
+                        count++;
+                    }
+                } else if ("paging".equals(field) && value == JsonToken.START_OBJECT) {
+                    afterCursor = decodeAfterCursor(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return new MediaPageIndex(Arrays.copyOf(offsets, count), Arrays.copyOf(lengths, count), afterCursor);
+    }
+
+    /**
+     * Decodes the index-th entry of an indexed /media page into post, returning whether it
+     * carried an inline insights block. Safe to call from several threads at once.
+     */
+    public boolean decodePost(byte[] body, MediaPageIndex index, int entry, InstagramPost post) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(body, index.offsets()[entry], index.lengths()[entry])) {
+            return parser.nextToken() == JsonToken.START_OBJECT && decodePost(parser, post);
+        }
+    }
+
+    // Parser is positioned on the START_OBJECT of "paging"; the cursor only counts when a next page exists
+    private String decodeAfterCursor(JsonParser parser) throws IOException {
+        String afterCursor = null;
+        boolean hasNext = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String pagingField = parser.currentName();
+            JsonToken pagingValue = parser.nextToken();
+            if ("next".equals(pagingField)) {
+                hasNext = true;
+            } else if ("cursors".equals(pagingField) && pagingValue == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String cursorField = parser.currentName();
+                    parser.nextToken();
+                    if ("after".equals(cursorField)) {
+                        afterCursor = parser.getValueAsString();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return hasNext ? afterCursor : null;
+    }
+
+    /**
+     * Returns the first entry of a /media?media_type=STORY response, or null when the
+     * account has no live story.
+     */
+    public InstagramStory decodeFirstStory(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return null;
+        }
+        InstagramStory story = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("data".equals(field) && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    if (story == null) {
+                        story = new InstagramStory();
+                        decodeStory(parser, story);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return story;
+    }
+
+    /**
+     * Reads an /insights response ({"data": [...]}) and hands every metric to the sink.
+     */
+    public void decodeInsights(String body, ObjIntConsumer<String> sink) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            if (parser.nextToken() == JsonToken.START_OBJECT) {
+                decodeInsightsObject(parser, sink);
+            }
+        }
+    }
+
+    private boolean decodePost(JsonParser parser, InstagramPost post) throws IOException {
+        boolean hasInsights = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "id":
+                    post.setPostId(parser.getValueAsString());
+                    break;
+                case "caption":
+                    post.setCaption(parser.getValueAsString());
+                    break;
+                case "timestamp":
+                    post.setPostedAt(readTimestamp(parser, value));
+                    break;
+                case "like_count":
+                    post.setLikes(parser.getValueAsInt());
+                    break;
+                case "comments_count":
+                    post.setComments(parser.getValueAsInt());
+                    break;
+                case "insights":
+                    if (value == JsonToken.START_OBJECT) {
+                        hasInsights = decodeInsightsObject(parser, (name, metric) -> applyPostInsight(post, name, metric));
+                    } else {
+                        parser.skipChildren();
+                    }
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return hasInsights;
+    }
+
+    private void decodeStory(JsonParser parser, InstagramStory story) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "id":
+                    story.setStoryId(parser.getValueAsString());
+                    break;
+                case "timestamp":
+                    story.setPostedAt(readTimestamp(parser, value));
+                    break;
+                case "insights":
+                    if (value == JsonToken.START_OBJECT) {
+                        decodeInsightsObject(parser, (name, metric) -> applyStoryInsight(story, name, metric));
+                    } else {
+                        parser.skipChildren();
+                    }
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+    }
+
+    // Parser is positioned on the START_OBJECT of {"data": [...]}; returns whether a data array was present
+    private boolean decodeInsightsObject(JsonParser parser, ObjIntConsumer<String> sink) throws IOException {
+        boolean hasData = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("data".equals(field) && value == JsonToken.START_ARRAY) {
+                hasData = true;
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    decodeInsightMetric(parser, sink);
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return hasData;
+    }
+
+    // One {"name": ..., "values": [{"value": n}, ...]} entry; only the first value is used
+    private void decodeInsightMetric(JsonParser parser, ObjIntConsumer<String> sink) throws IOException {
+        String name = null;
+        int metric = 0;
+        boolean hasValue = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("name".equals(field)) {
+                name = parser.getValueAsString();
+            } else if ("values".equals(field) && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String valueField = parser.currentName();
+                        JsonToken valueToken = parser.nextToken();
+                        if (!hasValue && "value".equals(valueField) && valueToken.isScalarValue()) {
+                            metric = parser.getValueAsInt();
+                            hasValue = true;
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (name != null && hasValue) {
+            sink.accept(name, metric);
+        }
+    }
+
+    static void applyPostInsight(InstagramPost post, String name, int value) {
+        switch (name) {
+            case "reach":
+                post.setReach(value);
+                break;
+            case "impressions":
+                post.setImpressions(value);
+                break;
+            case "saved":
+                post.setSaves(value);
+                break;
+            case "shares":
+                post.setShares(value);
+                break;
+        }
+    }
+
+    static void applyStoryInsight(InstagramStory story, String name, int value) {
+        switch (name) {
+            case "replies":
+                story.setReplies(value);
+                break;
+            case "shares":
+                story.setShares(value);
+                break;
+            case "impressions":
+                story.setImpressions(value);
+                break;
+            case "profile_visits":
+                story.setProfileVisits(value);
+                break;
+        }
+    }
+
+    // Read from the parser's buffer, so no String is created for the value
+    private static LocalDateTime readTimestamp(JsonParser parser, JsonToken value) throws IOException {
+        if (value != JsonToken.VALUE_STRING) {
+            parser.skipChildren();
+            return null;
+        }
+        return GraphApiTimestamps.parseLocalDateTime(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+    }
+}
@@ -0,0 +1,148 @@
+package com.instagram.kpi.service;
+
+import java.nio.CharBuffer;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.time.Year;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Parses the yyyy-MM-dd'T'HH:mm:ssZ timestamps of the Graph API (e.g. 2024-06-30T07:00:00+0000)
+ * with the same results as ZonedDateTime.parse with FORMATTER: the date and time as written,
+ * with the offset only used for epoch seconds. Text in exactly that form with unambiguous
+ * field values is read digit by digit without allocating; anything else, including
+ * out-of-range days that the formatter would adjust, goes through the formatter, so odd input
+ * still parses (or fails) the way it always did.
+ */
+public final class GraphApiTimestamps {
+    public static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssZ");
+
+    private static final int LENGTH = "2024-06-30T07:00:00+0000".length();
+    // Returned by read() when the text has to go through the formatter
+    private static final long UNPARSED = -1L;
+
+    private GraphApiTimestamps() {
+    }
+
+    public static LocalDateTime parseLocalDateTime(CharSequence text) {
+        long fields = read(text, null, 0, text.length());
+        return fields == UNPARSED ? ZonedDateTime.parse(text, FORMATTER).toLocalDateTime() : toLocalDateTime(fields);
+    }
+
+    // For text still in a parser's buffer, e.g. JsonParser.getTextCharacters()
+    public static LocalDateTime parseLocalDateTime(char[] chars, int offset, int length) {
+        long fields = read(null, chars, offset, length);
+        return fields == UNPARSED
+            ? ZonedDateTime.parse(CharBuffer.wrap(chars, offset, length), FORMATTER).toLocalDateTime()
+            : toLocalDateTime(fields);
+    }
+
+    public static LocalDate parseLocalDate(CharSequence text) {
+        long fields = read(text, null, 0, text.length());
+        return fields == UNPARSED ? ZonedDateTime.parse(text, FORMATTER).toLocalDate() : toLocalDate(fields);
+    }
+
+    public static long parseEpochSecond(CharSequence text) {
+        long fields = read(text, null, 0, text.length());
+        if (fields == UNPARSED) {
+            return ZonedDateTime.parse(text, FORMATTER).toEpochSecond();
+        }
+        return toLocalDate(fields).toEpochDay() * 86_400 + hour(fields) * 3_600L + minute(fields) * 60L
+            + second(fields) - offsetMinutes(fields) * 60L;
+    }
+
+    /*
+     * Fields packed into one long so the fast path allocates nothing:
+     * second 0-5, minute 6-11, hour 12-16, day 17-21, month 22-25, year 26-39,
+     * offset minutes + 1080 40-51.
+     */
+    private static long read(CharSequence text, char[] chars, int offset, int length) {
+        if (length != LENGTH
+                || charAt(text, chars, offset, 4) != '-' || charAt(text, chars, offset, 7) != '-'
+                || charAt(text, chars, offset, 10) != 'T'
+                || charAt(text, chars, offset, 13) != ':' || charAt(text, chars, offset, 16) != ':') {
+            return UNPARSED;
+        }
+        char sign = charAt(text, chars, offset, 19);
+        if (sign != '+' && sign != '-') {
+            return UNPARSED;
+        }
+        int year = digits(text, chars, offset, 0, 4);
+        int month = digits(text, chars, offset, 5, 2);
+        int day = digits(text, chars, offset, 8, 2);
+        int hour = digits(text, chars, offset, 11, 2);
+        int minute = digits(text, chars, offset, 14, 2);
+        int second = digits(text, chars, offset, 17, 2);
+        int offsetHours = digits(text, chars, offset, 20, 2);
+        int offsetMins = digits(text, chars, offset, 22, 2);
+        if ((year | month | day | hour | minute | second | offsetHours | offsetMins) < 0) {
+            return UNPARSED;
+        }
+        // Year 0, days past the end of the month, 24:00, leap seconds and "-0000" are left to the formatter
+        if (year == 0 || month < 1 || month > 12 || day < 1
+                || (day > 28 && day > Month.of(month).length(Year.isLeap(year)))
+                || hour > 23 || minute > 59 || second > 59
+                || offsetHours > 17 || offsetMins > 59
+                || (sign == '-' && offsetHours == 0 && offsetMins == 0)) {
+            return UNPARSED;
+        }
+        int offsetMinutes = (sign == '-' ? -1 : 1) * (offsetHours * 60 + offsetMins);
+        return second | (long) minute << 6 | (long) hour << 12 | (long) day << 17 | (long) month << 22
+            | (long) year << 26 | (long) (offsetMinutes + 1080) << 40;
+    }
+
+    private static char charAt(CharSequence text, char[] chars, int offset, int index) {
+        return chars != null ? chars[offset + index] : text.charAt(index);
+    }
+
+    // Value of count decimal digits starting at index, or -1 if any of them isn't an ASCII digit
+    private static int digits(CharSequence text, char[] chars, int offset, int index, int count) {
+        int value = 0;
+        for (int i = index; i < index + count; i++) {
+            int digit = charAt(text, chars, offset, i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static LocalDateTime toLocalDateTime(long fields) {
+        return LocalDateTime.of(year(fields), month(fields), day(fields), hour(fields), minute(fields), second(fields));
+    }
+
+    private static LocalDate toLocalDate(long fields) {
+        return LocalDate.of(year(fields), month(fields), day(fields));
+    }
+
+    private static int second(long fields) {
+        return (int) (fields & 0x3F);
+    }
+
+    private static int minute(long fields) {
+        return (int) (fields >>> 6 & 0x3F);
+    }
+
+    private static int hour(long fields) {
+        return (int) (fields >>> 12 & 0x1F);
+    }
+
+    private static int day(long fields) {
+        return (int) (fields >>> 17 & 0x1F);
+    }
+
+    private static int month(long fields) {
+        return (int) (fields >>> 22 & 0xF);
+    }
+
+    private static int year(long fields) {
+        return (int) (fields >>> 26 & 0x3FFF);
+    }
+
+    private static int offsetMinutes(long fields) {
+        return (int) (fields >>> 40 & 0xFFF) - 1080;
+    }
+}
@@ -0,0 +1,44 @@
+package com.instagram.kpi.service;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Writes ingestion results chunk by chunk inside the caller's transaction. The caller compares
+ * fetched values against the stored row itself and hands over the entities that changed and
+ * the ones that didn't. Unchanged entities are detached before the flush, so Hibernate neither
+ * dirty-checks them nor runs @PreUpdate, and their updatedAt stays put. Changed entities are
+ * flushed together, which lets Hibernate send them as hibernate.jdbc.batch_size statement
+ * batches (inserts and updates grouped by order_inserts/order_updates), and are detached
+ * afterwards so a large refresh only holds one chunk in the persistence context.
+ */
+@Component
+public class IngestionWriteBuffer {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // Returns the written entities; they keep the ids and timestamps assigned by the flush
+    public <T> List<T> write(JpaRepository<T, ?> repository, Collection<T> changed, Collection<T> unchanged) {
+        unchanged.forEach(this::detach);
+        if (changed.isEmpty()) {
+            return List.of();
+        }
+        List<T> written = repository.saveAll(changed);
+        entityManager.flush();
+        written.forEach(this::detach);
+        return written;
+    }
+
+    private void detach(Object entity) {
+        // New rows that were looked at but never saved are not managed, so there is nothing to detach
+        if (entityManager.contains(entity)) {
+            entityManager.detach(entity);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.instagram.kpi.service;
+
+import com.instagram.kpi.model.InstagramAccount;
+import com.instagram.kpi.repository.InstagramAccountKpiRepository;
+import com.instagram.kpi.repository.InstagramAccountRepository;
+import com.instagram.kpi.repository.InstagramPostRepository;
+import com.instagram.kpi.repository.InstagramStoryRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Knows which business accounts are ingested. The account configured through
+ * instagram.api.* is the primary one: it feeds the dashboard and is polled by
+ * AdaptivePollingScheduler. Further accounts live in the instagram_account table
+ * and are refreshed by AccountRefreshCoordinator.
+ */
+@Component
+public class InstagramAccountRegistry {
+    private static final Logger log = LoggerFactory.getLogger(InstagramAccountRegistry.class);
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final InstagramAccountRepository accountRepository;
+    private final InstagramPostRepository postRepository;
+    private final InstagramStoryRepository storyRepository;
+    private final InstagramAccountKpiRepository kpiRepository;
+    private final AccountContext primary;
+
+    public InstagramAccountRegistry(InstagramAccountRepository accountRepository,
+                                    InstagramPostRepository postRepository,
+                                    InstagramStoryRepository storyRepository,
+                                    InstagramAccountKpiRepository kpiRepository,
+                                    @Value("${instagram.api.business-account-id}") String businessAccountId,
+                                    @Value("${instagram.api.access-token}") String accessToken) {
+        this.accountRepository = accountRepository;
+        this.postRepository = postRepository;
+        this.storyRepository = storyRepository;
+        this.kpiRepository = kpiRepository;
+        this.primary = new AccountContext(businessAccountId, accessToken);
+    }
+
+    // Runs before the schedulers start so every lookup by accountId also finds rows written before accounts existed
+    @PostConstruct
+    void assignUnownedRows() {
+        int posts = postRepository.assignUnownedTo(primary.accountId());
+        int stories = storyRepository.assignUnownedTo(primary.accountId());
+        int kpis = kpiRepository.assignUnownedTo(primary.accountId());
+        if (posts + stories + kpis > 0) {
+            log.info("Assigned {} posts, {} stories and {} KPI rows to account {}",
+                posts, stories, kpis, primary.accountId());
+        }
+    }
+
+    // Tokens registered before they were encrypted are rewritten through AccessTokenConverter
+    @PostConstruct
+    void encryptPlaintextTokens() {
+        List<Long> ids = accountRepository.findIdsWithPlaintextToken();
+        if (ids.isEmpty()) {
+            return;
+        }
+        try {
+            for (Long id : ids) {
+                accountRepository.findById(id)
+                    .ifPresent(account -> accountRepository.updateAccessToken(id, account.getAccessToken()));
+            }
+            log.info("Encrypted the stored access tokens of {} accounts", ids.size());
+        } catch (IllegalStateException e) {
+            log.warn("{} accounts have unencrypted access tokens: {}", ids.size(), e.getMessage());
+        }
+    }
+
+    public AccountContext primary() {
+        return primary;
+    }
+
+    public boolean isPrimary(String accountId) {
+        return primary.accountId().equals(accountId);
+    }
+
+    // Account a read endpoint serves when the client didn't name one
+    public String resolve(String accountId) {
+        return accountId == null || accountId.isBlank() ? primary.accountId() : accountId;
+    }
+
+    public List<InstagramAccount> findAll() {
+        return accountRepository.findAll();
+    }
+
+    // Registered accounts other than the primary one, least recently refreshed first
+    public List<AccountContext> dueAccounts(int limit) {
+        return accountRepository.findEnabledByRefreshDue().stream()
+            .filter(account -> !isPrimary(account.getAccountId()))
+            .limit(limit)
+            .map(account -> new AccountContext(account.getAccountId(), account.getAccessToken()))
+            .toList();
+    }
+
+    // Adds the account or, when it is already registered, replaces its name and token and re-enables it
+    @Transactional
+    public InstagramAccount register(String accountId, String name, String accessToken) {
+        if (accountId == null || accountId.isBlank() || accessToken == null || accessToken.isBlank()) {
+            throw new IllegalArgumentException("accountId and accessToken are required");
+        }
+        InstagramAccount account = accountRepository.findByAccountId(accountId).orElseGet(InstagramAccount::new);
+        account.setAccountId(accountId);
+        account.setName(name);
+        account.setAccessToken(accessToken);
+        account.setEnabled(true);
+        return accountRepository.save(account);
+    }
+
+    @Transactional
+    public boolean disable(String accountId) {
+        return accountRepository.findByAccountId(accountId)
+            .map(account -> {
+                account.setEnabled(false);
+                return true;
+            })
+            .orElse(false);
+    }
+
+    // error is null after a successful refresh
+    @Transactional
+    public void recordRefresh(String accountId, Throwable error) {
+        accountRepository.findByAccountId(accountId).ifPresent(account -> {
+            account.setLastRefreshedAt(LocalDateTime.now());
+            String message = error == null ? null : String.valueOf(error.getMessage());
+            if (message != null && message.length() > MAX_ERROR_LENGTH) {
+                message = message.substring(0, MAX_ERROR_LENGTH);
+            }
+            account.setLastRefreshError(message);
+        });
+    }
+}
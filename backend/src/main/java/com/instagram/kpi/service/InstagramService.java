@@ -6,22 +6,43 @@ import com.instagram.kpi.repository.InstagramPostRepository;
 import com.instagram.kpi.repository.InstagramAccountKpiRepository;
 import com.instagram.kpi.repository.InstagramStoryRepository;
 import com.instagram.kpi.model.InstagramStory;
+import com.instagram.kpi.model.MediaBackfillCheckpoint;
+import com.instagram.kpi.repository.MediaBackfillCheckpointRepository;
+import com.instagram.kpi.service.GraphApiJsonDecoder.MediaPage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
 import org.springframework.web.reactive.function.client.WebClient;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import org.springframework.scheduling.annotation.Scheduled;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
-import java.time.ZonedDateTime;
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
+import java.time.LocalDateTime;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.io.*;
 import java.util.Properties;
 
@@ -29,23 +50,36 @@ import java.util.Properties;
 public class InstagramService {
     private static final Logger log = LoggerFactory.getLogger(InstagramService.class);
 
-    private static final DateTimeFormatter INSTAGRAM_DATE_FORMATTER =
-            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssZ");
-
     private final InstagramPostRepository postRepository;
     private final InstagramAccountKpiRepository accountKpiRepository;
     private final InstagramStoryRepository storyRepository;
-    private final SimpMessagingTemplate messagingTemplate;
-    private final WebClient webClient;
+    private final MediaBackfillCheckpointRepository checkpointRepository;
+    private final KpiUpdatePublisher updatePublisher;
+    private final GraphApiClient graphApiClient;
+    private final ObjectMapper objectMapper;
+    private final GraphApiJsonDecoder decoder;
+    private final MediaPageMapper mediaPageMapper;
+    private final DataVersionTracker versionTracker;
+    private final DashboardResponseCache responseCache;
+    private final KpiRollupStore rollupStore;
+    private final InstagramAccountRegistry accounts;
+    private final MetricHistoryStore historyStore;
+    private final IngestionWriteBuffer writeBuffer;
+    private final KpiMetrics metrics;
+    private final TransactionTemplate transactionTemplate;
+    private final Scheduler persistenceScheduler;
+    private final int maxConcurrency;
+    private final AtomicBoolean backfillRunning = new AtomicBoolean(false);
+    private final AtomicLong settledPostsCursor = new AtomicLong();
+
+    @Value("${instagram.backfill.page-size:100}")
+    private int backfillPageSize;
 
     @Value("${instagram.api.graph-api-version}")
     private String graphApiVersion;
 
-    @Value("${instagram.api.access-token}")
-    private String accessToken;
-
-    @Value("${instagram.api.business-account-id}")
-    private String businessAccountId;
+    @Value("${instagram.api.client.base-url:https://graph.facebook.com}")
+    private String graphApiBaseUrl;
 
     @Value("${facebook.app-id}")
     private String facebookAppId;
@@ -58,125 +92,436 @@ public class InstagramService {
 
     private static final String ENV_FILE_PATH = "backend/.env";
 
+    private static final int INGEST_BATCH_SIZE = 500;
+
+    // Runs of an ingestion transaction that lost a race on a history block before giving up
+    private static final int MAX_PERSIST_ATTEMPTS = 3;
+    // The insights API reports up to 30 days ending today; one extra day covers the timezone edge
+    private static final int KPI_WINDOW_DAYS = 31;
+
+    public static final int MAX_POSTS_PAGE_SIZE = 1000;
+
+    // Attributes of InstagramPost that clients may select through the posts endpoint
+    private static final List<String> POST_FIELDS = List.of(
+        "id", "postId", "caption", "postedAt", "likes", "comments", "shares",
+        "saves", "reach", "impressions", "engagementRate", "saveRate", "virality", "createdAt", "updatedAt");
+
+    // Post attributes /posts/top can rank by; each has an (account_id, metric, id) index
+    public static final List<String> TOP_POST_METRICS = List.of("engagementRate", "saveRate", "virality", "likes");
+
+    public static final int MAX_TOP_POSTS = 100;
+
+    // Graph API limit on the number of requests in one batch call
+    private static final int GRAPH_BATCH_LIMIT = 50;
+
     private static final long FIFTY_DAYS_MILLIS = 50L * 24 * 60 * 60 * 1000;
 
     public InstagramService(InstagramPostRepository postRepository,
                             InstagramAccountKpiRepository accountKpiRepository,
                             InstagramStoryRepository storyRepository,
-                            SimpMessagingTemplate messagingTemplate,
-                            WebClient.Builder webClientBuilder) {
+                            MediaBackfillCheckpointRepository checkpointRepository,
+                            KpiUpdatePublisher updatePublisher,
+                            GraphApiClient graphApiClient,
+                            ObjectMapper objectMapper,
+                            GraphApiJsonDecoder decoder,
+                            MediaPageMapper mediaPageMapper,
+                            DataVersionTracker versionTracker,
+                            DashboardResponseCache responseCache,
+                            KpiRollupStore rollupStore,
+                            InstagramAccountRegistry accounts,
+                            MetricHistoryStore historyStore,
+                            IngestionWriteBuffer writeBuffer,
+                            KpiMetrics metrics,
+                            PlatformTransactionManager transactionManager,
+                            Scheduler persistenceScheduler,
+                            @Value("${instagram.refresh.max-concurrency:4}") int maxConcurrency) {
         this.postRepository = postRepository;
         this.accountKpiRepository = accountKpiRepository;
         this.storyRepository = storyRepository;
-        this.messagingTemplate = messagingTemplate;
-        this.webClient = webClientBuilder.baseUrl("https://graph.facebook.com").build();
+        this.checkpointRepository = checkpointRepository;
+        this.updatePublisher = updatePublisher;
+        this.graphApiClient = graphApiClient;
+        this.objectMapper = objectMapper;
+        this.decoder = decoder;
+        this.mediaPageMapper = mediaPageMapper;
+        this.versionTracker = versionTracker;
+        this.responseCache = responseCache;
+        this.rollupStore = rollupStore;
+        this.accounts = accounts;
+        this.historyStore = historyStore;
+        this.writeBuffer = writeBuffer;
+        this.metrics = metrics;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxConcurrency = maxConcurrency;
+        this.persistenceScheduler = persistenceScheduler;
+    }
+
+    // Posts stored before the derived columns existed get them once; ingestion keeps them current afterwards
+    @PostConstruct
+    void fillMissingDerivedMetrics() {
+        int filled = postRepository.fillMissingDerivedMetrics();
+        if (filled > 0) {
+            log.info("Computed engagement metrics of {} stored posts", filled);
+        }
     }
 
     public List<InstagramPost> getAllPosts() {
         return postRepository.findAll();
     }
 
+    /**
+     * One keyset page of the account's posts, newest first, holding only the requested fields.
+     * id and postedAt are always included since they form the cursor. An unknown field or a
+     * malformed cursor is rejected with IllegalArgumentException.
+     */
+    public List<Map<String, Object>> getPostsPage(String accountId, List<String> fields, String cursor, int limit) {
+        List<String> selected = new ArrayList<>(List.of("id", "postedAt"));
+        for (String field : fields == null || fields.isEmpty() ? POST_FIELDS : fields) {
+            if (!POST_FIELDS.contains(field)) {
+                throw new IllegalArgumentException("Unknown post field: " + field);
+            }
+            if (!selected.contains(field)) {
+                selected.add(field);
+            }
+        }
+
+        LocalDateTime beforePostedAt = null;
+        Long beforeId = null;
+        if (cursor != null && !cursor.isBlank()) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|", 2);
+                beforePostedAt = LocalDateTime.parse(parts[0]);
+                beforeId = Long.parseLong(parts[1]);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Malformed cursor: " + cursor, e);
+            }
+        }
+        return postRepository.findPageProjected(accountId, selected, beforePostedAt, beforeId,
+            Math.min(Math.max(limit, 1), MAX_POSTS_PAGE_SIZE));
+    }
+
+    // Highest ranked posts of the account by one of TOP_POST_METRICS, read from that metric's index
+    public List<InstagramPost> getTopPosts(String accountId, String metric, int limit) {
+        if (!TOP_POST_METRICS.contains(metric)) {
+            throw new IllegalArgumentException("Posts cannot be ranked by: " + metric);
+        }
+        return postRepository.findTopByMetric(accountId, metric, Math.min(Math.max(limit, 1), MAX_TOP_POSTS));
+    }
+
+    // Cursor pointing just past the given row of a getPostsPage result
+    public static String postsCursor(Map<String, Object> lastRow) {
+        return postsCursor((LocalDateTime) lastRow.get("postedAt"), (Long) lastRow.get("id"));
+    }
+
+    public static String postsCursor(LocalDateTime postedAt, Long id) {
+        String position = postedAt + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
     public InstagramPost getPostById(String postId) {
         return postRepository.findByPostId(postId)
                 .orElseThrow(() -> new RuntimeException("Post not found with ID: " + postId));
     }
 
     public void refreshAllData() {
-        log.info("--- Refreshing all Instagram data ---");
-        fetchLatestPosts();
-        fetchAccountKpis();
-        fetchPinnedReel();
-        fetchLatestStory();
+        refreshAllDataAsync().block();
+    }
+
+    /**
+     * Runs the posts, account KPI, pinned reel and story fetches concurrently and
+     * completes once all of them have finished. Blocking JPA work is moved onto the
+     * bounded persistence scheduler so no Netty or Tomcat thread waits on the database.
+     */
+    public Mono<Void> refreshAllDataAsync() {
+        return Mono.defer(() -> {
+            log.info("--- Refreshing all Instagram data ---");
+            long startNanos = System.nanoTime();
+            return Mono.whenDelayError(
+                    fetchLatestPostsAsync(),
+                    fetchAccountKpisAsync(),
+                    fetchPinnedReelAsync(),
+                    fetchLatestStoryAsync())
+                .doOnSuccess(v -> log.info("--- Refresh completed in {} ms ---",
+                    Duration.ofNanos(System.nanoTime() - startNanos).toMillis()));
+        });
+    }
+
+    /**
+     * Refreshes the posts, KPIs and latest story of one registered account concurrently.
+     * Failures are passed on rather than logged and dropped as for the primary account,
+     * so the caller can record them against the account.
+     */
+    public Mono<Void> refreshAccountAsync(AccountContext account) {
+        return Mono.whenDelayError(
+            fetchLatestPostsAsync(account),
+            fetchAccountKpisAsync(account),
+            fetchLatestStoryAsync(account));
     }
 
-    @Transactional
     public void fetchLatestPosts() {
-        try {
-            log.info("Fetching latest posts from Instagram API for account: {}", businessAccountId);
-            
+        fetchLatestPostsAsync().block();
+    }
+
+    public Mono<PollOutcome> fetchLatestPostsAsync() {
+        return fetchLatestPostsAsync(accounts.primary());
+    }
+
+    public Mono<PollOutcome> fetchLatestPostsAsync(AccountContext account) {
+        return metrics.timeFetch("posts", Mono.defer(() -> {
+            log.info("Fetching latest posts from Instagram API for account: {}", account.accountId());
+
             // Enhanced field list for better data coverage
             String mediaUrl = String.format("/%s/%s/media?fields=id,caption,media_type,timestamp,permalink,like_count,comments_count,insights.metric(reach,impressions,saved,comments,shares,likes)&access_token=%s",
-                graphApiVersion, businessAccountId, accessToken);
+                graphApiVersion, account.accountId(), account.accessToken());
+
+            return getMediaPage(mediaUrl)
+                .flatMap(page -> completeMediaPage(account, page))
+                .publishOn(persistenceScheduler)
+                .map(posts -> metrics.timePersist("posts", () -> persistPosts(account.accountId(), posts)))
+                .map(fetchedPosts -> {
+                    int changed = updatePublisher.publishPosts(account.accountId(), fetchedPosts);
+                    log.info("Successfully fetched and updated {} posts ({} changed).", fetchedPosts.size(), changed);
+                    return new PollOutcome(fetchedPosts.size(), changed);
+                });
+        })).onErrorMap(e -> {
+            log.error("Error fetching latest posts", e);
+            return new RuntimeException("Failed to fetch latest posts", e);
+        }).contextWrite(GraphApiClient.forAccount(account.accountId()));
+    }
 
-            JsonNode response = webClient.get()
-                .uri(mediaUrl)
-                .retrieve()
-                .bodyToMono(JsonNode.class)
-                .block();
-
-            List<InstagramPost> fetchedPosts = new ArrayList<>();
-            if (response != null && response.has("data")) {
-                for (JsonNode postNode : response.get("data")) {
-                    String postId = postNode.get("id").asText();
-                    
-                    Optional<InstagramPost> existingPostOpt = postRepository.findByPostId(postId);
-                    InstagramPost post = existingPostOpt.orElse(new InstagramPost());
-                    post.setPostId(postId);
-
-                    if (postNode.has("caption")) {
-                        post.setCaption(postNode.get("caption").asText());
-                    }
-                    if (postNode.has("timestamp")) {
-                        String timestampStr = postNode.get("timestamp").asText();
-                        post.setPostedAt(ZonedDateTime.parse(timestampStr, INSTAGRAM_DATE_FORMATTER).toLocalDateTime());
-                    }
-                    if (postNode.has("like_count")) {
-                        post.setLikes(postNode.get("like_count").asInt());
-                    }
-                     if (postNode.has("comments_count")) {
-                        post.setComments(postNode.get("comments_count").asInt());
-                    }
-                    
-                    // Parse insights if available in the response
-                    if (postNode.has("insights") && postNode.get("insights").has("data")) {
-                        for (JsonNode insightNode : postNode.get("insights").get("data")) {
-                            String name = insightNode.get("name").asText();
-                            int value = insightNode.get("values").get(0).get("value").asInt();
-                            switch (name) {
-                                case "reach":
-                                    post.setReach(value);
-                                    break;
-                                case "impressions":
-                                    post.setImpressions(value);
-                                    break;
-                                case "saved":
-                                    post.setSaves(value);
-                                    break;
-                            }
-                        }
-                    } else {
-                        // Fallback to separate insights call if not included in main response
-                    setPostInsights(post);
+    /**
+     * Pages through the account's entire media history following the Graph API
+     * "after" cursors, persisting each page as it arrives. Pages are only requested
+     * once the previous one has been written, so at most one page is held in memory,
+     * and the cursor is checkpointed with each page so an interrupted run resumes
+     * where it stopped. Emits the total number of media items ingested.
+     */
+    public Mono<Long> backfillMediaHistory() {
+        return Mono.defer(() -> {
+            if (!backfillRunning.compareAndSet(false, true)) {
+                return Mono.error(new IllegalStateException("A media backfill is already running"));
+            }
+            AccountContext account = accounts.primary();
+            return Mono.fromCallable(() -> loadBackfillCheckpoint(account.accountId()))
+                .subscribeOn(persistenceScheduler)
+                .flatMap(checkpoint -> runBackfill(account, checkpoint))
+                .doFinally(signal -> backfillRunning.set(false))
+                .contextWrite(GraphApiClient.forAccount(account.accountId()));
+        });
+    }
+
+    private Mono<Long> runBackfill(AccountContext account, MediaBackfillCheckpoint checkpoint) {
+        log.info("Starting media backfill for account {} from cursor {} ({} already ingested)",
+            account.accountId(), checkpoint.getAfterCursor(), checkpoint.getIngestedCount());
+        return fetchMediaPage(account, checkpoint.getAfterCursor())
+            .expandDeep(page -> page.afterCursor() != null
+                ? fetchMediaPage(account, page.afterCursor())
+                : Mono.empty(), 1)
+            .concatMap(page -> completeMediaPage(account, page)
+                .publishOn(persistenceScheduler)
+                .map(posts -> metrics.timePersist("backfill", () -> persistBackfillPage(checkpoint, posts, page.afterCursor()))), 1)
+            .then(Mono.fromCallable(() -> {
+                log.info("Media backfill for account {} completed: {} items",
+                    account.accountId(), checkpoint.getIngestedCount());
+                return checkpoint.getIngestedCount();
+            }));
+    }
+
+    private MediaBackfillCheckpoint loadBackfillCheckpoint(String accountId) {
+        return transactionTemplate.execute(status -> {
+            MediaBackfillCheckpoint checkpoint = checkpointRepository.findByAccountId(accountId)
+                .orElseGet(() -> {
+                    MediaBackfillCheckpoint fresh = new MediaBackfillCheckpoint();
+                    fresh.setAccountId(accountId);
+                    return fresh;
+                });
+            if (checkpoint.isCompleted()) {
+                // A finished run is started over so newly published media is picked up as well
+                checkpoint.setAfterCursor(null);
+                checkpoint.setLastPostedAt(null);
+                checkpoint.setIngestedCount(0);
+                checkpoint.setCompleted(false);
+            }
+            return checkpointRepository.save(checkpoint);
+        });
+    }
+
+    private MediaBackfillCheckpoint persistBackfillPage(MediaBackfillCheckpoint checkpoint,
+                                                        List<InstagramPost> posts, String nextCursor) {
+        // Read outside the transaction so a rerun doesn't count the page twice
+        long ingestedCount = checkpoint.getIngestedCount() + posts.size();
+        return executeWithRetry(status -> {
+            persistPosts(checkpoint.getAccountId(), posts);
+            checkpoint.setAfterCursor(nextCursor);
+            checkpoint.setCompleted(nextCursor == null);
+            checkpoint.setIngestedCount(ingestedCount);
+            if (!posts.isEmpty()) {
+                checkpoint.setLastPostedAt(posts.get(posts.size() - 1).getPostedAt());
+            }
+            return checkpointRepository.save(checkpoint);
+        });
+    }
+
+    private Mono<MediaPage> fetchMediaPage(AccountContext account, String afterCursor) {
+        String pageUrl = String.format("/%s/%s/media?fields=id,caption,media_type,timestamp,permalink,like_count,comments_count,insights.metric(reach,impressions,saved,comments,shares,likes)&limit=%d&access_token=%s",
+            graphApiVersion, account.accountId(), backfillPageSize, account.accessToken());
+        if (afterCursor != null) {
+            pageUrl += "&after=" + afterCursor;
+        }
+        return getMediaPage(pageUrl);
+    }
+
+    private Mono<List<InstagramPost>> completeMediaPage(AccountContext account, MediaPage page) {
+        // Fallback to separate insights calls for posts that came back without inline insights
+        return fetchMissingInsights(account, page.missingInsights()).thenReturn(page.posts());
+    }
+
+    private Mono<MediaPage> getMediaPage(String uri) {
+        return graphApiClient.getBody(uri)
+            .flatMap(mediaPageMapper::map)
+            .doOnNext(page -> metrics.itemsParsed("media", page.posts().size()))
+            .defaultIfEmpty(MediaPage.EMPTY);
+    }
+
+    private List<InstagramPost> persistPosts(String accountId, List<InstagramPost> fetched) {
+        return executeWithRetry(status -> {
+            // Keyed by postId so a post repeated in the response maps onto a single row
+            Map<String, InstagramPost> merged = new LinkedHashMap<>();
+            boolean anyChanged = false;
+            for (int from = 0; from < fetched.size(); from += INGEST_BATCH_SIZE) {
+                List<InstagramPost> batch = fetched.subList(from, Math.min(from + INGEST_BATCH_SIZE, fetched.size()));
+                Map<String, InstagramPost> existing = new HashMap<>();
+                postRepository.findByPostIdIn(batch.stream().map(InstagramPost::getPostId).toList())
+                    .forEach(post -> existing.put(post.getPostId(), post));
+
+                Map<String, InstagramPost> changed = new LinkedHashMap<>();
+                for (InstagramPost fetchedPost : batch) {
+                    InstagramPost post = existing.computeIfAbsent(fetchedPost.getPostId(), postId -> new InstagramPost());
+                    boolean postChanged = post.getId() == null || !accountId.equals(post.getAccountId());
+                    post.setAccountId(accountId);
+                    postChanged |= copyFetchedFields(fetchedPost, post);
+                    postChanged |= applyDerivedMetrics(post);
+                    if (postChanged) {
+                        changed.put(post.getPostId(), post);
                     }
+                    merged.put(post.getPostId(), post);
+                }
+                List<InstagramPost> unchanged = existing.values().stream()
+                    .filter(post -> !changed.containsKey(post.getPostId()))
+                    .toList();
+                List<InstagramPost> written = writeBuffer.write(postRepository, changed.values(), unchanged);
+                historyStore.recordPosts(written);
+                versionTracker.postsSaved(written);
+                anyChanged |= !written.isEmpty();
+            }
+            if (anyChanged) {
+                responseCache.invalidateAfterCommit();
+            }
+            return new ArrayList<>(merged.values());
+        });
+    }
 
-                    fetchedPosts.add(postRepository.save(post));
+    /**
+     * Runs work in a new transaction, running it again when the commit fails because another
+     * ingestion appended to the same metric history block (see MetricHistoryStore). The work
+     * re-reads everything it merges into, so a rerun starts from the winner's state. Inside an
+     * outer transaction the failure is left to the outer caller, which owns the rerun.
+     */
+    private <T> T executeWithRetry(TransactionCallback<T> work) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(work);
+            } catch (OptimisticLockingFailureException e) {
+                if (attempt == MAX_PERSIST_ATTEMPTS || TransactionSynchronizationManager.isActualTransactionActive()) {
+                    throw e;
                 }
+                log.debug("Concurrent history update, persisting again (attempt {}): {}", attempt + 1, e.getMessage());
             }
-            
-            messagingTemplate.convertAndSend("/topic/kpi-updates", fetchedPosts);
-            log.info("Successfully fetched and updated {} posts.", fetchedPosts.size());
-        } catch (Exception e) {
-            log.error("Error fetching latest posts", e);
-            throw new RuntimeException("Failed to fetch latest posts", e);
         }
     }
 
-    @Transactional
+    /**
+     * Only overwrites what the API actually returned so previously stored values survive
+     * partial responses. Returns whether any stored value differed.
+     */
+    private static boolean copyFetchedFields(InstagramPost source, InstagramPost target) {
+        boolean changed = !Objects.equals(target.getPostId(), source.getPostId());
+        target.setPostId(source.getPostId());
+        if (source.getCaption() != null && !source.getCaption().equals(target.getCaption())) {
+            target.setCaption(source.getCaption());
+            changed = true;
+        }
+        if (source.getPostedAt() != null && !source.getPostedAt().equals(target.getPostedAt())) {
+            target.setPostedAt(source.getPostedAt());
+            changed = true;
+        }
+        if (source.getLikes() != null && !source.getLikes().equals(target.getLikes())) {
+            target.setLikes(source.getLikes());
+            changed = true;
+        }
+        if (source.getComments() != null && !source.getComments().equals(target.getComments())) {
+            target.setComments(source.getComments());
+            changed = true;
+        }
+        if (source.getReach() != null && !source.getReach().equals(target.getReach())) {
+            target.setReach(source.getReach());
+            changed = true;
+        }
+        if (source.getImpressions() != null && !source.getImpressions().equals(target.getImpressions())) {
+            target.setImpressions(source.getImpressions());
+            changed = true;
+        }
+        if (source.getSaves() != null && !source.getSaves().equals(target.getSaves())) {
+            target.setSaves(source.getSaves());
+            changed = true;
+        }
+        if (source.getShares() != null && !source.getShares().equals(target.getShares())) {
+            target.setShares(source.getShares());
+            changed = true;
+        }
+        return changed;
+    }
+
+    // Computed once here so rankings are served from indexed columns instead of on every read; returns whether any rate moved
+    private static boolean applyDerivedMetrics(InstagramPost post) {
+        Double engagementRate = null;
+        Double saveRate = null;
+        Double virality = null;
+        Integer reach = post.getReach();
+        if (reach != null && reach > 0) {
+            int likes = post.getLikes() != null ? post.getLikes() : 0;
+            int comments = post.getComments() != null ? post.getComments() : 0;
+            int shares = post.getShares() != null ? post.getShares() : 0;
+            int saves = post.getSaves() != null ? post.getSaves() : 0;
+            engagementRate = (double) (likes + comments + shares + saves) / reach;
+            saveRate = (double) saves / reach;
+            virality = (double) shares / reach;
+        }
+        boolean changed = !Objects.equals(engagementRate, post.getEngagementRate())
+            || !Objects.equals(saveRate, post.getSaveRate())
+            || !Objects.equals(virality, post.getVirality());
+        post.setEngagementRate(engagementRate);
+        post.setSaveRate(saveRate);
+        post.setVirality(virality);
+        return changed;
+    }
+
     public void fetchPinnedReel() {
-        try {
-            log.info("Fetching pinned reel from Instagram API for account: {}", businessAccountId);
-            
+        fetchPinnedReelAsync().block();
+    }
+
+    public Mono<Void> fetchPinnedReelAsync() {
+        return metrics.timeFetch("pinned-reel", Mono.defer(() -> {
+            AccountContext account = accounts.primary();
+            log.info("Fetching pinned reel from Instagram API for account: {}", account.accountId());
+
             // Remove media_type filter and get all media, then filter for reels
             String pinnedReelUrl = String.format("/%s/%s/media?fields=id,caption,media_type,timestamp,permalink,like_count,comments_count,insights.metric(comments,shares,likes,saves,avg_watch_time)&limit=50&access_token=%s",
-                graphApiVersion, businessAccountId, accessToken);
-
-            JsonNode response = webClient.get()
-                .uri(pinnedReelUrl)
-                .retrieve()
-                .bodyToMono(JsonNode.class)
-                .block();
+                graphApiVersion, account.accountId(), account.accessToken());
 
-            if (response != null && response.has("data")) {
+            return graphApiClient.getJson(pinnedReelUrl);
+        })).doOnNext(response -> {
+            if (response.has("data")) {
                 // Find the first reel in the response
                 for (JsonNode mediaNode : response.get("data")) {
                     if (mediaNode.has("media_type") && "REELS".equals(mediaNode.get("media_type").asText())) {
@@ -186,64 +531,93 @@ public class InstagramService {
                     }
                 }
             }
-        } catch (Exception e) {
+        }).onErrorResume(e -> {
             log.error("Error fetching pinned reel", e);
-        }
+            return Mono.empty();
+        }).then().contextWrite(GraphApiClient.forAccount(accounts.primary().accountId()));
     }
 
-    @Transactional
     public void fetchLatestStory() {
-        try {
-            log.info("Fetching latest story from Instagram API for account: {}", businessAccountId);
-            
-            String latestStoryUrl = String.format("/%s/%s/media?fields=id,media_type,timestamp,insights.metric(replies,shares,impressions,profile_visits)&media_type=STORY&limit=1&access_token=%s",
-                graphApiVersion, businessAccountId, accessToken);
+        fetchLatestStoryAsync().block();
+    }
 
-            JsonNode response = webClient.get()
-                .uri(latestStoryUrl)
-                .retrieve()
-                .bodyToMono(JsonNode.class)
-                .block();
-
-            if (response != null && response.has("data") && response.get("data").size() > 0) {
-                JsonNode storyNode = response.get("data").get(0);
-                InstagramStory story = new InstagramStory();
-                story.setStoryId(storyNode.get("id").asText());
-                if (storyNode.has("timestamp")) {
-                    story.setPostedAt(ZonedDateTime.parse(storyNode.get("timestamp").asText(), INSTAGRAM_DATE_FORMATTER).toLocalDateTime());
-                }
-                if (storyNode.has("insights") && storyNode.get("insights").has("data")) {
-                    for (JsonNode insightNode : storyNode.get("insights").get("data")) {
-                        String name = insightNode.get("name").asText();
-                        int value = insightNode.get("values").get(0).get("value").asInt();
-                        switch (name) {
-                            case "replies":
-                                story.setReplies(value);
-                                break;
-                            case "shares":
-                                story.setShares(value);
-                                break;
-                            case "impressions":
-                                story.setImpressions(value);
-                                break;
-                            case "profile_visits":
-                                story.setProfileVisits(value);
-                                break;
-                        }
-                    }
-                }
-                storyRepository.save(story);
-                log.info("Successfully fetched and saved latest story data: {}", story.getStoryId());
+    public Mono<PollOutcome> fetchLatestStoryAsync() {
+        return fetchLatestStoryAsync(accounts.primary())
+            .onErrorResume(e -> {
+                log.error("Error fetching latest story", e);
+                return Mono.empty();
+            });
+    }
+
+    // Errors are passed on so a registered account's refresh can record them
+    public Mono<PollOutcome> fetchLatestStoryAsync(AccountContext account) {
+        return metrics.timeFetch("story", Mono.defer(() -> {
+            log.info("Fetching latest story from Instagram API for account: {}", account.accountId());
+
+            String latestStoryUrl = String.format("/%s/%s/media?fields=id,media_type,timestamp,insights.metric(replies,shares,impressions,profile_visits)&media_type=STORY&limit=1&access_token=%s",
+                graphApiVersion, account.accountId(), account.accessToken());
+
+            return graphApiClient.get(latestStoryUrl, decoder::decodeFirstStory);
+        })
+        .publishOn(persistenceScheduler)
+        .map(story -> {
+            metrics.itemsParsed("story", 1);
+            InstagramStory changed = metrics.timePersist("story",
+                () -> executeWithRetry(status -> persistStory(account.accountId(), story)));
+            log.info("Successfully fetched and saved latest story data: {}", story.getStoryId());
+            if (changed == null) {
+                return new PollOutcome(1, 0);
             }
-        } catch (Exception e) {
-            log.error("Error fetching latest story", e);
+            updatePublisher.publishStory(account.accountId(), changed);
+            return new PollOutcome(1, 1);
+        })
+        .defaultIfEmpty(PollOutcome.NONE))
+        .contextWrite(GraphApiClient.forAccount(account.accountId()));
+    }
+
+    // Updates the stored story with the same storyId, returning it if any value differed and null otherwise
+    private InstagramStory persistStory(String accountId, InstagramStory fetched) {
+        InstagramStory story = storyRepository.findByStoryId(fetched.getStoryId()).orElseGet(InstagramStory::new);
+        boolean changed = story.getStoryId() == null
+            || !Objects.equals(story.getAccountId(), accountId)
+            || !Objects.equals(story.getPostedAt(), fetched.getPostedAt())
+            || !Objects.equals(story.getReplies(), fetched.getReplies())
+            || !Objects.equals(story.getShares(), fetched.getShares())
+            || !Objects.equals(story.getImpressions(), fetched.getImpressions())
+            || !Objects.equals(story.getProfileVisits(), fetched.getProfileVisits());
+        if (changed) {
+            story.setAccountId(accountId);
+            story.setStoryId(fetched.getStoryId());
+            story.setPostedAt(fetched.getPostedAt());
+            story.setReplies(fetched.getReplies());
+            story.setShares(fetched.getShares());
+            story.setImpressions(fetched.getImpressions());
+            story.setProfileVisits(fetched.getProfileVisits());
+            story = storyRepository.save(story);
+            historyStore.recordStory(story);
+            responseCache.invalidateAfterCommit();
         }
+        return changed ? story : null;
     }
 
-    @Transactional
     public void fetchAccountKpis() {
-        log.info("Fetching account level KPIs");
-        try {
+        fetchAccountKpisAsync().block();
+    }
+
+    public Mono<PollOutcome> fetchAccountKpisAsync() {
+        return fetchAccountKpisAsync(accounts.primary())
+            .onErrorResume(e -> {
+                log.error("Could not fetch account KPIs", e);
+                return Mono.empty();
+            });
+    }
+
+    // Errors are passed on so a registered account's refresh can record them
+    public Mono<PollOutcome> fetchAccountKpisAsync(AccountContext account) {
+        return metrics.timeFetch("account-kpis", Mono.defer(() -> {
+            log.info("Fetching account level KPIs for account: {}", account.accountId());
+            String businessAccountId = account.accountId();
+            String accessToken = account.accessToken();
             LocalDate today = LocalDate.now();
             LocalDate thirtyDaysAgo = today.minusDays(30);
 
@@ -252,67 +626,153 @@ public class InstagramService {
                 "/%s/%s/insights?metric=reach&period=day&since=%s&until=%s&access_token=%s",
                 graphApiVersion, businessAccountId, thirtyDaysAgo, today, accessToken);
 
-            JsonNode reachResponse = webClient.get().uri(reachUrl).retrieve().bodyToMono(JsonNode.class).block();
-
-            if (reachResponse != null && reachResponse.has("data") && reachResponse.get("data").get(0).has("values")) {
-                for (JsonNode dailyReach : reachResponse.get("data").get(0).get("values")) {
-                    LocalDate date = ZonedDateTime.parse(dailyReach.get("end_time").asText(), INSTAGRAM_DATE_FORMATTER).toLocalDate();
-                    int reachValue = dailyReach.get("value").asInt();
-
-                    InstagramAccountKpi kpi = accountKpiRepository.findByDate(date)
-                        .orElse(new InstagramAccountKpi());
-                    
-                    kpi.setDate(date);
-                    kpi.setReach(reachValue);
-                    accountKpiRepository.save(kpi);
-                }
-                log.info("Successfully fetched and updated 30-day reach data.");
-            }
-
-            // 2. Fetch today's total followers and profile views and add to today's record
-            InstagramAccountKpi todayKpi = accountKpiRepository.findByDate(today).orElse(new InstagramAccountKpi());
-            todayKpi.setDate(today);
-
+            // 2. Fetch today's total followers and profile views
             final String followersUrl = String.format(
                 "/%s/%s?fields=followers_count&access_token=%s",
                 graphApiVersion, businessAccountId, accessToken);
-            
-            JsonNode followersResponse = webClient.get().uri(followersUrl).retrieve().bodyToMono(JsonNode.class).block();
-            if (followersResponse != null && followersResponse.has("followers_count")) {
-                todayKpi.setFollowers(followersResponse.get("followers_count").asInt());
-            }
 
             final String profileViewsUrl = String.format(
                 "/%s/%s/insights?metric=profile_views&period=day&metric_type=total_value&access_token=%s",
                 graphApiVersion, businessAccountId, accessToken);
-                
-            JsonNode profileViewsResponse = webClient.get().uri(profileViewsUrl).retrieve().bodyToMono(JsonNode.class).block();
-            if (profileViewsResponse != null && profileViewsResponse.has("data") && profileViewsResponse.get("data").size() > 0) {
-                JsonNode profileViewsData = profileViewsResponse.get("data").get(0);
-                if(profileViewsData.has("total_value") && profileViewsData.get("total_value").has("value")) {
-                    todayKpi.setProfileViews(profileViewsData.get("total_value").get("value").asInt());
+
+            // The three calls are independent, so issue them together and persist once all have answered
+            return Mono.zip(graphApiClient.getJson(reachUrl), graphApiClient.getJson(followersUrl),
+                    graphApiClient.getJson(profileViewsUrl))
+                .publishOn(persistenceScheduler)
+                .map(responses -> metrics.timePersist("account-kpis", () -> executeWithRetry(status -> persistAccountKpis(
+                    businessAccountId, today, responses.getT1(), responses.getT2(), responses.getT3()))))
+                // Published after the commit so subscribers never see rows that could still roll back
+                .map(saved -> new PollOutcome(saved.size(), updatePublisher.publishAccountKpis(businessAccountId, saved)));
+        })).contextWrite(GraphApiClient.forAccount(account.accountId()));
+    }
+
+    /**
+     * Re-reads insights for the next 50 posts published before the cutoff, continuing from
+     * where the previous call stopped and wrapping around at the end. Those posts are no
+     * longer on the first media page, so this is how their settling metrics get updated
+     * outside a full backfill.
+     */
+    public Mono<PollOutcome> refreshSettledPostInsightsAsync(LocalDateTime postedBefore) {
+        AccountContext account = accounts.primary();
+        return metrics.timeFetch("settled-insights", Mono.fromCallable(() -> {
+                List<InstagramPost> stored = postRepository.findTop50ByAccountIdAndPostedAtBeforeAndIdGreaterThanOrderByIdAsc(
+                    account.accountId(), postedBefore, settledPostsCursor.get());
+                if (stored.isEmpty() && settledPostsCursor.get() > 0) {
+                    settledPostsCursor.set(0);
+                    stored = postRepository.findTop50ByAccountIdAndPostedAtBeforeAndIdGreaterThanOrderByIdAsc(
+                        account.accountId(), postedBefore, 0L);
                 }
-            }
-            
-            // 3. Calculate New Followers for today
-            accountKpiRepository.findByDate(today.minusDays(1)).ifPresent(yesterdayKpi -> {
-                if (todayKpi.getFollowers() != null && yesterdayKpi.getFollowers() != null) {
-                    todayKpi.setNewFollowers(todayKpi.getFollowers() - yesterdayKpi.getFollowers());
+                if (!stored.isEmpty()) {
+                    settledPostsCursor.set(stored.get(stored.size() - 1).getId());
                 }
-            });
-            if (todayKpi.getNewFollowers() == null) {
-                todayKpi.setNewFollowers(0);
+                return stored;
+            })
+            .subscribeOn(persistenceScheduler)
+            .flatMap(stored -> {
+                // Detached copies so the lookup does not overwrite stored values the API did not return
+                List<InstagramPost> fetched = stored.stream().map(post -> {
+                    InstagramPost copy = new InstagramPost();
+                    copy.setPostId(post.getPostId());
+                    return copy;
+                }).toList();
+                return fetchMissingInsights(account, fetched).thenReturn(fetched);
+            })
+            .publishOn(persistenceScheduler)
+            .map(fetched -> metrics.timePersist("settled-insights", () -> persistPosts(account.accountId(), fetched)))
+            .map(saved -> new PollOutcome(saved.size(), updatePublisher.publishPosts(account.accountId(), saved))))
+            .onErrorResume(e -> {
+                log.error("Could not refresh insights of settled posts", e);
+                return Mono.empty();
+            })
+            .contextWrite(GraphApiClient.forAccount(account.accountId()));
+    }
+
+    private List<InstagramAccountKpi> persistAccountKpis(String accountId, LocalDate today, JsonNode reachResponse,
+                                                         JsonNode followersResponse, JsonNode profileViewsResponse) {
+        // One query for the whole insights window instead of a lookup per day
+        Map<LocalDate, InstagramAccountKpi> stored = new HashMap<>();
+        accountKpiRepository.findByAccountIdAndDateBetween(accountId, today.minusDays(KPI_WINDOW_DAYS), today)
+            .forEach(kpi -> stored.put(kpi.getDate(), kpi));
+        Map<LocalDate, InstagramAccountKpi> touched = new LinkedHashMap<>();
+        Map<LocalDate, InstagramAccountKpi> changed = new LinkedHashMap<>();
+
+        if (reachResponse.has("data") && reachResponse.get("data").get(0).has("values")) {
+            for (JsonNode dailyReach : reachResponse.get("data").get(0).get("values")) {
+                LocalDate date = GraphApiTimestamps.parseLocalDate(dailyReach.get("end_time").asText());
+                int reachValue = dailyReach.get("value").asInt();
+
+                InstagramAccountKpi kpi = kpiRowFor(accountId, date, stored);
+                if (kpi.getId() == null || !Objects.equals(kpi.getReach(), reachValue)) {
+                    kpi.setReach(reachValue);
+                    changed.put(date, kpi);
+                }
+                touched.put(date, kpi);
             }
+            log.info("Successfully fetched and updated 30-day reach data.");
+        }
 
-            accountKpiRepository.save(todayKpi);
-            log.info("Successfully fetched and updated today's KPIs: {}", todayKpi);
+        // Add today's followers and profile views to today's record
+        InstagramAccountKpi todayKpi = kpiRowFor(accountId, today, stored);
+        boolean todayChanged = todayKpi.getId() == null;
 
-            // 4. Send all data for the last 30 days to the frontend
-            messagingTemplate.convertAndSend("/topic/kpi-updates", accountKpiRepository.findAll());
+        if (followersResponse.has("followers_count")) {
+            int followers = followersResponse.get("followers_count").asInt();
+            todayChanged |= !Objects.equals(todayKpi.getFollowers(), followers);
+            todayKpi.setFollowers(followers);
+        }
 
-        } catch(Exception e) {
-            log.error("Could not fetch account KPIs", e);
+        if (profileViewsResponse.has("data") && profileViewsResponse.get("data").size() > 0) {
+            JsonNode profileViewsData = profileViewsResponse.get("data").get(0);
+            if(profileViewsData.has("total_value") && profileViewsData.get("total_value").has("value")) {
+                int profileViews = profileViewsData.get("total_value").get("value").asInt();
+                todayChanged |= !Objects.equals(todayKpi.getProfileViews(), profileViews);
+                todayKpi.setProfileViews(profileViews);
+            }
         }
+
+        // 3. Calculate New Followers for today
+        Integer newFollowers = todayKpi.getNewFollowers();
+        InstagramAccountKpi yesterdayKpi = stored.get(today.minusDays(1));
+        if (yesterdayKpi != null && todayKpi.getFollowers() != null && yesterdayKpi.getFollowers() != null) {
+            newFollowers = todayKpi.getFollowers() - yesterdayKpi.getFollowers();
+        }
+        if (newFollowers == null) {
+            newFollowers = 0;
+        }
+        todayChanged |= !Objects.equals(todayKpi.getNewFollowers(), newFollowers);
+        todayKpi.setNewFollowers(newFollowers);
+        if (todayChanged) {
+            changed.put(today, todayKpi);
+        }
+        touched.put(today, todayKpi);
+
+        List<InstagramAccountKpi> unchanged = stored.values().stream()
+            .filter(kpi -> !changed.containsKey(kpi.getDate()))
+            .toList();
+        List<InstagramAccountKpi> written = writeBuffer.write(accountKpiRepository, changed.values(), unchanged);
+        if (!written.isEmpty()) {
+            historyStore.recordAccountKpis(written);
+            responseCache.invalidateAfterCommit();
+            if (accounts.isPrimary(accountId)) {
+                rollupStore.recordAfterCommit(written);
+            }
+        }
+        log.info("Successfully fetched and updated today's KPIs: {} ({} of {} rows changed)",
+            todayKpi, written.size(), touched.size());
+
+        // 4. Return the rows touched for the last 30 days so changed ones can be pushed to the frontend
+        return new ArrayList<>(touched.values());
+    }
+
+    // Insights dates normally fall inside the preloaded window; anything older is looked up on its own
+    private InstagramAccountKpi kpiRowFor(String accountId, LocalDate date, Map<LocalDate, InstagramAccountKpi> stored) {
+        return stored.computeIfAbsent(date, d -> accountKpiRepository.findByAccountIdAndDate(accountId, d)
+            .orElseGet(() -> {
+                InstagramAccountKpi kpi = new InstagramAccountKpi();
+                kpi.setAccountId(accountId);
+                kpi.setDate(d);
+                return kpi;
+            }));
     }
 
     @Scheduled(fixedRate = FIFTY_DAYS_MILLIS) // 50 days in milliseconds
@@ -320,8 +780,8 @@ public class InstagramService {
         log.info("Attempting to refresh long-lived Instagram token...");
         try {
             String url = String.format(
-                "https://graph.facebook.com/v23.0/oauth/access_token?grant_type=fb_exchange_token&client_id=%s&client_secret=%s&fb_exchange_token=%s",
-                facebookAppId, facebookAppSecret, facebookShortLivedToken
+                "%s/%s/oauth/access_token?grant_type=fb_exchange_token&client_id=%s&client_secret=%s&fb_exchange_token=%s",
+                graphApiBaseUrl, graphApiVersion, facebookAppId, facebookAppSecret, facebookShortLivedToken
             );
             String response = WebClient.create().get().uri(url).retrieve().bodyToMono(String.class).block();
             if (response != null && response.contains("access_token")) {
@@ -350,37 +810,56 @@ public class InstagramService {
         }
     }
 
-    private void setPostInsights(InstagramPost post) {
-        try {
-            final String insightsUrl = String.format(
-                "/%s/%s/insights?metric=reach,impressions,saved&access_token=%s",
-                graphApiVersion, post.getPostId(), accessToken);
-            
-            JsonNode insightsResponse = webClient.get()
-                .uri(insightsUrl)
-                .retrieve()
-                .bodyToMono(JsonNode.class)
-                .block();
-
-            if (insightsResponse != null && insightsResponse.has("data")) {
-                for (JsonNode insightNode : insightsResponse.get("data")) {
-                    String name = insightNode.get("name").asText();
-                    int value = insightNode.get("values").get(0).get("value").asInt();
-                    switch (name) {
-                        case "reach":
-                            post.setReach(value);
-                            break;
-                        case "impressions":
-                            post.setImpressions(value);
-                            break;
-                        case "saved":
-                            post.setSaves(value);
-                            break;
-                    }
+    /**
+     * Looks up insights for the given posts through the Graph API batch endpoint,
+     * up to 50 posts per request with at most maxConcurrency
+     * batches in flight, and writes the values back onto the posts in place.
+     */
+    private Mono<Void> fetchMissingInsights(AccountContext account, List<InstagramPost> posts) {
+        return Flux.fromIterable(posts)
+            .buffer(GRAPH_BATCH_LIMIT)
+            .flatMap(chunk -> fetchInsightsBatch(account, chunk), maxConcurrency)
+            .then();
+    }
+
+    private Mono<Void> fetchInsightsBatch(AccountContext account, List<InstagramPost> chunk) {
+        ArrayNode batch = objectMapper.createArrayNode();
+        for (InstagramPost post : chunk) {
+            batch.addObject()
+                .put("method", "GET")
+                .put("relative_url", String.format("%s/%s/insights?metric=reach,impressions,saved,shares",
+                    graphApiVersion, post.getPostId()));
+        }
+        MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
+        form.add("access_token", account.accessToken());
+        form.add("batch", batch.toString());
+
+        return graphApiClient.postForm("/", form)
+            .doOnNext(results -> {
+                metrics.itemsParsed("insights", results.size());
+                // Batch responses come back in request order, one entry per relative_url
+                for (int i = 0; i < chunk.size() && i < results.size(); i++) {
+                    applyBatchedInsights(chunk.get(i), results.get(i));
                 }
-            }
-        } catch(Exception e) {
-            log.error("Could not fetch insights for post {}: {}", post.getPostId(), e.getMessage());
+            })
+            .onErrorResume(e -> {
+                log.error("Could not fetch insights batch of {} posts: {}", chunk.size(), e.getMessage());
+                return Mono.empty();
+            })
+            .then();
+    }
+
+    private void applyBatchedInsights(InstagramPost post, JsonNode result) {
+        if (result == null || result.isNull() || result.path("code").asInt() != 200) {
+            log.error("Could not fetch insights for post {}: {}", post.getPostId(),
+                result == null ? "no response" : result.path("body").asText());
+            return;
+        }
+        try {
+            decoder.decodeInsights(result.path("body").asText(),
+                (name, value) -> GraphApiJsonDecoder.applyPostInsight(post, name, value));
+        } catch (IOException e) {
+            log.error("Could not parse insights for post {}: {}", post.getPostId(), e.getMessage());
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,104 @@
+package com.instagram.kpi.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Meters for the ingestion and delivery path, next to graph.api.requests (per Graph API
+ * endpoint, see GraphApiClient) and the http.server.requests and
+ * spring.data.repository.invocations timers Spring Boot records for REST handlers and
+ * repository calls:
+ * - kpi.ingestion.fetch: one fetch from the first Graph API call to the published update, by stage and outcome
+ * - kpi.ingestion.persist: the database work of one fetch, by stage
+ * - kpi.ingestion.items: media and insights entries parsed from Graph API responses, by stage
+ * - kpi.delivery.publish: handing one update to the STOMP broker, by message type
+ * - kpi.delivery.payload: bytes of every STOMP frame sent to a session
+ * Timers publish histograms so percentiles can be computed across instances. Meters are
+ * created once per tag combination and cached, so recording is a map lookup and a clock read.
+ */
+@Component
+public class KpiMetrics {
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final DistributionSummary payloadBytes;
+
+    public KpiMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.payloadBytes = DistributionSummary.builder("kpi.delivery.payload")
+            .description("Bytes of STOMP frames sent to WebSocket sessions")
+            .baseUnit("bytes")
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+    }
+
+    // Times the fetch from subscription to its terminal signal; the Mono is otherwise unchanged
+    public <T> Mono<T> timeFetch(String stage, Mono<T> fetch) {
+        return Mono.defer(() -> {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            return fetch.doFinally(signal -> sample.stop(timer("kpi.ingestion.fetch",
+                "Duration of one ingestion fetch", "stage", stage, "outcome", outcome(signal))));
+        });
+    }
+
+    public <T> T timePersist(String stage, Supplier<T> work) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            return work.get();
+        } finally {
+            sample.stop(timer("kpi.ingestion.persist", "Database time of one ingestion fetch", "stage", stage, null, null));
+        }
+    }
+
+    public void itemsParsed(String stage, int count) {
+        counters.computeIfAbsent(stage, key -> Counter.builder("kpi.ingestion.items")
+                .description("Entries parsed from Graph API responses")
+                .tag("stage", key)
+                .register(meterRegistry))
+            .increment(count);
+    }
+
+    public void published(String type, long nanos) {
+        timer("kpi.delivery.publish", "Time to hand one update to the STOMP broker", "type", type, null, null)
+            .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void payloadSent(int bytes) {
+        payloadBytes.record(bytes);
+    }
+
+    private Timer timer(String name, String description, String tag, String value, String tag2, String value2) {
+        String key = name + '|' + value + '|' + value2;
+        return timers.computeIfAbsent(key, k -> {
+            Timer.Builder builder = Timer.builder(name)
+                .description(description)
+                .tag(tag, value)
+                .publishPercentileHistogram();
+            if (tag2 != null) {
+                builder.tag(tag2, value2);
+            }
+            return builder.register(meterRegistry);
+        });
+    }
+
+    private static String outcome(SignalType signal) {
+        switch (signal) {
+            case ON_COMPLETE:
+                return "success";
+            case ON_ERROR:
+                return "error";
+            default:
+                return "cancelled";
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.instagram.kpi.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UncheckedIOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+/**
+ * Encodes a STOMP update once per payload encoding, so the bytes can be shared by every
+ * subscriber of that encoding instead of being produced per session.
+ */
+@Component
+public class KpiPayloadEncoder {
+
+    /**
+     * Payload encodings a client can ask for with the x-kpi-encoding SUBSCRIBE header. Each
+     * one is published on its own destination (topic + suffix). Binary encodings are sent as
+     * binary WebSocket frames, which SockJS cannot carry, so they are only offered on the
+     * plain WebSocket endpoint.
+     */
+    public enum Encoding {
+        JSON("", MimeTypeUtils.APPLICATION_JSON, false),
+        CBOR(".cbor", MimeTypeUtils.APPLICATION_OCTET_STREAM, true),
+        // zlib-wrapped deflate of the JSON, what DecompressionStream("deflate") reads in browsers
+        DEFLATE(".deflate", MimeTypeUtils.APPLICATION_OCTET_STREAM, true);
+
+        public static final String HEADER = "x-kpi-encoding";
+
+        private final String suffix;
+        private final MimeType contentType;
+        private final boolean binary;
+
+        Encoding(String suffix, MimeType contentType, boolean binary) {
+            this.suffix = suffix;
+            this.contentType = contentType;
+            this.binary = binary;
+        }
+
+        public String destination(String topic) {
+            return topic + suffix;
+        }
+
+        // Encoding whose own destination this is; JSON for the plain topics
+        public static Encoding ofDestination(String destination) {
+            for (Encoding encoding : values()) {
+                if (!encoding.suffix.isEmpty() && destination.endsWith(encoding.suffix)) {
+                    return encoding;
+                }
+            }
+            return JSON;
+        }
+
+        // The plain topic an encoding's destination was derived from
+        public String topic(String destination) {
+            return destination.substring(0, destination.length() - suffix.length());
+        }
+
+        public MimeType contentType() {
+            return contentType;
+        }
+
+        public boolean isBinary() {
+            return binary;
+        }
+
+        public String headerValue() {
+            return name().toLowerCase();
+        }
+
+        public static Encoding parse(String value) {
+            if (value == null || value.isBlank()) {
+                return JSON;
+            }
+            try {
+                return valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown payload encoding: " + value);
+            }
+        }
+    }
+
+    private final ObjectMapper objectMapper;
+    private final CBORMapper cborMapper;
+
+    public KpiPayloadEncoder(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        // Same date handling as the JSON mapper, so both encodings carry identical values
+        this.cborMapper = CBORMapper.builder()
+            .findAndAddModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+    }
+
+    // The JSON is produced at most once and reused for DEFLATE
+    public Map<Encoding, byte[]> encode(Object payload, Set<Encoding> encodings) {
+        Map<Encoding, byte[]> encoded = new EnumMap<>(Encoding.class);
+        try {
+            byte[] json = null;
+            for (Encoding encoding : encodings) {
+                switch (encoding) {
+                    case CBOR:
+                        encoded.put(encoding, cborMapper.writeValueAsBytes(payload));
+                        break;
+                    case DEFLATE:
+                        json = json != null ? json : objectMapper.writeValueAsBytes(payload);
+                        encoded.put(encoding, deflate(json));
+                        break;
+                    default:
+                        json = json != null ? json : objectMapper.writeValueAsBytes(payload);
+                        encoded.put(encoding, json);
+                }
+            }
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+        return encoded;
+    }
+
+    static byte[] deflate(byte[] input) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, input.length / 4));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+}
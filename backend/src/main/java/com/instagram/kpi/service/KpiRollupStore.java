@@ -0,0 +1,355 @@
+package com.instagram.kpi.service;
+
+import com.instagram.kpi.model.InstagramAccountKpi;
+import com.instagram.kpi.repository.InstagramAccountKpiRepository;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * In-memory rollups of the primary account's daily KPIs. Daily values live in int arrays indexed
+ * by day since {@link #BASE_DATE}, and weekly/monthly sums and counts are kept in long/int
+ * arrays that are adjusted by the difference whenever a day is written, so a write
+ * touches three slots instead of recomputing the series. The store is filled from the
+ * database on first use and then follows committed KPI writes. A query is clamped to the
+ * days that have data and may produce at most MAX_BUCKETS buckets, so its cost is bounded
+ * whatever range a client asks for.
+ */
+@Component
+public class KpiRollupStore {
+
+    // A Monday, so day index / 7 is the ISO week index; nothing on Instagram predates it
+    static final LocalDate BASE_DATE = LocalDate.of(2010, 1, 4);
+
+    private static final int ABSENT = Integer.MIN_VALUE;
+
+    // Ten years of daily buckets
+    static final int MAX_BUCKETS = 3_660;
+    static final int MAX_WINDOW = 366;
+
+    public enum Bucket {
+        DAY, WEEK, MONTH;
+
+        public static Bucket parse(String value) {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    public enum Metric {
+        FOLLOWERS("followers", true, InstagramAccountKpi::getFollowers),
+        NEW_FOLLOWERS("newFollowers", false, InstagramAccountKpi::getNewFollowers),
+        PROFILE_VIEWS("profileViews", false, InstagramAccountKpi::getProfileViews),
+        REACH("reach", false, InstagramAccountKpi::getReach);
+
+        private final String param;
+        // A running total (followers on that day) rather than a daily amount, so adding days up means nothing
+        private final boolean runningTotal;
+        private final Function<InstagramAccountKpi, Integer> extractor;
+
+        Metric(String param, boolean runningTotal, Function<InstagramAccountKpi, Integer> extractor) {
+            this.param = param;
+            this.runningTotal = runningTotal;
+            this.extractor = extractor;
+        }
+
+        public String param() {
+            return param;
+        }
+
+        public boolean runningTotal() {
+            return runningTotal;
+        }
+
+        public static Metric parse(String value) {
+            for (Metric metric : values()) {
+                if (metric.param.equals(value.trim())) {
+                    return metric;
+                }
+            }
+            throw new IllegalArgumentException("Unknown metric: " + value);
+        }
+    }
+
+    /**
+     * Per-bucket series of one metric. average is sum / count of days with data, last the value
+     * of the bucket's latest day with data, growth the change of sum against the previous bucket
+     * and movingAverage averages the sums of the last window buckets; entries without enough
+     * data are null. Running totals only get count, average and last: sum, growth and
+     * movingAverage are null for them.
+     */
+    public record MetricSeries(long[] sum, int[] count, Double[] average, Integer[] last, Double[] growth,
+                               Double[] movingAverage) {
+    }
+
+    public record Rollup(Bucket bucket, LocalDate from, LocalDate to, List<LocalDate> starts,
+                         Map<String, MetricSeries> metrics) {
+    }
+
+    private final InstagramAccountKpiRepository kpiRepository;
+    private final InstagramAccountRegistry accounts;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private volatile boolean loaded;
+
+    // Guarded by lock
+    private int[][] days = new int[Metric.values().length][0];
+    private long[][] weekSums = new long[Metric.values().length][0];
+    private int[][] weekCounts = new int[Metric.values().length][0];
+    private long[][] monthSums = new long[Metric.values().length][0];
+    private int[][] monthCounts = new int[Metric.values().length][0];
+    private int firstDay = Integer.MAX_VALUE;
+    private int lastDay = -1;
+
+    public KpiRollupStore(InstagramAccountKpiRepository kpiRepository, InstagramAccountRegistry accounts) {
+        this.kpiRepository = kpiRepository;
+        this.accounts = accounts;
+    }
+
+    // Called from inside the ingestion transaction; rows are applied once they are committed
+    public void recordAfterCommit(Collection<InstagramAccountKpi> kpis) {
+        List<InstagramAccountKpi> written = List.copyOf(kpis);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    record(written);
+                }
+            });
+        } else {
+            record(written);
+        }
+    }
+
+    public void record(Collection<InstagramAccountKpi> kpis) {
+        lock.writeLock().lock();
+        try {
+            // Before the first load the database is the source of truth, so there is nothing to patch
+            if (!loaded) {
+                return;
+            }
+            kpis.forEach(this::apply);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Buckets covering from..to, clamped to the first and last day with data (today when there
+     * is none). Rejects with IllegalArgumentException a to before from, a window outside
+     * 0..MAX_WINDOW and a clamped range of more than MAX_BUCKETS buckets.
+     */
+    public Rollup rollup(Bucket bucket, List<Metric> metrics, LocalDate from, LocalDate to, int window) {
+        if (from != null && to != null && to.isBefore(from)) {
+            throw new IllegalArgumentException("'to' must not be before 'from'");
+        }
+        if (window < 0 || window > MAX_WINDOW) {
+            throw new IllegalArgumentException("'window' must be between 0 and " + MAX_WINDOW);
+        }
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            int dataFrom = firstDay <= lastDay ? firstDay : dayIndex(LocalDate.now());
+            int dataTo = firstDay <= lastDay ? lastDay : dataFrom;
+            // A bound beyond the far end of the data leaves an empty range
+            int fromDay = from == null ? dataFrom : clamp(from, dataFrom, dataTo + 1);
+            int toDay = to == null ? dataTo : clamp(to, dataFrom - 1, dataTo);
+
+            List<LocalDate> starts = new ArrayList<>();
+            List<int[]> ranges = new ArrayList<>();
+            for (int day = fromDay; day <= toDay; ) {
+                if (ranges.size() == MAX_BUCKETS) {
+                    throw new IllegalArgumentException("More than " + MAX_BUCKETS + " buckets requested");
+                }
+                int bucketEnd = Math.min(bucketEndDay(bucket, day), toDay);
+                starts.add(BASE_DATE.plusDays(day));
+                ranges.add(new int[] {day, bucketEnd});
+                day = bucketEnd + 1;
+            }
+
+            Map<String, MetricSeries> series = new LinkedHashMap<>();
+            for (Metric metric : metrics) {
+                series.put(metric.param(), series(bucket, metric, ranges, window));
+            }
+            // A range entirely outside the data comes back empty, with from and to as clamped
+            return new Rollup(bucket, BASE_DATE.plusDays(fromDay), BASE_DATE.plusDays(Math.max(toDay, fromDay)), starts, series);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private MetricSeries series(Bucket bucket, Metric metric, List<int[]> ranges, int window) {
+        int size = ranges.size();
+        long[] sum = new long[size];
+        int[] count = new int[size];
+        Double[] average = new Double[size];
+        Integer[] last = new Integer[size];
+        Double[] growth = new Double[size];
+        Double[] movingAverage = new Double[size];
+        int m = metric.ordinal();
+        long windowSum = 0;
+
+        for (int i = 0; i < size; i++) {
+            int start = ranges.get(i)[0];
+            int end = ranges.get(i)[1];
+            boolean wholeBucket = start == bucketStartDay(bucket, start) && end == bucketEndDay(bucket, start);
+            if (bucket == Bucket.WEEK && wholeBucket) {
+                int week = start / 7;
+                sum[i] = week < weekSums[m].length ? weekSums[m][week] : 0;
+                count[i] = week < weekCounts[m].length ? weekCounts[m][week] : 0;
+            } else if (bucket == Bucket.MONTH && wholeBucket) {
+                int month = monthIndex(start);
+                sum[i] = month < monthSums[m].length ? monthSums[m][month] : 0;
+                count[i] = month < monthCounts[m].length ? monthCounts[m][month] : 0;
+            } else {
+                // Single days and buckets clipped by from/to are summed from the daily values
+                for (int day = start; day <= end && day < days[m].length; day++) {
+                    if (days[m][day] != ABSENT) {
+                        sum[i] += days[m][day];
+                        count[i]++;
+                    }
+                }
+            }
+            average[i] = count[i] > 0 ? (double) sum[i] / count[i] : null;
+            for (int day = Math.min(end, days[m].length - 1); day >= start && count[i] > 0; day--) {
+                if (days[m][day] != ABSENT) {
+                    last[i] = days[m][day];
+                    break;
+                }
+            }
+            if (i > 0 && count[i] > 0 && count[i - 1] > 0 && sum[i - 1] != 0) {
+                growth[i] = (double) (sum[i] - sum[i - 1]) / Math.abs(sum[i - 1]);
+            }
+            windowSum += sum[i] - (i >= window && window > 0 ? sum[i - window] : 0);
+            if (window > 0 && i >= window - 1) {
+                movingAverage[i] = (double) windowSum / window;
+            }
+        }
+        if (metric.runningTotal()) {
+            return new MetricSeries(null, count, average, last, null, null);
+        }
+        return new MetricSeries(sum, count, average, last, growth, movingAverage);
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (!loaded) {
+                kpiRepository.findByAccountId(accounts.primary().accountId()).forEach(this::apply);
+                loaded = true;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Caller holds the write lock
+    private void apply(InstagramAccountKpi kpi) {
+        if (kpi.getDate() == null || kpi.getDate().isBefore(BASE_DATE)) {
+            return;
+        }
+        int day = dayIndex(kpi.getDate());
+        int week = day / 7;
+        int month = monthIndex(day);
+        growTo(day, week, month);
+        firstDay = Math.min(firstDay, day);
+        lastDay = Math.max(lastDay, day);
+
+        for (Metric metric : Metric.values()) {
+            int m = metric.ordinal();
+            Integer value = metric.extractor.apply(kpi);
+            int old = days[m][day];
+            if (old != ABSENT) {
+                weekSums[m][week] -= old;
+                weekCounts[m][week]--;
+                monthSums[m][month] -= old;
+                monthCounts[m][month]--;
+            }
+            days[m][day] = value != null ? value : ABSENT;
+            if (value != null) {
+                weekSums[m][week] += value;
+                weekCounts[m][week]++;
+                monthSums[m][month] += value;
+                monthCounts[m][month]++;
+            }
+        }
+    }
+
+    private void growTo(int day, int week, int month) {
+        for (int m = 0; m < days.length; m++) {
+            if (day >= days[m].length) {
+                int oldLength = days[m].length;
+                days[m] = Arrays.copyOf(days[m], Math.max(day + 1, oldLength * 2));
+                Arrays.fill(days[m], oldLength, days[m].length, ABSENT);
+            }
+            if (week >= weekSums[m].length) {
+                int length = Math.max(week + 1, weekSums[m].length * 2);
+                weekSums[m] = Arrays.copyOf(weekSums[m], length);
+                weekCounts[m] = Arrays.copyOf(weekCounts[m], length);
+            }
+            if (month >= monthSums[m].length) {
+                int length = Math.max(month + 1, monthSums[m].length * 2);
+                monthSums[m] = Arrays.copyOf(monthSums[m], length);
+                monthCounts[m] = Arrays.copyOf(monthCounts[m], length);
+            }
+        }
+    }
+
+    // Day index of date limited to min..max, compared as dates first so far-off dates never reach the int index
+    private static int clamp(LocalDate date, int min, int max) {
+        if (date.isBefore(BASE_DATE.plusDays(min))) {
+            return min;
+        }
+        if (date.isAfter(BASE_DATE.plusDays(max))) {
+            return max;
+        }
+        return dayIndex(date);
+    }
+
+    private static int dayIndex(LocalDate date) {
+        return (int) ChronoUnit.DAYS.between(BASE_DATE, date);
+    }
+
+    private static int monthIndex(int day) {
+        LocalDate date = BASE_DATE.plusDays(day);
+        return (date.getYear() - BASE_DATE.getYear()) * 12 + date.getMonthValue() - 1;
+    }
+
+    private static int bucketStartDay(Bucket bucket, int day) {
+        switch (bucket) {
+            case WEEK:
+                return day - day % 7;
+            case MONTH:
+                return dayIndex(BASE_DATE.plusDays(day).withDayOfMonth(1));
+            default:
+                return day;
+        }
+    }
+
+    private static int bucketEndDay(Bucket bucket, int day) {
+        switch (bucket) {
+            case WEEK:
+                return day - day % 7 + 6;
+            case MONTH:
+                LocalDate date = BASE_DATE.plusDays(day);
+                return dayIndex(date.withDayOfMonth(date.lengthOfMonth()));
+            default:
+                return day;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.instagram.kpi.service;
+
+import com.instagram.kpi.model.AccountKpiSeries;
+import com.instagram.kpi.model.InstagramPost;
+import com.instagram.kpi.model.KpiUpdateMessage;
+import com.instagram.kpi.repository.InstagramAccountKpiRepository;
+import com.instagram.kpi.repository.InstagramPostRepository;
+import com.instagram.kpi.repository.InstagramStoryRepository;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the SNAPSHOT message a client starts from, or resyncs with after missing deltas:
+ * the newest posts, the daily KPIs of the delta window and the latest story, tagged with the
+ * sequence of the last delta published for the account. Older posts are not part of the
+ * snapshot; postsCursor continues from the last one through /api/instagram/posts. All three
+ * are read in one repeatable-read transaction, so a refresh committing meanwhile is either
+ * wholly in the snapshot or wholly after it.
+ */
+@Service
+public class KpiSnapshotService {
+    private final KpiUpdatePublisher publisher;
+    private final InstagramPostRepository postRepository;
+    private final InstagramAccountKpiRepository kpiRepository;
+    private final InstagramStoryRepository storyRepository;
+
+    // A resync of every subscriber after a gap loads this many rows each, however large the account
+    public static final int SNAPSHOT_POSTS = 100;
+
+    public KpiSnapshotService(KpiUpdatePublisher publisher, InstagramPostRepository postRepository,
+                              InstagramAccountKpiRepository kpiRepository, InstagramStoryRepository storyRepository) {
+        this.publisher = publisher;
+        this.postRepository = postRepository;
+        this.kpiRepository = kpiRepository;
+        this.storyRepository = storyRepository;
+    }
+
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public KpiUpdateMessage snapshot(String accountId) {
+        // Sequence is read before the first query fixes the transaction's view, and deltas are only
+        // published after their commit, so the view holds at least everything up to it; deltas racing
+        // with the snapshot are re-sent later and merge idempotently
+        long sequence = publisher.currentSequence(accountId);
+        // One extra row tells whether older posts remain
+        List<InstagramPost> posts = new ArrayList<>(
+            postRepository.findByAccountIdOrderByPostedAtDescIdDesc(accountId, Limit.of(SNAPSHOT_POSTS + 1)));
+        String postsCursor = null;
+        if (posts.size() > SNAPSHOT_POSTS) {
+            posts.remove(SNAPSHOT_POSTS);
+            InstagramPost last = posts.get(SNAPSHOT_POSTS - 1);
+            postsCursor = InstagramService.postsCursor(last.getPostedAt(), last.getId());
+        }
+        // Same window the deltas are limited to, so a snapshot doesn't carry the whole KPI history
+        LocalDate today = LocalDate.now();
+        KpiUpdateMessage snapshot = new KpiUpdateMessage(KpiUpdateMessage.Type.SNAPSHOT, sequence, posts,
+            kpiRepository.findByAccountIdAndDateBetweenOrderByDateAsc(accountId, AccountKpiSeries.defaultFrom(today), today),
+            storyRepository.findTopByAccountIdOrderByPostedAtDesc(accountId).orElse(null));
+        snapshot.setPostsCursor(postsCursor);
+        return snapshot;
+    }
+}
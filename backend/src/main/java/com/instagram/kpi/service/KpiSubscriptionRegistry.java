@@ -0,0 +1,115 @@
+package com.instagram.kpi.service;
+
+import com.instagram.kpi.service.KpiPayloadEncoder.Encoding;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Inbound channel interceptor that routes KPI subscriptions by payload encoding. A SUBSCRIBE
+ * to /topic/kpi-updates[/{accountId}] carrying x-kpi-encoding is moved to that encoding's
+ * destination, and the number of subscriptions per encoding is tracked so the publisher
+ * only encodes what somebody reads. Subscribing to an encoding's destination by name counts
+ * the same as the header, and binary ones are refused outside the binary endpoint. JSON is
+ * always published, since it is what the dashboard and clients without the header receive.
+ */
+@Component
+public class KpiSubscriptionRegistry implements ChannelInterceptor {
+    // Session attribute set by the handshake of the endpoint that can carry binary frames
+    public static final String BINARY_FRAMES_ATTRIBUTE = "kpi.binaryFrames";
+
+    // sessionId -> subscriptionId -> encoding
+    private final Map<String, Map<String, Encoding>> sessions = new ConcurrentHashMap<>();
+    private final AtomicIntegerArray counts = new AtomicIntegerArray(Encoding.values().length);
+
+    public Set<Encoding> encodingsInUse() {
+        Set<Encoding> inUse = EnumSet.of(Encoding.JSON);
+        for (Encoding encoding : Encoding.values()) {
+            if (counts.get(encoding.ordinal()) > 0) {
+                inUse.add(encoding);
+            }
+        }
+        return inUse;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
+        StompCommand command = accessor.getCommand();
+        if (command == null || accessor.getSessionId() == null) {
+            return message;
+        }
+        switch (command) {
+            case SUBSCRIBE:
+                return subscribe(message, accessor);
+            case UNSUBSCRIBE:
+                Map<String, Encoding> subscriptions = sessions.get(accessor.getSessionId());
+                if (subscriptions != null && accessor.getSubscriptionId() != null) {
+                    release(subscriptions.remove(accessor.getSubscriptionId()));
+                }
+                return message;
+            case DISCONNECT:
+                // Also sent by Spring when a connection drops without a DISCONNECT frame
+                Map<String, Encoding> ended = sessions.remove(accessor.getSessionId());
+                if (ended != null) {
+                    ended.values().forEach(this::release);
+                }
+                return message;
+            default:
+                return message;
+        }
+    }
+
+    private Message<?> subscribe(Message<?> message, StompHeaderAccessor accessor) {
+        String destination = accessor.getDestination();
+        if (destination == null || accessor.getSubscriptionId() == null
+                || !destination.startsWith(KpiUpdatePublisher.TOPIC)) {
+            return message;
+        }
+        // A client may also name an encoding's destination directly; it gets the same checks as the header
+        Encoding suffixed = Encoding.ofDestination(destination);
+        String header = accessor.getFirstNativeHeader(Encoding.HEADER);
+        Encoding encoding;
+        try {
+            encoding = header == null ? suffixed : Encoding.parse(header);
+        } catch (IllegalArgumentException e) {
+            throw new MessagingException(message, e.getMessage());
+        }
+        if (suffixed != Encoding.JSON && encoding != suffixed) {
+            throw new MessagingException(message,
+                destination + " carries " + suffixed.headerValue() + " payloads, not " + encoding.headerValue());
+        }
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        if (encoding.isBinary() && (attributes == null || !Boolean.TRUE.equals(attributes.get(BINARY_FRAMES_ATTRIBUTE)))) {
+            throw new MessagingException(message,
+                "Encoding " + encoding.headerValue() + " needs binary frames; connect to the plain WebSocket endpoint");
+        }
+        Encoding previous = sessions.computeIfAbsent(accessor.getSessionId(), id -> new ConcurrentHashMap<>())
+            .put(accessor.getSubscriptionId(), encoding);
+        release(previous);
+        counts.incrementAndGet(encoding.ordinal());
+        String routed = encoding.destination(suffixed.topic(destination));
+        if (routed.equals(destination)) {
+            return message;
+        }
+        accessor.setDestination(routed);
+        return MessageBuilder.createMessage(message.getPayload(), accessor.getMessageHeaders());
+    }
+
+    private void release(Encoding encoding) {
+        if (encoding != null) {
+            counts.decrementAndGet(encoding.ordinal());
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.instagram.kpi.service;
+
+import com.instagram.kpi.model.AccountKpiSeries;
+import com.instagram.kpi.model.InstagramAccountKpi;
+import com.instagram.kpi.model.InstagramPost;
+import com.instagram.kpi.model.InstagramStory;
+import com.instagram.kpi.model.KpiUpdateMessage;
+import com.instagram.kpi.service.KpiPayloadEncoder.Encoding;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Publishes refresh results on /topic/kpi-updates as deltas. A digest of the last published
+ * values of the newest posts and of every daily KPI row is remembered, and only rows that differ
+ * from it are sent.
+ * Each message carries a sequence number so a client that sees a gap can ask for a snapshot.
+ * The primary account publishes on /topic/kpi-updates, every other account on
+ * /topic/kpi-updates/{accountId} with its own values and sequence. KPI deltas are limited to
+ * the last {@link AccountKpiSeries#DEFAULT_WINDOW_DAYS} days. Subscribers that asked for CBOR or
+ * deflate (see KpiSubscriptionRegistry) get the same update on the encoding's own destination,
+ * and every update is also handed to the SSE clients of the account (see KpiUpdateStream).
+ */
+@Component
+public class KpiUpdatePublisher {
+    private static final Logger log = LoggerFactory.getLogger(KpiUpdatePublisher.class);
+
+    public static final String TOPIC = "/topic/kpi-updates";
+
+    // Posts tracked per account, least recently published evicted first. The settled-posts rotation
+    // eventually passes every stored post through here; an evicted post coming round again is sent
+    // once more, which a client applies as a no-op
+    static final int TRACKED_POSTS = 2 * KpiSnapshotService.SNAPSHOT_POSTS;
+
+    private static final class Channel {
+        final String accountId;
+        final String topic;
+        // Held across the send so deltas leave in sequence order; per account, so a slow send only
+        // delays its own account. A lock rather than synchronized, so a virtual thread blocked in the
+        // send doesn't pin its carrier
+        final Lock lock = new ReentrantLock();
+        // Guarded by lock; keyed by postId and date, values digest the fields a client renders
+        final Map<String, Long> publishedPosts = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > TRACKED_POSTS;
+            }
+        };
+        final Map<LocalDate, Long> publishedKpis = new HashMap<>();
+        long sequence;
+
+        Channel(String accountId, String topic) {
+            this.accountId = accountId;
+            this.topic = topic;
+        }
+    }
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final InstagramAccountRegistry accounts;
+    private final KpiMetrics metrics;
+    private final KpiPayloadEncoder payloadEncoder;
+    private final KpiSubscriptionRegistry subscriptions;
+    private final KpiUpdateStream stream;
+
+    private final Map<String, Channel> channels = new ConcurrentHashMap<>();
+
+    public KpiUpdatePublisher(SimpMessagingTemplate messagingTemplate, InstagramAccountRegistry accounts,
+                              KpiMetrics metrics, KpiPayloadEncoder payloadEncoder,
+                              KpiSubscriptionRegistry subscriptions, KpiUpdateStream stream) {
+        this.messagingTemplate = messagingTemplate;
+        this.accounts = accounts;
+        this.metrics = metrics;
+        this.payloadEncoder = payloadEncoder;
+        this.subscriptions = subscriptions;
+        this.stream = stream;
+    }
+
+    // Returns the number of posts that differed from the last published values
+    public int publishPosts(String accountId, Collection<InstagramPost> posts) {
+        Channel channel = channel(accountId);
+        channel.lock.lock();
+        try {
+            return publishChangedPosts(channel, posts);
+        } finally {
+            channel.lock.unlock();
+        }
+    }
+
+    private int publishChangedPosts(Channel channel, Collection<InstagramPost> posts) {
+        List<InstagramPost> changed = new ArrayList<>();
+        for (InstagramPost post : posts) {
+            long values = digest(post.getCaption(), post.getPostedAt(), post.getLikes(),
+                post.getComments(), post.getShares(), post.getSaves(), post.getReach(), post.getImpressions());
+            if (!Long.valueOf(values).equals(channel.publishedPosts.put(post.getPostId(), values))) {
+                changed.add(post);
+            }
+        }
+        if (!changed.isEmpty()) {
+            send(channel, new KpiUpdateMessage(KpiUpdateMessage.Type.POSTS, ++channel.sequence, changed, null));
+        }
+        return changed.size();
+    }
+
+    // Returns the number of daily rows that differed from the last published values
+    public int publishAccountKpis(String accountId, Collection<InstagramAccountKpi> kpis) {
+        Channel channel = channel(accountId);
+        channel.lock.lock();
+        try {
+            return publishChangedKpis(channel, kpis);
+        } finally {
+            channel.lock.unlock();
+        }
+    }
+
+    private int publishChangedKpis(Channel channel, Collection<InstagramAccountKpi> kpis) {
+        // Deltas cover the same window as the snapshot and the REST default; older days are forgotten
+        LocalDate windowStart = AccountKpiSeries.defaultFrom(LocalDate.now());
+        channel.publishedKpis.keySet().removeIf(date -> date.isBefore(windowStart));
+        List<InstagramAccountKpi> changed = new ArrayList<>();
+        for (InstagramAccountKpi kpi : kpis) {
+            if (kpi.getDate().isBefore(windowStart)) {
+                continue;
+            }
+            long values = digest(kpi.getFollowers(), kpi.getNewFollowers(), kpi.getProfileViews(),
+                kpi.getReach(), kpi.getPinnedReelComments(), kpi.getPinnedReelShares(), kpi.getPinnedReelLikes(),
+                kpi.getPinnedReelSaves(), kpi.getPinnedReelWatchTime());
+            if (!Long.valueOf(values).equals(channel.publishedKpis.put(kpi.getDate(), values))) {
+                changed.add(kpi);
+            }
+        }
+        if (!changed.isEmpty()) {
+            send(channel, new KpiUpdateMessage(KpiUpdateMessage.Type.ACCOUNT_KPIS, ++channel.sequence, null, changed));
+        }
+        return changed.size();
+    }
+
+    // Stories are only published when ingestion stored a changed one, so there is nothing to compare here
+    public void publishStory(String accountId, InstagramStory story) {
+        Channel channel = channel(accountId);
+        channel.lock.lock();
+        try {
+            send(channel, new KpiUpdateMessage(KpiUpdateMessage.Type.STORY, ++channel.sequence, null, null, story));
+        } finally {
+            channel.lock.unlock();
+        }
+    }
+
+    /**
+     * Sequence of the last delta sent for the account. A snapshot tagged with it lets a
+     * client apply every later delta in order.
+     */
+    public long currentSequence(String accountId) {
+        Channel channel = channel(accountId);
+        channel.lock.lock();
+        try {
+            return channel.sequence;
+        } finally {
+            channel.lock.unlock();
+        }
+    }
+
+    private Channel channel(String accountId) {
+        return channels.computeIfAbsent(accountId,
+            id -> new Channel(id, accounts.isPrimary(id) ? TOPIC : TOPIC + "/" + id));
+    }
+
+    // 64-bit mix of the values' hashes, so that unlike a 31-polynomial offsetting changes in two
+    // counters don't cancel out; null is kept apart from 0
+    static long digest(Object... values) {
+        long digest = 0;
+        for (Object value : values) {
+            digest = (digest ^ (value == null ? 0x9E3779B9L : value.hashCode() & 0xFFFFFFFFL)) * 0xBF58476D1CE4E5B9L;
+            digest ^= digest >>> 31;
+        }
+        return digest;
+    }
+
+    // Encoded once per encoding in use; the broker hands the same bytes to every subscriber
+    private void send(Channel channel, KpiUpdateMessage message) {
+        long startNanos = System.nanoTime();
+        payloadEncoder.encode(message, subscriptions.encodingsInUse()).forEach((encoding, payload) -> {
+            SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            headers.setContentType(encoding.contentType());
+            headers.setNativeHeader(Encoding.HEADER, encoding.headerValue());
+            messagingTemplate.send(encoding.destination(channel.topic),
+                MessageBuilder.createMessage(payload, headers.getMessageHeaders()));
+        });
+        stream.publish(channel.accountId, message);
+        metrics.published(message.getType().name(), System.nanoTime() - startNanos);
+        log.debug("Published {} update #{} on {}", message.getType(), message.getSequence(), channel.topic);
+    }
+}
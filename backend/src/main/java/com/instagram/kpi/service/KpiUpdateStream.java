@@ -0,0 +1,96 @@
+package com.instagram.kpi.service;
+
+import com.instagram.kpi.model.KpiUpdateMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.concurrent.Queues;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Hands the updates KpiUpdatePublisher sends to SSE clients. Every client has its own bounded
+ * buffer that is offered to without blocking, so a client reading slower than updates arrive
+ * only affects itself: once its buffer overflows it gets no further deltas, reads what was
+ * already buffered and then starts over from a fresh snapshot.
+ */
+@Component
+public class KpiUpdateStream {
+    private static final Logger log = LoggerFactory.getLogger(KpiUpdateStream.class);
+
+    private static final class Client {
+        final Sinks.Many<KpiUpdateMessage> sink;
+        final AtomicBoolean resync;
+
+        Client(int bufferSize, AtomicBoolean resync) {
+            this.sink = Sinks.many().unicast().onBackpressureBuffer(Queues.<KpiUpdateMessage>get(bufferSize).get());
+            this.resync = resync;
+        }
+    }
+
+    private final int bufferSize;
+    private final Map<String, Set<Client>> clients = new ConcurrentHashMap<>();
+
+    public KpiUpdateStream(@Value("${instagram.stream.client-buffer-size:32}") int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * A snapshot followed by every update published for the account. The snapshot supplier
+     * runs off the calling thread, since it queries the database.
+     */
+    public Flux<KpiUpdateMessage> updates(String accountId, Supplier<KpiUpdateMessage> snapshot) {
+        return Flux.defer(() -> {
+            AtomicBoolean resync = new AtomicBoolean();
+            return Flux.defer(() -> {
+                    resync.set(false);
+                    Client client = new Client(bufferSize, resync);
+                    // Registered before the snapshot is read, so deltas published meanwhile are buffered, not lost
+                    clients.compute(accountId, (id, subscribers) -> {
+                        Set<Client> updated = subscribers != null ? subscribers : ConcurrentHashMap.newKeySet();
+                        updated.add(client);
+                        return updated;
+                    });
+                    return Mono.fromSupplier(snapshot)
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .concatWith(client.sink.asFlux())
+                        .doFinally(signal -> remove(accountId, client));
+                })
+                .repeat(resync::get);
+        });
+    }
+
+    // Called by KpiUpdatePublisher while it holds its lock, so emissions are never concurrent
+    void publish(String accountId, KpiUpdateMessage message) {
+        Set<Client> subscribers = clients.get(accountId);
+        if (subscribers == null) {
+            return;
+        }
+        for (Client client : subscribers) {
+            if (client.resync.get()) {
+                continue;
+            }
+            if (client.sink.tryEmitNext(message) == Sinks.EmitResult.FAIL_OVERFLOW) {
+                log.debug("SSE client of account {} fell {} updates behind, resyncing", accountId, bufferSize);
+                client.resync.set(true);
+                client.sink.tryEmitComplete();
+            }
+        }
+    }
+
+    private void remove(String accountId, Client client) {
+        clients.computeIfPresent(accountId, (id, subscribers) -> {
+            subscribers.remove(client);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+    }
+}
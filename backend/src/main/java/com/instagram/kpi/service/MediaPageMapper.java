@@ -0,0 +1,118 @@
+package com.instagram.kpi.service;
+
+import com.instagram.kpi.model.InstagramPost;
+import com.instagram.kpi.service.GraphApiJsonDecoder.MediaPage;
+import com.instagram.kpi.service.GraphApiJsonDecoder.MediaPageIndex;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Maps /media pages to posts on the bounded mediaDecodePool. One sequential pass only finds
+ * where each entry starts and ends; the entries, where the strings, timestamps and nested
+ * insights are, are then split in halves down to SPLIT_THRESHOLD and decoded in parallel.
+ * Every entry is written to its own slot, so posts come out in response order however the
+ * work was split. Pages no larger than SPLIT_THRESHOLD are decoded on the calling thread.
+ */
+@Component
+public class MediaPageMapper {
+    static final int SPLIT_THRESHOLD = 16;
+
+    private final GraphApiJsonDecoder decoder;
+    private final ForkJoinPool pool;
+
+    public MediaPageMapper(GraphApiJsonDecoder decoder, ForkJoinPool mediaDecodePool) {
+        this.decoder = decoder;
+        this.pool = mediaDecodePool;
+    }
+
+    // Completes on a pool thread, so neither the Netty thread nor the persistence stage waits for the decode
+    public Mono<MediaPage> map(byte[] body) {
+        return Mono.defer(() -> {
+            MediaPageIndex index = index(body);
+            if (index.size() <= SPLIT_THRESHOLD) {
+                return Mono.just(decode(body, index));
+            }
+            return Mono.fromFuture(CompletableFuture.supplyAsync(() -> decode(body, index), pool));
+        });
+    }
+
+    private MediaPageIndex index(byte[] body) {
+        try {
+            return decoder.indexMediaPage(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Inside the pool this forks; anywhere else it runs the entries in sequence
+    private MediaPage decode(byte[] body, MediaPageIndex index) {
+        DecodeTask task = new DecodeTask(body, index);
+        task.invoke();
+        return task.page();
+    }
+
+    private final class DecodeTask extends RecursiveAction {
+        private final byte[] body;
+        private final MediaPageIndex index;
+        private final InstagramPost[] posts;
+        private final boolean[] hasInsights;
+        private final int from;
+        private final int to;
+
+        DecodeTask(byte[] body, MediaPageIndex index) {
+            this(body, index, new InstagramPost[index.size()], new boolean[index.size()], 0, index.size());
+        }
+
+        private DecodeTask(byte[] body, MediaPageIndex index, InstagramPost[] posts, boolean[] hasInsights,
+                           int from, int to) {
+            this.body = body;
+            this.index = index;
+            this.posts = posts;
+            this.hasInsights = hasInsights;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SPLIT_THRESHOLD || !inForkJoinPool()) {
+                decodeRange();
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new DecodeTask(body, index, posts, hasInsights, from, middle),
+                new DecodeTask(body, index, posts, hasInsights, middle, to));
+        }
+
+        private void decodeRange() {
+            try {
+                for (int i = from; i < to; i++) {
+                    InstagramPost post = new InstagramPost();
+                    hasInsights[i] = decoder.decodePost(body, index, i, post);
+                    posts[i] = post;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        MediaPage page() {
+            List<InstagramPost> missingInsights = new ArrayList<>();
+            for (int i = 0; i < posts.length; i++) {
+                if (!hasInsights[i]) {
+                    missingInsights.add(posts[i]);
+                }
+            }
+            return new MediaPage(new ArrayList<>(Arrays.asList(posts)), missingInsights, index.afterCursor());
+        }
+    }
+}
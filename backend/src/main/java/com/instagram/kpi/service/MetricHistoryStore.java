@@ -0,0 +1,191 @@
+package com.instagram.kpi.service;
+
+import com.instagram.kpi.model.InstagramAccountKpi;
+import com.instagram.kpi.model.InstagramPost;
+import com.instagram.kpi.model.InstagramStory;
+import com.instagram.kpi.model.MetricSnapshotBlock;
+import com.instagram.kpi.repository.MetricSnapshotBlockRepository;
+import com.instagram.kpi.service.SnapshotBlockCodec.Columns;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Append-only history of the metrics ingestion overwrites on posts, stories and daily KPI
+ * rows. A sample is only added when at least one value differs from the entity's previous
+ * sample. Samples are packed into blocks of up to MAX_SAMPLES_PER_BLOCK (see
+ * SnapshotBlockCodec); a full block is sealed and the entity continues in a new one, so
+ * a range query only decodes the blocks overlapping the range.
+ */
+@Component
+public class MetricHistoryStore {
+
+    static final int MAX_SAMPLES_PER_BLOCK = 256;
+
+    public enum EntityType {
+        POST("likes", "comments", "shares", "saves", "reach", "impressions"),
+        STORY("replies", "shares", "impressions", "profileVisits"),
+        ACCOUNT_KPI("followers", "newFollowers", "profileViews", "reach");
+
+        private final List<String> metrics;
+
+        EntityType(String... metrics) {
+            this.metrics = List.of(metrics);
+        }
+
+        public List<String> metrics() {
+            return metrics;
+        }
+
+        public static EntityType parse(String value) {
+            for (EntityType type : values()) {
+                if (type.name().replace("_", "").equalsIgnoreCase(value.replace("-", "").replace("_", ""))) {
+                    return type;
+                }
+            }
+            throw new IllegalArgumentException("Unknown entity type: " + value);
+        }
+    }
+
+    // Columnar result: observedAt[i] belongs to values.get(metric)[i]
+    public record History(EntityType entityType, String entityId, List<LocalDateTime> observedAt,
+                          Map<String, List<Integer>> values) {
+    }
+
+    private final MetricSnapshotBlockRepository blockRepository;
+    private final Clock clock;
+
+    public MetricHistoryStore(MetricSnapshotBlockRepository blockRepository, Clock clock) {
+        this.blockRepository = blockRepository;
+        this.clock = clock;
+    }
+
+    // Daily KPI rows are keyed by account and date
+    public static String kpiEntityId(String accountId, LocalDate date) {
+        return accountId + "/" + date;
+    }
+
+    /*
+     * The record methods join the caller's transaction, so history and rows commit together.
+     * Open blocks are versioned: a transaction that appended to a block another one changed
+     * in the meantime fails with an OptimisticLockingFailureException and is rerun by the caller.
+     */
+
+    public void recordPosts(Collection<InstagramPost> posts) {
+        record(EntityType.POST, posts, InstagramPost::getPostId, post -> new Integer[] {
+            post.getLikes(), post.getComments(), post.getShares(), post.getSaves(), post.getReach(), post.getImpressions()});
+    }
+
+    public void recordStory(InstagramStory story) {
+        record(EntityType.STORY, List.of(story), InstagramStory::getStoryId, s -> new Integer[] {
+            s.getReplies(), s.getShares(), s.getImpressions(), s.getProfileVisits()});
+    }
+
+    public void recordAccountKpis(Collection<InstagramAccountKpi> kpis) {
+        record(EntityType.ACCOUNT_KPI, kpis, kpi -> kpiEntityId(kpi.getAccountId(), kpi.getDate()), kpi -> new Integer[] {
+            kpi.getFollowers(), kpi.getNewFollowers(), kpi.getProfileViews(), kpi.getReach()});
+    }
+
+    private <T> void record(EntityType type, Collection<T> entities, Function<T, String> idOf, Function<T, Integer[]> valuesOf) {
+        if (entities.isEmpty()) {
+            return;
+        }
+        // Stored and queried as UTC, whatever the server's zone
+        long observedAt = clock.instant().getEpochSecond();
+        Map<String, MetricSnapshotBlock> openBlocks = new HashMap<>();
+        Set<MetricSnapshotBlock> written = new LinkedHashSet<>();
+        for (MetricSnapshotBlock block : blockRepository.findByEntityTypeAndSealedFalseAndEntityIdIn(type.name(),
+                entities.stream().map(idOf).distinct().toList())) {
+            // Two ingestions that both started an entity's first block leave two open ones; the older is sealed
+            MetricSnapshotBlock other = openBlocks.put(block.getEntityId(), block);
+            if (other != null) {
+                MetricSnapshotBlock older = other.getId() < block.getId() ? other : block;
+                older.setSealed(true);
+                written.add(older);
+                openBlocks.put(block.getEntityId(), older == other ? block : other);
+            }
+        }
+
+        for (T entity : entities) {
+            String entityId = idOf.apply(entity);
+            int[] row = toRow(valuesOf.apply(entity));
+            MetricSnapshotBlock block = openBlocks.get(entityId);
+            Columns columns = block == null ? null : SnapshotBlockCodec.decode(block.getData());
+            if (columns != null && columns.lastRowEquals(row)) {
+                continue;
+            }
+            if (block == null || columns.size >= MAX_SAMPLES_PER_BLOCK) {
+                if (block != null) {
+                    block.setSealed(true);
+                    written.add(block);
+                }
+                block = new MetricSnapshotBlock();
+                block.setEntityType(type.name());
+                block.setEntityId(entityId);
+                block.setFirstObservedAt(LocalDateTime.ofEpochSecond(observedAt, 0, ZoneOffset.UTC));
+                columns = new Columns(row.length, 1);
+                openBlocks.put(entityId, block);
+            }
+            columns.append(observedAt, row);
+            block.setData(SnapshotBlockCodec.encode(columns));
+            block.setSampleCount(columns.size);
+            block.setLastObservedAt(LocalDateTime.ofEpochSecond(observedAt, 0, ZoneOffset.UTC));
+            written.add(block);
+        }
+        blockRepository.saveAll(written);
+    }
+
+    /**
+     * Samples of one entity observed between from and to inclusive, either bound optional.
+     * Blocks entirely outside the range are not loaded.
+     */
+    public History history(EntityType type, String entityId, LocalDateTime from, LocalDateTime to) {
+        LocalDateTime lower = from != null ? from : LocalDateTime.of(1970, 1, 1, 0, 0);
+        LocalDateTime upper = to != null ? to : LocalDateTime.of(9999, 12, 31, 0, 0);
+        long lowerSecond = lower.toEpochSecond(ZoneOffset.UTC);
+        long upperSecond = upper.toEpochSecond(ZoneOffset.UTC);
+
+        List<LocalDateTime> observedAt = new ArrayList<>();
+        List<List<Integer>> columns = new ArrayList<>();
+        type.metrics().forEach(metric -> columns.add(new ArrayList<>()));
+        for (MetricSnapshotBlock block : blockRepository.findOverlapping(type.name(), entityId, lower, upper)) {
+            Columns decoded = SnapshotBlockCodec.decode(block.getData());
+            for (int i = 0; i < decoded.size; i++) {
+                if (decoded.times[i] < lowerSecond || decoded.times[i] > upperSecond) {
+                    continue;
+                }
+                observedAt.add(LocalDateTime.ofEpochSecond(decoded.times[i], 0, ZoneOffset.UTC));
+                for (int m = 0; m < columns.size(); m++) {
+                    int value = decoded.values[m][i];
+                    columns.get(m).add(value == SnapshotBlockCodec.MISSING ? null : value);
+                }
+            }
+        }
+
+        Map<String, List<Integer>> values = new LinkedHashMap<>();
+        for (int m = 0; m < columns.size(); m++) {
+            values.put(type.metrics().get(m), columns.get(m));
+        }
+        return new History(type, entityId, observedAt, values);
+    }
+
+    private static int[] toRow(Integer[] values) {
+        int[] row = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            row[i] = values[i] == null ? SnapshotBlockCodec.MISSING : values[i];
+        }
+        return row;
+    }
+}
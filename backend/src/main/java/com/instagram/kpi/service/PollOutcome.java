@@ -0,0 +1,6 @@
+package com.instagram.kpi.service;
+
+// Result of one ingestion poll: rows seen in the API response and how many of them differed from what was stored
+public record PollOutcome(int observed, int changed) {
+    public static final PollOutcome NONE = new PollOutcome(0, 0);
+}
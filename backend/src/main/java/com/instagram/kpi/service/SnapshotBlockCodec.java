@@ -0,0 +1,164 @@
+package com.instagram.kpi.service;
+
+import java.util.Arrays;
+
+/**
+ * Binary layout of a MetricSnapshotBlock. The block is stored column by column: the
+ * observation times (epoch seconds) first, then one column per metric. Every column holds
+ * its first value followed by the differences between neighbours, each as a zigzag varint,
+ * so a counter that moved by a few units since the previous sample costs a single byte.
+ * A value the API never reported is stored as MISSING, which no counter can take (new
+ * followers can legitimately be negative, so -1 can't be used).
+ *
+ * Layout: varint 0, varint sampleCount, varint metricCount, time column, metric columns.
+ * The leading 0 marks the current format. Blocks written before it start directly with
+ * sampleCount (never 0) and used -1 for a missing value; they are read the old way and
+ * converted the next time they are appended to.
+ */
+final class SnapshotBlockCodec {
+
+    static final int MISSING = Integer.MIN_VALUE;
+
+    private static final int LEGACY_MISSING = -1;
+
+    private SnapshotBlockCodec() {
+    }
+
+    // Decoded block; sample i was observed at times[i] with values[m][i] for metric m
+    static final class Columns {
+        long[] times;
+        final int[][] values;
+        int size;
+
+        Columns(int metricCount, int capacity) {
+            times = new long[capacity];
+            values = new int[metricCount][capacity];
+        }
+
+        void append(long time, int[] row) {
+            if (size == times.length) {
+                int capacity = Math.max(8, size * 2);
+                times = Arrays.copyOf(times, capacity);
+                for (int m = 0; m < values.length; m++) {
+                    values[m] = Arrays.copyOf(values[m], capacity);
+                }
+            }
+            times[size] = time;
+            for (int m = 0; m < values.length; m++) {
+                values[m][size] = row[m];
+            }
+            size++;
+        }
+
+        boolean lastRowEquals(int[] row) {
+            if (size == 0) {
+                return false;
+            }
+            for (int m = 0; m < values.length; m++) {
+                if (values[m][size - 1] != row[m]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    static byte[] encode(Columns columns) {
+        // Most deltas fit one byte; the buffer grows if they don't
+        Output out = new Output(8 + columns.size * (2 + columns.values.length));
+        out.writeVarint(0);
+        out.writeVarint(columns.size);
+        out.writeVarint(columns.values.length);
+        long previousTime = 0;
+        for (int i = 0; i < columns.size; i++) {
+            out.writeZigzag(columns.times[i] - previousTime);
+            previousTime = columns.times[i];
+        }
+        for (int[] column : columns.values) {
+            long previous = 0;
+            for (int i = 0; i < columns.size; i++) {
+                out.writeZigzag(column[i] - previous);
+                previous = column[i];
+            }
+        }
+        return out.toByteArray();
+    }
+
+    static Columns decode(byte[] data) {
+        Input in = new Input(data);
+        int size = (int) in.readVarint();
+        boolean legacy = size != 0;
+        if (!legacy) {
+            size = (int) in.readVarint();
+        }
+        int metricCount = (int) in.readVarint();
+        Columns columns = new Columns(metricCount, size);
+        long time = 0;
+        for (int i = 0; i < size; i++) {
+            time += in.readZigzag();
+            columns.times[i] = time;
+        }
+        for (int m = 0; m < metricCount; m++) {
+            long value = 0;
+            for (int i = 0; i < size; i++) {
+                value += in.readZigzag();
+                columns.values[m][i] = legacy && value == LEGACY_MISSING ? MISSING : (int) value;
+            }
+        }
+        columns.size = size;
+        return columns;
+    }
+
+    private static final class Output {
+        private byte[] buffer;
+        private int position;
+
+        Output(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        void writeZigzag(long value) {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        void writeVarint(long value) {
+            if (buffer.length - position < 10) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2 + 10);
+            }
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+    }
+
+    private static final class Input {
+        private final byte[] data;
+        private int position;
+
+        Input(byte[] data) {
+            this.data = data;
+        }
+
+        long readZigzag() {
+            long raw = readVarint();
+            return (raw >>> 1) ^ -(raw & 1);
+        }
+
+        long readVarint() {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = data[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package db.migration;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Creates the id sequences the entities draw from instead of IDENTITY columns, so Hibernate
+ * knows ids before inserting and can batch the inserts. Each sequence starts above the ids
+ * already in its table; the increment matches allocationSize on the entities, which makes
+ * Hibernate hand out a block of ids per nextval (pooled optimizer).
+ */
+public class V3__Sequence_ids extends BaseJavaMigration {
+
+    private static final int INCREMENT = 50;
+
+    private static final List<String> TABLES = List.of(
+        "instagram_posts", "instagram_story", "instagram_account_kpi", "instagram_pinned_reel",
+        "instagram_media_backfill_checkpoint", "instagram_account", "instagram_metric_snapshot_block");
+
+    @Override
+    public void migrate(Context context) throws Exception {
+        try (Statement statement = context.getConnection().createStatement()) {
+            for (String table : TABLES) {
+                long maxId;
+                try (ResultSet result = statement.executeQuery("SELECT COALESCE(MAX(id), 0) FROM " + table)) {
+                    result.next();
+                    maxId = result.getLong(1);
+                }
+                // The pooled optimizer uses the block ending at the returned value, so the first
+                // value has to leave a whole block above the existing ids
+                statement.execute("CREATE SEQUENCE " + table + "_seq START WITH " + (maxId + INCREMENT + 1)
+                    + " INCREMENT BY " + INCREMENT);
+            }
+        }
+    }
+}
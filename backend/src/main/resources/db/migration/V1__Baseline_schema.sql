@@ -0,0 +1,103 @@
+-- Schema as previously created by Hibernate ddl-auto. IF NOT EXISTS lets databases that
+-- were already managed that way adopt the migrations (spring.flyway.baseline-on-migrate).
+
+CREATE TABLE IF NOT EXISTS instagram_posts (
+    id              BIGINT NOT NULL PRIMARY KEY,
+    account_id      VARCHAR(255),
+    post_id         VARCHAR(255) NOT NULL UNIQUE,
+    caption         VARCHAR(2000),
+    posted_at       TIMESTAMP(6) NOT NULL,
+    likes           INTEGER,
+    comments        INTEGER,
+    shares          INTEGER,
+    saves           INTEGER,
+    reach           INTEGER,
+    impressions     INTEGER,
+    engagement_rate DOUBLE PRECISION,
+    save_rate       DOUBLE PRECISION,
+    virality        DOUBLE PRECISION,
+    created_at      TIMESTAMP(6),
+    updated_at      TIMESTAMP(6)
+);
+
+CREATE TABLE IF NOT EXISTS instagram_story (
+    id             BIGINT NOT NULL PRIMARY KEY,
+    account_id     VARCHAR(255),
+    story_id       VARCHAR(255) NOT NULL UNIQUE,
+    posted_at      TIMESTAMP(6) NOT NULL,
+    replies        INTEGER,
+    shares         INTEGER,
+    impressions    INTEGER,
+    profile_visits INTEGER,
+    created_at     TIMESTAMP(6),
+    updated_at     TIMESTAMP(6)
+);
+
+CREATE TABLE IF NOT EXISTS instagram_account_kpi (
+    id                     BIGINT NOT NULL PRIMARY KEY,
+    account_id             VARCHAR(255),
+    date                   DATE,
+    followers              INTEGER,
+    new_followers          INTEGER,
+    profile_views          INTEGER,
+    reach                  INTEGER,
+    pinned_reel_comments   INTEGER,
+    pinned_reel_shares     INTEGER,
+    pinned_reel_likes      INTEGER,
+    pinned_reel_saves      INTEGER,
+    pinned_reel_watch_time INTEGER
+);
+
+CREATE TABLE IF NOT EXISTS instagram_pinned_reel (
+    id             BIGINT NOT NULL PRIMARY KEY,
+    reel_id        VARCHAR(255) NOT NULL UNIQUE,
+    caption        VARCHAR(2000),
+    posted_at      TIMESTAMP(6) NOT NULL,
+    likes          INTEGER,
+    comments       INTEGER,
+    shares         INTEGER,
+    saves          INTEGER,
+    avg_watch_time INTEGER,
+    created_at     TIMESTAMP(6),
+    updated_at     TIMESTAMP(6)
+);
+
+CREATE TABLE IF NOT EXISTS instagram_media_backfill_checkpoint (
+    id             BIGINT NOT NULL PRIMARY KEY,
+    account_id     VARCHAR(255) NOT NULL UNIQUE,
+    after_cursor   VARCHAR(1024),
+    last_posted_at TIMESTAMP(6),
+    ingested_count BIGINT NOT NULL,
+    completed      BOOLEAN NOT NULL,
+    updated_at     TIMESTAMP(6)
+);
+
+CREATE TABLE IF NOT EXISTS instagram_account (
+    id                 BIGINT NOT NULL PRIMARY KEY,
+    account_id         VARCHAR(255) NOT NULL UNIQUE,
+    name               VARCHAR(255),
+    access_token       VARCHAR(1024) NOT NULL,
+    enabled            BOOLEAN NOT NULL,
+    last_refreshed_at  TIMESTAMP(6),
+    last_refresh_error VARCHAR(1000),
+    created_at         TIMESTAMP(6)
+);
+
+CREATE TABLE IF NOT EXISTS instagram_metric_snapshot_block (
+    id                BIGINT NOT NULL PRIMARY KEY,
+    entity_type       VARCHAR(32) NOT NULL,
+    entity_id         VARCHAR(255) NOT NULL,
+    first_observed_at TIMESTAMP(6) NOT NULL,
+    last_observed_at  TIMESTAMP(6) NOT NULL,
+    sample_count      INTEGER NOT NULL,
+    sealed            BOOLEAN NOT NULL,
+    data              BYTEA NOT NULL
+);
+
+-- Columns added after the first deployments, missing from tables created back then
+ALTER TABLE instagram_posts ADD COLUMN IF NOT EXISTS account_id VARCHAR(255);
+ALTER TABLE instagram_posts ADD COLUMN IF NOT EXISTS engagement_rate DOUBLE PRECISION;
+ALTER TABLE instagram_posts ADD COLUMN IF NOT EXISTS save_rate DOUBLE PRECISION;
+ALTER TABLE instagram_posts ADD COLUMN IF NOT EXISTS virality DOUBLE PRECISION;
+ALTER TABLE instagram_story ADD COLUMN IF NOT EXISTS account_id VARCHAR(255);
+ALTER TABLE instagram_account_kpi ADD COLUMN IF NOT EXISTS account_id VARCHAR(255);
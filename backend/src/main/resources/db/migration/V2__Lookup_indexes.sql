@@ -0,0 +1,35 @@
+-- Indexes for the lookups the repositories run on every refresh and dashboard read.
+-- Indexes of the same name that ddl-auto created from @Index annotations are replaced.
+
+-- findByAccountIdAndDate: one row per account and day. Rows stored before accounts
+-- existed have no account yet, so duplicates are resolved among those too, keeping the newest.
+DELETE FROM instagram_account_kpi k
+WHERE EXISTS (
+    SELECT 1 FROM instagram_account_kpi d
+    WHERE d.date = k.date
+      AND (d.account_id = k.account_id OR (d.account_id IS NULL AND k.account_id IS NULL))
+      AND d.id > k.id);
+DROP INDEX IF EXISTS idx_instagram_account_kpi_account_date;
+CREATE UNIQUE INDEX ux_instagram_account_kpi_account_date ON instagram_account_kpi (account_id, date);
+
+-- Keyset pages of /posts (posted_at desc, id desc) and the settled-posts rotation
+DROP INDEX IF EXISTS idx_instagram_posts_account_posted_at;
+CREATE INDEX idx_instagram_posts_account_posted_at ON instagram_posts (account_id, posted_at DESC, id DESC);
+
+-- findTopByAccountIdOrderByPostedAtDesc for /latest-story and the story poller
+DROP INDEX IF EXISTS idx_instagram_story_account_posted_at;
+CREATE INDEX idx_instagram_story_account_posted_at ON instagram_story (account_id, posted_at DESC);
+
+-- /posts/top rankings read the first rows of one of these
+DROP INDEX IF EXISTS idx_instagram_posts_account_engagement_rate;
+CREATE INDEX idx_instagram_posts_account_engagement_rate ON instagram_posts (account_id, engagement_rate DESC, id DESC);
+DROP INDEX IF EXISTS idx_instagram_posts_account_save_rate;
+CREATE INDEX idx_instagram_posts_account_save_rate ON instagram_posts (account_id, save_rate DESC, id DESC);
+DROP INDEX IF EXISTS idx_instagram_posts_account_virality;
+CREATE INDEX idx_instagram_posts_account_virality ON instagram_posts (account_id, virality DESC, id DESC);
+DROP INDEX IF EXISTS idx_instagram_posts_account_likes;
+CREATE INDEX idx_instagram_posts_account_likes ON instagram_posts (account_id, likes DESC, id DESC);
+
+-- Open-block lookups at ingest and range queries of /history
+DROP INDEX IF EXISTS idx_metric_snapshot_block_entity;
+CREATE INDEX idx_metric_snapshot_block_entity ON instagram_metric_snapshot_block (entity_type, entity_id, first_observed_at);
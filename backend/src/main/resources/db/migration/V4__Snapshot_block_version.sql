@@ -0,0 +1,2 @@
+-- Optimistic locking of metric history blocks (MetricSnapshotBlock.version)
+ALTER TABLE instagram_metric_snapshot_block ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1,2 @@
+-- Room for AES-GCM encrypted, base64 encoded tokens (AccessTokenConverter)
+ALTER TABLE instagram_account ALTER COLUMN access_token SET DATA TYPE VARCHAR(2048);
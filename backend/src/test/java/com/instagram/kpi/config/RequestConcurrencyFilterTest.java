@@ -0,0 +1,61 @@
+package com.instagram.kpi.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RequestConcurrencyFilterTest {
+
+    // Pool of 5 with 4 connections for ingestion leaves one API request at a time
+    private final RequestConcurrencyFilter filter = new RequestConcurrencyFilter(5, 4, 0, 100);
+
+    @Test
+    void requestBeyondTheLimitIsRefusedAfterTheWait() throws Exception {
+        CountDownLatch inside = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread first = new Thread(() -> {
+            try {
+                filter.doFilter(get("/api/instagram/posts"), new MockHttpServletResponse(), (request, response) -> {
+                    inside.countDown();
+                    await(release);
+                });
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        first.start();
+        assertThat(inside.await(5, TimeUnit.SECONDS)).isTrue();
+
+        MockHttpServletResponse refused = new MockHttpServletResponse();
+        filter.doFilter(get("/api/instagram/posts"), refused, (request, response) -> { });
+        // Only /api is limited
+        MockHttpServletResponse health = new MockHttpServletResponse();
+        filter.doFilter(get("/actuator/health"), health, (request, response) -> { });
+
+        release.countDown();
+        first.join();
+        MockHttpServletResponse served = new MockHttpServletResponse();
+        filter.doFilter(get("/api/instagram/posts"), served, (request, response) -> { });
+
+        assertThat(refused.getStatus()).isEqualTo(503);
+        assertThat(health.getStatus()).isEqualTo(200);
+        assertThat(served.getStatus()).isEqualTo(200);
+    }
+
+    private static MockHttpServletRequest get(String uri) {
+        return new MockHttpServletRequest("GET", uri);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
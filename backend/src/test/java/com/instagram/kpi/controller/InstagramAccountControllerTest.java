@@ -0,0 +1,62 @@
+package com.instagram.kpi.controller;
+
+import com.instagram.kpi.model.InstagramAccount;
+import com.instagram.kpi.service.InstagramAccountRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(InstagramAccountController.class)
+@ActiveProfiles("test")
+class InstagramAccountControllerTest {
+
+    private static final String REGISTRATION = "{\"accountId\": \"17840000000000301\", \"name\": \"Third\", \"accessToken\": \"token\"}";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private InstagramAccountRegistry accounts;
+
+    @Test
+    void changesNeedTheAdminKey() throws Exception {
+        mockMvc.perform(post("/api/instagram/accounts").contentType(MediaType.APPLICATION_JSON).content(REGISTRATION))
+            .andExpect(status().isUnauthorized());
+        mockMvc.perform(post("/api/instagram/accounts").header(InstagramAccountController.ADMIN_KEY_HEADER, "guess")
+                .contentType(MediaType.APPLICATION_JSON).content(REGISTRATION))
+            .andExpect(status().isUnauthorized());
+        mockMvc.perform(delete("/api/instagram/accounts/17840000000000301"))
+            .andExpect(status().isUnauthorized());
+
+        verify(accounts, never()).register(any(), any(), any());
+        verify(accounts, never()).disable(any());
+    }
+
+    @Test
+    void theAdminKeyAllowsChanges() throws Exception {
+        when(accounts.register("17840000000000301", "Third", "token")).thenReturn(new InstagramAccount());
+        when(accounts.disable("17840000000000301")).thenReturn(true);
+
+        mockMvc.perform(post("/api/instagram/accounts").header(InstagramAccountController.ADMIN_KEY_HEADER, "test-admin-key")
+                .contentType(MediaType.APPLICATION_JSON).content(REGISTRATION))
+            .andExpect(status().isCreated());
+        mockMvc.perform(delete("/api/instagram/accounts/17840000000000301")
+                .header(InstagramAccountController.ADMIN_KEY_HEADER, "test-admin-key"))
+            .andExpect(status().isNoContent());
+        // Listing shows no tokens and stays open
+        mockMvc.perform(get("/api/instagram/accounts")).andExpect(status().isOk());
+    }
+}
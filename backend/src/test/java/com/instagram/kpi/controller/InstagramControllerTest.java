@@ -0,0 +1,32 @@
+package com.instagram.kpi.controller;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InstagramControllerTest {
+
+    @Test
+    void differentPostsPagesNeverShareAKey() {
+        List<String> keys = List.of(
+            InstagramController.postsPageKey("1784", null, null, 500),
+            InstagramController.postsPageKey("1784", List.of(), null, 500),
+            InstagramController.postsPageKey("1784", List.of("likes", "reach"), null, 500),
+            InstagramController.postsPageKey("1784", List.of("likes, reach"), null, 500),
+            InstagramController.postsPageKey("1784", List.of("reach", "likes"), null, 500),
+            InstagramController.postsPageKey("1784", Arrays.asList((String) null), null, 500),
+            InstagramController.postsPageKey("1784", null, "-", 500),
+            InstagramController.postsPageKey("1784", null, null, 50),
+            InstagramController.postsPageKey("17845", null, null, 0),
+            InstagramController.postsPageKey("1784;5", null, null, 0),
+            InstagramController.postsPageKey("1784", null, "cursor", 5),
+            InstagramController.postsPageKey("1784", null, "cursor5", 0));
+
+        assertThat(keys).doesNotHaveDuplicates();
+        assertThat(InstagramController.postsPageKey("1784", List.of("likes"), "cursor", 20))
+            .isEqualTo(InstagramController.postsPageKey("1784", List.of("likes"), "cursor", 20));
+    }
+}
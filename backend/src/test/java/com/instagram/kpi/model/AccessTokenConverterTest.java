@@ -0,0 +1,51 @@
+package com.instagram.kpi.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AccessTokenConverterTest {
+
+    private static final String KEY = "AAECAwQFBgcICQoLDA0ODxAREhMUFRYXGBkaGxwdHh8=";
+    private static final String TOKEN = "EAAGm0PX4ZCpsBAKtestTokenValue";
+
+    private final AccessTokenConverter converter = new AccessTokenConverter(KEY);
+
+    @Test
+    void tokensAreStoredEncrypted() {
+        String stored = converter.convertToDatabaseColumn(TOKEN);
+
+        assertThat(stored).startsWith(AccessTokenConverter.PREFIX).doesNotContain(TOKEN);
+        // A fresh IV per write, so equal tokens don't give equal column values
+        assertThat(converter.convertToDatabaseColumn(TOKEN)).isNotEqualTo(stored);
+        assertThat(converter.convertToEntityAttribute(stored)).isEqualTo(TOKEN);
+    }
+
+    @Test
+    void plaintextFromBeforeEncryptionIsReadAsItIs() {
+        assertThat(converter.convertToEntityAttribute(TOKEN)).isEqualTo(TOKEN);
+        assertThat(converter.convertToEntityAttribute(null)).isNull();
+    }
+
+    @Test
+    void wrongKeyOrTamperedValueFails() {
+        String stored = converter.convertToDatabaseColumn(TOKEN);
+        AccessTokenConverter otherKey = new AccessTokenConverter("HyAdHBsaGRgXFhUUExIREA8ODQwLCgkIBwYFBAMCAQA=");
+        assertThatThrownBy(() -> otherKey.convertToEntityAttribute(stored)).isInstanceOf(IllegalStateException.class);
+
+        // A character inside the ciphertext, away from the base64 padding bits
+        char[] chars = stored.toCharArray();
+        int inside = AccessTokenConverter.PREFIX.length() + 20;
+        chars[inside] = chars[inside] == 'A' ? 'B' : 'A';
+        assertThatThrownBy(() -> converter.convertToEntityAttribute(new String(chars))).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void nothingIsStoredWithoutAKey() {
+        AccessTokenConverter unconfigured = new AccessTokenConverter("");
+
+        assertThatThrownBy(() -> unconfigured.convertToDatabaseColumn(TOKEN)).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> new AccessTokenConverter("c2hvcnQ=")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,89 @@
+package com.instagram.kpi.repository;
+
+import com.instagram.kpi.model.InstagramPost;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * /posts/top returns the highest ranked posts in order and is planned on the
+ * (account_id, metric, id) index. Timings at 1M posts are in LookupIndexBenchmark.
+ */
+@DataJpaTest(showSql = false)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("test")
+// The rows are committed so the cleanup below can truncate them outside a test transaction
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class InstagramPostTopMetricTest {
+
+    private static final int POSTS = 5_000;
+    private static final String ACCOUNT = "17840000000000001";
+    private static final int LIMIT = 20;
+
+    @Autowired
+    private InstagramPostRepository postRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // The rows carry explicit ids the post sequence knows nothing about, so later tests sharing the database would collide with them
+    @AfterEach
+    void removePosts() {
+        jdbcTemplate.execute("TRUNCATE TABLE instagram_posts");
+    }
+
+    @Test
+    void topPostsComeFromTheIndex() {
+        double[] engagementRates = insertPosts();
+
+        Long[] expected = new Long[POSTS];
+        Arrays.setAll(expected, i -> (long) i + 1);
+        Arrays.sort(expected, Comparator.<Long>comparingDouble(id -> engagementRates[(int) (id - 1)]).reversed()
+            .thenComparing(Comparator.reverseOrder()));
+
+        List<InstagramPost> top = postRepository.findTopByMetric(ACCOUNT, "engagementRate", LIMIT);
+        assertThat(top).extracting(InstagramPost::getId).containsExactly(Arrays.copyOf(expected, LIMIT));
+
+        String plan = jdbcTemplate.queryForObject("EXPLAIN SELECT id FROM instagram_posts"
+            + " WHERE account_id = '" + ACCOUNT + "' AND engagement_rate IS NOT NULL"
+            + " ORDER BY engagement_rate DESC, id DESC LIMIT " + LIMIT, String.class);
+        assertThat(plan).containsIgnoringCase("idx_instagram_posts_account_engagement_rate");
+    }
+
+    // Rows as ingestion stores them, written with plain JDBC batches; returns each post's engagement rate by id - 1
+    private double[] insertPosts() {
+        Random random = new Random(42);
+        double[] engagementRates = new double[POSTS];
+        LocalDateTime newest = LocalDateTime.of(2024, 6, 30, 7, 0);
+        List<Object[]> batch = new ArrayList<>(POSTS);
+        for (int i = 0; i < POSTS; i++) {
+            int reach = 1_000 + random.nextInt(100_000);
+            int likes = random.nextInt(5_000);
+            int comments = random.nextInt(500);
+            int shares = random.nextInt(300);
+            int saves = random.nextInt(400);
+            engagementRates[i] = (double) (likes + comments + shares + saves) / reach;
+            batch.add(new Object[]{(long) i + 1, ACCOUNT, "media-" + i, Timestamp.valueOf(newest.minusMinutes(i)),
+                likes, comments, shares, saves, reach, engagementRates[i], (double) saves / reach, (double) shares / reach});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO instagram_posts (id, account_id, post_id, posted_at, likes, comments,"
+            + " shares, saves, reach, engagement_rate, save_rate, virality) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", batch);
+        return engagementRates;
+    }
+}
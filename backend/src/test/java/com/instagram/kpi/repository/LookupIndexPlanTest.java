@@ -0,0 +1,88 @@
+package com.instagram.kpi.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The hot lookups are planned on the V2 indexes. Only the plans are checked; timings with and
+ * without the indexes are in LookupIndexBenchmark. Runs on its own database, since the rows
+ * carry explicit ids the shared one's sequences know nothing about.
+ */
+@DataJpaTest(showSql = false)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("test")
+@TestPropertySource(properties =
+    "spring.datasource.url=jdbc:h2:mem:kpi-index-test;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class LookupIndexPlanTest {
+
+    private static final String ACCOUNT = "17840000000000001";
+    private static final String OTHER_ACCOUNT = "17840000000000002";
+    private static final int ROWS_PER_ACCOUNT = 500;
+    private static final LocalDateTime NEWEST = LocalDateTime.of(2024, 6, 30, 7, 0);
+    private static final LocalDate LAST_DAY = LocalDate.of(2024, 6, 30);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void lookupsUseTheV2Indexes() {
+        insertRows();
+
+        assertThat(plan("SELECT id, post_id, posted_at, likes FROM instagram_posts"
+            + " WHERE account_id = ? ORDER BY posted_at DESC, id DESC LIMIT 100", ACCOUNT))
+            .contains("idx_instagram_posts_account_posted_at");
+        assertThat(plan("SELECT * FROM instagram_account_kpi WHERE account_id = ? AND date = ?",
+            ACCOUNT, Date.valueOf(LAST_DAY)))
+            .contains("ux_instagram_account_kpi_account_date");
+        assertThat(plan("SELECT * FROM instagram_account_kpi WHERE account_id = ? AND date BETWEEN ? AND ? ORDER BY date",
+            ACCOUNT, Date.valueOf(LAST_DAY.minusDays(29)), Date.valueOf(LAST_DAY)))
+            .contains("ux_instagram_account_kpi_account_date");
+        assertThat(plan("SELECT * FROM instagram_story WHERE account_id = ? ORDER BY posted_at DESC LIMIT 1", ACCOUNT))
+            .contains("idx_instagram_story_account_posted_at");
+        for (String metric : List.of("engagement_rate", "save_rate", "virality", "likes")) {
+            assertThat(plan("SELECT id FROM instagram_posts WHERE account_id = ? AND " + metric + " IS NOT NULL"
+                + " ORDER BY " + metric + " DESC, id DESC LIMIT 20", ACCOUNT))
+                .contains("idx_instagram_posts_account_" + metric);
+        }
+    }
+
+    private String plan(String sql, Object... args) {
+        return jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class, args);
+    }
+
+    private void insertRows() {
+        List<Object[]> posts = new ArrayList<>();
+        List<Object[]> kpis = new ArrayList<>();
+        List<Object[]> stories = new ArrayList<>();
+        for (int i = 0; i < 2 * ROWS_PER_ACCOUNT; i++) {
+            String account = i % 2 == 0 ? ACCOUNT : OTHER_ACCOUNT;
+            int reach = 1_000 + i;
+            int likes = (i * 7) % 5_000;
+            posts.add(new Object[]{(long) i + 1, account, "media-" + i, Timestamp.valueOf(NEWEST.minusMinutes(i)),
+                likes, reach, (double) likes / reach, (double) (i % 40) / reach, (double) (i % 30) / reach});
+            kpis.add(new Object[]{(long) i + 1, account, Date.valueOf(LAST_DAY.minusDays(i / 2)), 90_000 + i});
+            stories.add(new Object[]{(long) i + 1, account, "story-" + i, Timestamp.valueOf(NEWEST.minusHours(i))});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO instagram_posts (id, account_id, post_id, posted_at, likes, reach,"
+            + " engagement_rate, save_rate, virality) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)", posts);
+        jdbcTemplate.batchUpdate("INSERT INTO instagram_account_kpi (id, account_id, date, followers) VALUES (?, ?, ?, ?)", kpis);
+        jdbcTemplate.batchUpdate("INSERT INTO instagram_story (id, account_id, story_id, posted_at) VALUES (?, ?, ?, ?)", stories);
+    }
+}
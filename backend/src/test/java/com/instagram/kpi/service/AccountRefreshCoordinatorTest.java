@@ -0,0 +1,40 @@
+package com.instagram.kpi.service;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Sinks;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AccountRefreshCoordinatorTest {
+
+    private static final AccountContext ACCOUNT = new AccountContext("17840000000000002", "token");
+
+    @Test
+    void roundDoesNotHoldTheSchedulingThread() {
+        InstagramService instagramService = mock(InstagramService.class);
+        InstagramAccountRegistry accounts = mock(InstagramAccountRegistry.class);
+        Sinks.Empty<Void> refresh = Sinks.empty();
+        when(accounts.dueAccounts(anyInt())).thenReturn(List.of(ACCOUNT));
+        when(instagramService.refreshAccountAsync(any())).thenReturn(refresh.asMono());
+        AccountRefreshCoordinator coordinator = new AccountRefreshCoordinator(instagramService, accounts, true, 8, 100, 60_000);
+
+        // Returns while the account is still refreshing, and the next tick leaves that round alone
+        coordinator.refreshRound();
+        verify(instagramService, timeout(5_000)).refreshAccountAsync(ACCOUNT);
+        coordinator.refreshRound();
+
+        refresh.tryEmitEmpty();
+        verify(accounts, timeout(5_000)).recordRefresh(eq(ACCOUNT.accountId()), isNull());
+        verify(accounts, times(1)).dueAccounts(anyInt());
+    }
+}
@@ -0,0 +1,155 @@
+package com.instagram.kpi.service;
+
+import com.instagram.kpi.repository.InstagramStoryRepository;
+import com.instagram.kpi.service.AdaptivePollingScheduler.Target;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Drives the scheduler on a virtual clock against a fake Graph API call counter: each poll
+ * makes the calls the real one would, and the budget has to follow those counts.
+ */
+class AdaptivePollingSchedulerTest {
+
+    private static final int HOURLY_BUDGET = 150;
+    private static final Duration TICK = Duration.ofSeconds(30);
+    private static final String PRIMARY = "17840000000000001";
+    private static final String OTHER_ACCOUNT = "17840000000000002";
+
+    private final VirtualClock clock = new VirtualClock(Instant.parse("2024-06-30T07:00:00Z"));
+    private final AtomicLong graphApiCalls = new AtomicLong();
+    private final AtomicLong otherAccountCalls = new AtomicLong();
+    private final Map<Target, Integer> polls = new EnumMap<>(Target.class);
+    private AdaptivePollingScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        InstagramService instagramService = mock(InstagramService.class);
+        when(instagramService.fetchLatestStoryAsync()).thenAnswer(call -> poll(Target.LATEST_STORY, 1));
+        // A media page plus a batch of 7 insights requests for posts that came without them
+        when(instagramService.fetchLatestPostsAsync()).thenAnswer(call -> poll(Target.RECENT_POSTS, 1 + 7));
+        when(instagramService.fetchAccountKpisAsync()).thenAnswer(call -> poll(Target.ACCOUNT_KPIS, 3));
+        when(instagramService.refreshSettledPostInsightsAsync(any())).thenAnswer(call -> poll(Target.SETTLED_POSTS, 50));
+
+        GraphApiClient graphApiClient = mock(GraphApiClient.class);
+        when(graphApiClient.callCount(PRIMARY)).thenAnswer(call -> graphApiCalls.get());
+        when(graphApiClient.callCount(OTHER_ACCOUNT)).thenAnswer(call -> otherAccountCalls.get());
+        InstagramStoryRepository storyRepository = mock(InstagramStoryRepository.class);
+        when(storyRepository.findTopByAccountIdOrderByPostedAtDesc(any())).thenReturn(Optional.empty());
+        InstagramAccountRegistry accounts = new InstagramAccountRegistry(null, null, null, null, PRIMARY, "token");
+
+        scheduler = new AdaptivePollingScheduler(instagramService, graphApiClient, storyRepository, accounts, clock, true, HOURLY_BUDGET);
+    }
+
+    @Test
+    void budgetIsChargedWithTheCallsEachPollMade() {
+        scheduler.pollDueTargets();
+
+        assertThat(polls).containsOnlyKeys(Target.values());
+        assertThat(graphApiCalls.get()).isEqualTo(1 + 8 + 3 + 50);
+        assertThat(scheduler.availableCalls()).isEqualTo(HOURLY_BUDGET - 62.0);
+    }
+
+    @Test
+    void callsMadeOutsideThePollerUseUpTheBudget() {
+        scheduler.pollDueTargets();
+        polls.clear();
+
+        // Manual /refresh calls for the primary account
+        graphApiCalls.addAndGet(300);
+        assertThat(scheduler.availableCalls()).isEqualTo(HOURLY_BUDGET - 62.0 - 300);
+
+        // Recent posts are due again after about an hour, but 65 minutes only bring back 162 calls
+        clock.advance(Duration.ofMinutes(65));
+        scheduler.pollDueTargets();
+        assertThat(polls).isEmpty();
+
+        clock.advance(Duration.ofMinutes(25));
+        scheduler.pollDueTargets();
+        assertThat(polls).containsOnlyKeys(Target.RECENT_POSTS);
+    }
+
+    @Test
+    void otherAccountsDoNotDrawOnTheBudget() {
+        scheduler.pollDueTargets();
+        polls.clear();
+
+        // A round of registered accounts, made on their own tokens
+        otherAccountCalls.addAndGet(5_000);
+        assertThat(scheduler.availableCalls()).isEqualTo(HOURLY_BUDGET - 62.0);
+
+        // Recent posts are due again after about an hour and the budget has room for them
+        clock.advance(Duration.ofMinutes(65));
+        scheduler.pollDueTargets();
+        assertThat(polls).containsKey(Target.RECENT_POSTS);
+    }
+
+    @Test
+    void settledDataStaysWithinTheHourlyBudget() {
+        Duration simulated = Duration.ofDays(2);
+        for (Duration elapsed = Duration.ZERO; elapsed.compareTo(simulated) < 0; elapsed = elapsed.plus(TICK)) {
+            scheduler.pollDueTargets();
+            clock.advance(TICK);
+        }
+
+        // Never more than the budget per hour, plus the full hour that is available at start
+        assertThat(graphApiCalls.get()).isLessThanOrEqualTo(HOURLY_BUDGET * (simulated.toHours() + 1));
+        // Nothing changed, so every target backed off towards its slowest interval
+        for (Target target : Target.values()) {
+            assertThat(scheduler.currentInterval(target)).isGreaterThan(target.maxInterval.dividedBy(2));
+        }
+        assertThat(polls.get(Target.SETTLED_POSTS)).isLessThanOrEqualTo(10);
+    }
+
+    // Every poll observes ten rows, none of them changed
+    private Mono<PollOutcome> poll(Target target, int calls) {
+        return Mono.fromSupplier(() -> {
+            graphApiCalls.addAndGet(calls);
+            polls.merge(target, 1, Integer::sum);
+            return new PollOutcome(10, 0);
+        });
+    }
+
+    private static final class VirtualClock extends Clock {
+        private Instant now;
+
+        VirtualClock(Instant start) {
+            now = start;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
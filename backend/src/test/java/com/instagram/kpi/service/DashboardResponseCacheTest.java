@@ -0,0 +1,61 @@
+package com.instagram.kpi.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.instagram.kpi.service.DashboardResponseCache.CachedResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DashboardResponseCacheTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final DashboardResponseCache cache = new DashboardResponseCache(new ObjectMapper(), meterRegistry, 1 << 20);
+
+    @Test
+    void hitsAndMissesAreCounted() {
+        AtomicInteger loads = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            cache.get("posts", name -> {
+                loads.incrementAndGet();
+                return new CachedResponse("[]".getBytes(StandardCharsets.UTF_8), null);
+            });
+        }
+        cache.get("stories", name -> CachedResponse.NOT_FOUND);
+
+        assertThat(loads).hasValue(1);
+        assertThat(gets("hit")).isEqualTo(2);
+        assertThat(gets("miss")).isEqualTo(2);
+    }
+
+    @Test
+    void failedLoadIsRetriedByTheNextRead() {
+        assertThatThrownBy(() -> cache.get("posts", name -> {
+            throw new IllegalArgumentException("bad cursor");
+        })).isInstanceOf(IllegalArgumentException.class).hasMessage("bad cursor");
+
+        CachedResponse response = cache.get("posts", name -> CachedResponse.NOT_FOUND);
+
+        assertThat(response.isNotFound()).isTrue();
+        assertThat(gets("miss")).isEqualTo(2);
+    }
+
+    @Test
+    void invalidationStartsANewGeneration() {
+        cache.get("posts", name -> CachedResponse.NOT_FOUND);
+        cache.invalidateAfterCommit();
+        cache.get("posts", name -> CachedResponse.NOT_FOUND);
+
+        assertThat(gets("hit")).isZero();
+        assertThat(gets("miss")).isEqualTo(2);
+    }
+
+    private double gets(String result) {
+        return meterRegistry.get("cache.gets").tag("cache", "dashboard.responses").tag("result", result)
+            .functionCounter().count();
+    }
+}
@@ -0,0 +1,65 @@
+package com.instagram.kpi.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GraphApiClientTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final StubGraphApiServer stub = new StubGraphApiServer(Duration.ofMillis(100), request -> "{\"data\":[]}");
+    private final GraphApiClient client = new GraphApiClient(WebClient.builder(), objectMapper,
+        new GraphApiJsonDecoder(objectMapper), new SimpleMeterRegistry(), stub.baseUrl(), 1_000, 5_000, 0, 10);
+
+    @AfterEach
+    void stopStub() {
+        stub.close();
+    }
+
+    @Test
+    void identicalConcurrentGetsAreOneCall() {
+        Mono.zip(client.getJson("/v23.0/1784/media"), client.getJson("/v23.0/1784/media")).block();
+
+        assertThat(stub.requests()).hasSize(1);
+        assertThat(client.callCount()).isEqualTo(1);
+    }
+
+    @Test
+    void everyRequestOfABatchIsACall() {
+        StringBuilder batch = new StringBuilder("[");
+        for (int i = 0; i < 50; i++) {
+            batch.append(i == 0 ? "" : ",").append("{\"method\":\"GET\",\"relative_url\":\"v23.0/").append(i).append("/insights\"}");
+        }
+        MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
+        form.add("access_token", "token");
+        form.add("batch", batch.append(']').toString());
+
+        client.postForm("/", form).block();
+        client.getJson("/v23.0/1784?fields=followers_count").block();
+
+        assertThat(stub.requests()).hasSize(2);
+        assertThat(client.callCount()).isEqualTo(51);
+    }
+
+    @Test
+    void callsAreCountedPerAccount() {
+        client.getJson("/v23.0/1784/media").contextWrite(GraphApiClient.forAccount("1784")).block();
+        client.getJson("/v23.0/1785/media").contextWrite(GraphApiClient.forAccount("1785")).block();
+        client.getJson("/v23.0/1785?fields=followers_count").contextWrite(GraphApiClient.forAccount("1785")).block();
+        client.getJson("/v23.0/1786/media").block();
+
+        assertThat(client.callCount()).isEqualTo(4);
+        assertThat(client.callCount("1784")).isEqualTo(1);
+        assertThat(client.callCount("1785")).isEqualTo(2);
+        assertThat(client.callCount("1786")).isZero();
+    }
+}
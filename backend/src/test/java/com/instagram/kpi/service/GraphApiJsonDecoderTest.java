@@ -0,0 +1,48 @@
+package com.instagram.kpi.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.instagram.kpi.model.InstagramPost;
+import com.instagram.kpi.service.GraphApiJsonDecoder.MediaPage;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GraphApiJsonDecoderTest {
+
+    private final GraphApiJsonDecoder decoder = new GraphApiJsonDecoder(new ObjectMapper());
+
+    @Test
+    void mediaPageInsightsIncludeShares() {
+        String body = """
+            {"data": [{"id": "1790", "caption": "hi", "timestamp": "2024-06-30T07:00:00+0000",
+              "like_count": 40, "comments_count": 5,
+              "insights": {"data": [
+                {"name": "reach", "values": [{"value": 1000}]},
+                {"name": "saved", "values": [{"value": 12}]},
+                {"name": "shares", "values": [{"value": 30}]}]}}],
+             "paging": {"cursors": {"after": "QVFI"}}}
+            """;
+        MediaPage page = new MediaPageMapper(decoder, ForkJoinPool.commonPool()).map(body.getBytes()).block();
+
+        InstagramPost post = page.posts().get(0);
+        assertThat(post.getReach()).isEqualTo(1000);
+        assertThat(post.getSaves()).isEqualTo(12);
+        assertThat(post.getShares()).isEqualTo(30);
+        assertThat(page.missingInsights()).isEmpty();
+    }
+
+    @Test
+    void batchInsightsIncludeShares() throws IOException {
+        InstagramPost post = new InstagramPost();
+        decoder.decodeInsights("""
+            {"data": [{"name": "reach", "values": [{"value": 500}]},
+                      {"name": "shares", "values": [{"value": 7}]}]}
+            """, (name, value) -> GraphApiJsonDecoder.applyPostInsight(post, name, value));
+
+        assertThat(post.getReach()).isEqualTo(500);
+        assertThat(post.getShares()).isEqualTo(7);
+    }
+}
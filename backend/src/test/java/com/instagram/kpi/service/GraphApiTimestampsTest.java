@@ -0,0 +1,69 @@
+package com.instagram.kpi.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * GraphApiTimestamps has to agree with the formatter it replaces: the same LocalDateTime,
+ * LocalDate and epoch second, or a failure on both sides.
+ */
+class GraphApiTimestampsTest {
+
+    @Test
+    void parsesTheApiFormat() {
+        assertThat(GraphApiTimestamps.parseLocalDateTime("2024-06-30T07:00:00+0000"))
+            .isEqualTo(LocalDateTime.of(2024, 6, 30, 7, 0));
+        // The local time as written; the offset only enters the epoch second
+        assertThat(GraphApiTimestamps.parseLocalDate("2024-06-30T23:30:00-0700")).isEqualTo(LocalDate.of(2024, 6, 30));
+        assertThat(GraphApiTimestamps.parseEpochSecond("2024-06-30T23:30:00-0700"))
+            .isEqualTo(ZonedDateTime.parse("2024-07-01T06:30:00Z").toEpochSecond());
+    }
+
+    @Test
+    void agreesWithTheFormatterOnFuzzedInput() {
+        // Random field values, out-of-range ones, single-character corruptions and truncations
+        Random random = new Random(25);
+        String alphabet = "0123456789-+T:Z ";
+        for (int i = 0; i < 200_000; i++) {
+            String text = String.format("%04d-%02d-%02dT%02d:%02d:%02d%c%02d%02d", random.nextInt(10_000),
+                random.nextInt(14), random.nextInt(33), random.nextInt(26), random.nextInt(62), random.nextInt(62),
+                random.nextBoolean() ? '+' : '-', random.nextInt(20), random.nextInt(62));
+            if (random.nextInt(3) == 0) {
+                char[] chars = text.toCharArray();
+                chars[random.nextInt(chars.length)] = alphabet.charAt(random.nextInt(alphabet.length()));
+                text = new String(chars);
+            }
+            if (random.nextInt(20) == 0) {
+                text = text.substring(0, random.nextInt(text.length()));
+            }
+            assertAgrees(text);
+        }
+    }
+
+    private static void assertAgrees(String text) {
+        char[] padded = ("<" + text + ">").toCharArray();
+        String expected = outcome(() -> ZonedDateTime.parse(text, GraphApiTimestamps.FORMATTER).toLocalDateTime());
+        assertThat(outcome(() -> GraphApiTimestamps.parseLocalDateTime(text))).as(text).isEqualTo(expected);
+        assertThat(outcome(() -> GraphApiTimestamps.parseLocalDateTime(padded, 1, text.length()))).as(text).isEqualTo(expected);
+        assertThat(outcome(() -> GraphApiTimestamps.parseLocalDate(text))).as(text)
+            .isEqualTo(outcome(() -> ZonedDateTime.parse(text, GraphApiTimestamps.FORMATTER).toLocalDate()));
+        assertThat(outcome(() -> GraphApiTimestamps.parseEpochSecond(text))).as(text)
+            .isEqualTo(outcome(() -> ZonedDateTime.parse(text, GraphApiTimestamps.FORMATTER).toEpochSecond()));
+    }
+
+    private static String outcome(Supplier<Object> parse) {
+        try {
+            return String.valueOf(parse.get());
+        } catch (DateTimeException e) {
+            return "error";
+        }
+    }
+}
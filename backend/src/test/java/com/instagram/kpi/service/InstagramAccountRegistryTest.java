@@ -0,0 +1,61 @@
+package com.instagram.kpi.service;
+
+import com.instagram.kpi.model.AccessTokenConverter;
+import com.instagram.kpi.model.InstagramAccount;
+import com.instagram.kpi.repository.InstagramAccountRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(showSql = false)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("test")
+@Import(InstagramAccountRegistry.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class InstagramAccountRegistryTest {
+
+    @Autowired
+    private InstagramAccountRegistry registry;
+
+    @Autowired
+    private InstagramAccountRepository accountRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void registeredTokensAreEncryptedInTheDatabase() {
+        registry.register("17840000000000201", "Second", "token-201");
+
+        String stored = storedToken("17840000000000201");
+        assertThat(AccessTokenConverter.isEncrypted(stored)).isTrue();
+        assertThat(stored).doesNotContain("token-201");
+        assertThat(accountRepository.findByAccountId("17840000000000201"))
+            .map(InstagramAccount::getAccessToken).contains("token-201");
+    }
+
+    @Test
+    void plaintextTokensAreEncryptedAtStartup() {
+        jdbcTemplate.update("insert into instagram_account (id, account_id, name, access_token, enabled) "
+            + "values (nextval('instagram_account_seq'), '17840000000000202', 'Legacy', 'token-202', true)");
+
+        registry.encryptPlaintextTokens();
+
+        assertThat(AccessTokenConverter.isEncrypted(storedToken("17840000000000202"))).isTrue();
+        assertThat(registry.dueAccounts(100)).contains(new AccountContext("17840000000000202", "token-202"));
+        assertThat(accountRepository.findIdsWithPlaintextToken()).isEmpty();
+    }
+
+    private String storedToken(String accountId) {
+        return jdbcTemplate.queryForObject("select access_token from instagram_account where account_id = ?",
+            String.class, accountId);
+    }
+}
@@ -0,0 +1,249 @@
+package com.instagram.kpi.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.instagram.kpi.model.InstagramAccountKpi;
+import com.instagram.kpi.model.InstagramPost;
+import com.instagram.kpi.repository.InstagramAccountKpiRepository;
+import com.instagram.kpi.repository.InstagramPostRepository;
+import com.instagram.kpi.repository.InstagramStoryRepository;
+import com.instagram.kpi.service.StubGraphApiServer.Request;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.UncheckedIOException;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the refresh pipeline against a local stub of the Graph API that answers every
+ * request after a fixed delay, so wall-clock time is dominated by round trips as in production.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class InstagramServiceTest {
+
+    private static final String ACCOUNT = "17840000000000001";
+    private static final Duration LATENCY = Duration.ofMillis(100);
+    private static final int POSTS = 60;
+    // The first posts come with inline insights, the rest need a batch lookup
+    private static final int INLINE_INSIGHTS = 5;
+    private static final Pattern POST_INSIGHTS = Pattern.compile("/?v23\\.0/(\\d+)/insights.*");
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final StubGraphApiServer stub = new StubGraphApiServer(LATENCY, InstagramServiceTest::respond);
+
+    @Autowired
+    private InstagramService instagramService;
+
+    @Autowired
+    private GraphApiClient graphApiClient;
+
+    @Autowired
+    private GraphApiJsonDecoder decoder;
+
+    @Autowired
+    private InstagramPostRepository postRepository;
+
+    @Autowired
+    private InstagramAccountKpiRepository kpiRepository;
+
+    @Autowired
+    private InstagramStoryRepository storyRepository;
+
+    @DynamicPropertySource
+    static void graphApi(DynamicPropertyRegistry registry) {
+        registry.add("instagram.api.client.base-url", stub::baseUrl);
+        registry.add("instagram.api.client.requests-per-second", () -> 1_000);
+        // Kept apart from the database the repository tests fill
+        registry.add("spring.datasource.url",
+            () -> "jdbc:h2:mem:kpi-service-test;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH");
+    }
+
+    @AfterAll
+    static void stopStub() {
+        stub.close();
+    }
+
+    @Test
+    void concurrentRefreshTakesAboutTheSlowestFetch() {
+        // First run inserts everything and warms up the code paths
+        instagramService.refreshAllData();
+
+        long serialNanos = System.nanoTime();
+        instagramService.fetchLatestPosts();
+        instagramService.fetchAccountKpis();
+        instagramService.fetchPinnedReel();
+        instagramService.fetchLatestStory();
+        serialNanos = System.nanoTime() - serialNanos;
+
+        stub.clearRequests();
+        long concurrentNanos = System.nanoTime();
+        instagramService.refreshAllData();
+        concurrentNanos = System.nanoTime() - concurrentNanos;
+
+        // Media page, two insights batches, three account calls, pinned reel and story
+        assertThat(stub.requests()).hasSize(8);
+        // Serially that is five round trips; concurrently the media page and its batches are the longest chain
+        assertThat(Duration.ofNanos(serialNanos)).isGreaterThanOrEqualTo(LATENCY.multipliedBy(5));
+        assertThat(concurrentNanos).isLessThan(serialNanos * 7 / 10);
+    }
+
+    @Test
+    void refreshMergesEveryFetchIntoTheStore() {
+        instagramService.refreshAllData();
+
+        assertThat(postRepository.findByAccountId(ACCOUNT)).hasSize(POSTS);
+        InstagramPost inline = postRepository.findByPostId(postId(0)).orElseThrow();
+        assertThat(inline.getReach()).isEqualTo(500);
+        assertThat(inline.getShares()).isEqualTo(5);
+        InstagramPost batched = postRepository.findByPostId(postId(POSTS - 1)).orElseThrow();
+        assertThat(batched.getLikes()).isEqualTo(POSTS - 1);
+        assertThat(batched.getReach()).isEqualTo(1_000 + POSTS - 1);
+        assertThat(batched.getSaves()).isEqualTo(3);
+        assertThat(batched.getShares()).isEqualTo(2);
+        assertThat(batched.getEngagementRate()).isNotNull();
+
+        LocalDate today = LocalDate.now();
+        InstagramAccountKpi todayKpi = kpiRepository.findByAccountIdAndDate(ACCOUNT, today).orElseThrow();
+        assertThat(todayKpi.getFollowers()).isEqualTo(5_000);
+        assertThat(todayKpi.getProfileViews()).isEqualTo(321);
+        assertThat(todayKpi.getReach()).isEqualTo(700);
+        assertThat(kpiRepository.findByAccountIdAndDateBetween(ACCOUNT, today.minusDays(29), today)).hasSize(30);
+
+        assertThat(storyRepository.findByStoryId("1799000000000001").orElseThrow().getImpressions()).isEqualTo(250);
+    }
+
+    @Test
+    void batchedInsightsNeedFarFewerRequestsThanAPerPostLoop() throws IOException {
+        instagramService.fetchLatestPosts();
+
+        stub.clearRequests();
+        long calls = graphApiClient.callCount();
+        long batchedNanos = System.nanoTime();
+        instagramService.fetchLatestPosts();
+        batchedNanos = System.nanoTime() - batchedNanos;
+        int batchedRequests = stub.requests().size();
+        long batchedCalls = graphApiClient.callCount() - calls;
+
+        // The loop this replaced: the media page, then one blocking /insights GET per post without inline insights
+        stub.clearRequests();
+        calls = graphApiClient.callCount();
+        long loopNanos = System.nanoTime();
+        JsonNode page = graphApiClient.getJson("/v23.0/" + ACCOUNT + "/media?fields=id,like_count,insights.metric(reach)&access_token=token").block();
+        for (JsonNode media : page.get("data")) {
+            if (!media.has("insights")) {
+                InstagramPost post = new InstagramPost();
+                JsonNode insights = graphApiClient.getJson("/v23.0/" + media.get("id").asText()
+                    + "/insights?metric=reach,impressions,saved,shares&access_token=token").block();
+                decoder.decodeInsights(insights.toString(), (name, value) -> GraphApiJsonDecoder.applyPostInsight(post, name, value));
+            }
+        }
+        loopNanos = System.nanoTime() - loopNanos;
+        int loopRequests = stub.requests().size();
+        long loopCalls = graphApiClient.callCount() - calls;
+
+        int missing = POSTS - INLINE_INSIGHTS;
+        assertThat(batchedRequests).isEqualTo(1 + 2);
+        assertThat(loopRequests).isEqualTo(1 + missing);
+        // Meta charges every request inside a batch, so the rate-limit cost is the same
+        assertThat(batchedCalls).isEqualTo(loopCalls).isEqualTo(1 + missing);
+        // Two round trips (the batches run side by side) instead of one per post
+        assertThat(loopNanos).isGreaterThanOrEqualTo(LATENCY.multipliedBy(1 + missing).toNanos());
+        assertThat(batchedNanos).isLessThan(loopNanos / 5);
+    }
+
+    private static String postId(int index) {
+        return String.valueOf(1790000000000000L + index);
+    }
+
+    private static String respond(Request request) {
+        String path = request.path();
+        if ("POST".equals(request.method()) && "/".equals(path)) {
+            return batchResponse(request.form().get("batch"));
+        }
+        Map<String, String> query = request.query();
+        if (path.equals("/v23.0/" + ACCOUNT + "/media")) {
+            if ("STORY".equals(query.get("media_type"))) {
+                return """
+                    {"data": [{"id": "1799000000000001", "media_type": "STORY", "timestamp": "2024-06-30T07:00:00+0000",
+                      "insights": {"data": [{"name": "impressions", "values": [{"value": 250}]},
+                                            {"name": "replies", "values": [{"value": 4}]}]}}]}
+                    """;
+            }
+            return query.containsKey("limit") ? "{\"data\": [{\"id\": \"1791\", \"media_type\": \"REELS\"}]}" : mediaPage();
+        }
+        if (path.equals("/v23.0/" + ACCOUNT + "/insights")) {
+            if ("reach".equals(query.get("metric"))) {
+                StringBuilder values = new StringBuilder();
+                for (int day = 29; day >= 0; day--) {
+                    values.append(day == 29 ? "" : ",").append("{\"value\": 700, \"end_time\": \"")
+                        .append(LocalDate.now().minusDays(day)).append("T07:00:00+0000\"}");
+                }
+                return "{\"data\": [{\"name\": \"reach\", \"period\": \"day\", \"values\": [" + values + "]}]}";
+            }
+            return "{\"data\": [{\"name\": \"profile_views\", \"total_value\": {\"value\": 321}}]}";
+        }
+        if (path.equals("/v23.0/" + ACCOUNT)) {
+            return "{\"followers_count\": 5000, \"id\": \"" + ACCOUNT + "\"}";
+        }
+        if (POST_INSIGHTS.matcher(path).matches()) {
+            return postInsights(path);
+        }
+        return null;
+    }
+
+    private static String mediaPage() {
+        StringBuilder data = new StringBuilder();
+        for (int i = 0; i < POSTS; i++) {
+            data.append(i == 0 ? "" : ",")
+                .append("{\"id\": \"").append(postId(i)).append("\", \"caption\": \"post ").append(i)
+                .append("\", \"media_type\": \"IMAGE\", \"timestamp\": \"2024-06-30T07:00:00+0000\", \"like_count\": ")
+                .append(i).append(", \"comments_count\": 1");
+            if (i < INLINE_INSIGHTS) {
+                data.append(", \"insights\": {\"data\": [{\"name\": \"reach\", \"values\": [{\"value\": 500}]},")
+                    .append("{\"name\": \"shares\", \"values\": [{\"value\": 5}]}]}");
+            }
+            data.append('}');
+        }
+        return "{\"data\": [" + data + "]}";
+    }
+
+    // One entry per requested relative_url, in request order, as the batch endpoint answers
+    private static String batchResponse(String batch) {
+        try {
+            ArrayNode results = objectMapper.createArrayNode();
+            for (JsonNode item : objectMapper.readTree(batch)) {
+                results.addObject()
+                    .put("code", 200)
+                    .put("body", postInsights(item.path("relative_url").asText()));
+            }
+            return results.toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String postInsights(String url) {
+        Matcher matcher = POST_INSIGHTS.matcher(url);
+        if (!matcher.matches()) {
+            return "{\"error\": {\"message\": \"Unknown path\"}}";
+        }
+        long reach = 1_000 + Long.parseLong(matcher.group(1)) - 1790000000000000L;
+        return "{\"data\": [{\"name\": \"reach\", \"values\": [{\"value\": " + reach + "}]},"
+            + "{\"name\": \"saved\", \"values\": [{\"value\": 3}]},"
+            + "{\"name\": \"shares\", \"values\": [{\"value\": 2}]}]}";
+    }
+}
@@ -0,0 +1,107 @@
+package com.instagram.kpi.service;
+
+import com.instagram.kpi.model.InstagramAccountKpi;
+import com.instagram.kpi.repository.InstagramAccountKpiRepository;
+import com.instagram.kpi.service.KpiRollupStore.Bucket;
+import com.instagram.kpi.service.KpiRollupStore.Metric;
+import com.instagram.kpi.service.KpiRollupStore.MetricSeries;
+import com.instagram.kpi.service.KpiRollupStore.Rollup;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class KpiRollupStoreTest {
+
+    private static final String ACCOUNT = "17840000000000001";
+    private static final LocalDate FIRST = LocalDate.of(2024, 1, 1);
+
+    private KpiRollupStore store;
+
+    @BeforeEach
+    void setUp() {
+        // Four weeks of data starting on a Monday: followers grow by 10 a day, reach is 100 a day
+        List<InstagramAccountKpi> rows = new ArrayList<>();
+        for (int day = 0; day < 28; day++) {
+            InstagramAccountKpi kpi = new InstagramAccountKpi();
+            kpi.setAccountId(ACCOUNT);
+            kpi.setDate(FIRST.plusDays(day));
+            kpi.setFollowers(1_000 + 10 * day);
+            kpi.setNewFollowers(10);
+            kpi.setReach(100);
+            rows.add(kpi);
+        }
+        InstagramAccountKpiRepository kpiRepository = mock(InstagramAccountKpiRepository.class);
+        when(kpiRepository.findByAccountId(ACCOUNT)).thenReturn(rows);
+        InstagramAccountRegistry accounts = new InstagramAccountRegistry(null, null, null, kpiRepository, ACCOUNT, "token");
+        store = new KpiRollupStore(kpiRepository, accounts);
+    }
+
+    @Test
+    void rangeIsClampedToStoredDays() {
+        Rollup rollup = store.rollup(Bucket.DAY, List.of(Metric.REACH),
+            LocalDate.of(1900, 1, 1), LocalDate.of(999_999, 12, 31), 0);
+
+        assertThat(rollup.from()).isEqualTo(FIRST);
+        assertThat(rollup.to()).isEqualTo(FIRST.plusDays(27));
+        assertThat(rollup.starts()).hasSize(28);
+    }
+
+    @Test
+    void rangeOutsideTheDataIsEmpty() {
+        Rollup rollup = store.rollup(Bucket.WEEK, List.of(Metric.REACH),
+            LocalDate.of(2030, 1, 1), LocalDate.of(2040, 1, 1), 0);
+
+        assertThat(rollup.starts()).isEmpty();
+        assertThat(rollup.metrics().get("reach").count()).isEmpty();
+    }
+
+    @Test
+    void oversizedRequestsAreRejected() {
+        assertThatThrownBy(() -> store.rollup(Bucket.WEEK, List.of(Metric.REACH), null, null, KpiRollupStore.MAX_WINDOW + 1))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> store.rollup(Bucket.WEEK, List.of(Metric.REACH), null, null, -1))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> store.rollup(Bucket.WEEK, List.of(Metric.REACH), FIRST.plusDays(1), FIRST, 0))
+            .isInstanceOf(IllegalArgumentException.class);
+
+        // Ten years and more of daily data
+        List<InstagramAccountKpi> decade = new ArrayList<>();
+        for (int day = 0; day <= KpiRollupStore.MAX_BUCKETS; day++) {
+            InstagramAccountKpi kpi = new InstagramAccountKpi();
+            kpi.setAccountId(ACCOUNT);
+            kpi.setDate(LocalDate.of(2012, 1, 2).plusDays(day));
+            kpi.setReach(100);
+            decade.add(kpi);
+        }
+        // record only patches a store that has been loaded
+        store.rollup(Bucket.DAY, List.of(Metric.REACH), null, null, 0);
+        store.record(decade);
+        assertThatThrownBy(() -> store.rollup(Bucket.DAY, List.of(Metric.REACH), null, null, 0))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThat(store.rollup(Bucket.MONTH, List.of(Metric.REACH), null, null, 12).starts()).hasSizeGreaterThan(120);
+    }
+
+    @Test
+    void followersAreNotSummed() {
+        Rollup rollup = store.rollup(Bucket.WEEK, List.of(Metric.FOLLOWERS, Metric.REACH), null, null, 2);
+
+        MetricSeries followers = rollup.metrics().get("followers");
+        assertThat(followers.sum()).isNull();
+        assertThat(followers.growth()).isNull();
+        assertThat(followers.movingAverage()).isNull();
+        assertThat(followers.last()).containsExactly(1_060, 1_130, 1_200, 1_270);
+        assertThat(followers.average()).containsExactly(1_030.0, 1_100.0, 1_170.0, 1_240.0);
+
+        MetricSeries reach = rollup.metrics().get("reach");
+        assertThat(reach.sum()).containsExactly(700, 700, 700, 700);
+        assertThat(reach.movingAverage()).containsExactly(null, 700.0, 700.0, 700.0);
+    }
+}
@@ -0,0 +1,212 @@
+package com.instagram.kpi.service;
+
+import com.instagram.kpi.model.InstagramAccountKpi;
+import com.instagram.kpi.model.InstagramPost;
+import com.instagram.kpi.model.KpiUpdateMessage;
+import com.instagram.kpi.repository.InstagramAccountKpiRepository;
+import com.instagram.kpi.repository.InstagramPostRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.support.JpaRepositoryFactory;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@DataJpaTest(showSql = false)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("test")
+@Import({KpiSnapshotService.class, KpiSnapshotServiceTest.PostgresRepeatableRead.class})
+class KpiSnapshotServiceTest {
+
+    private static final String ACCOUNT = "17840000000000777";
+    private static final LocalDateTime FIRST_POST = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    @MockBean
+    private KpiUpdatePublisher publisher;
+
+    @Autowired
+    private KpiSnapshotService snapshots;
+
+    @Autowired
+    private InstagramPostRepository postRepository;
+
+    // Mocked so a test can commit a write between two of the snapshot's queries
+    @MockBean
+    private InstagramAccountKpiRepository kpiRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void snapshotHoldsTheNewestPostsAndACursorForTheRest() {
+        int total = 250;
+        List<InstagramPost> posts = new ArrayList<>();
+        for (int i = 0; i < total; i++) {
+            InstagramPost post = new InstagramPost();
+            post.setAccountId(ACCOUNT);
+            post.setPostId("snapshot-" + i);
+            // Pairs of posts share a timestamp so the id breaks the tie
+            post.setPostedAt(FIRST_POST.plusHours(i / 2));
+            posts.add(post);
+        }
+        postRepository.saveAll(posts);
+        when(publisher.currentSequence(ACCOUNT)).thenReturn(42L);
+
+        KpiUpdateMessage snapshot = snapshots.snapshot(ACCOUNT);
+
+        assertThat(snapshot.getSequence()).isEqualTo(42L);
+        assertThat(snapshot.getPosts()).hasSize(KpiSnapshotService.SNAPSHOT_POSTS);
+        assertThat(snapshot.getPosts().get(0).getPostId()).isEqualTo("snapshot-249");
+        assertThat(snapshot.getPostsCursor()).isNotNull();
+
+        // The cursor continues exactly where the snapshot stopped, as /api/instagram/posts?after= reads it
+        String[] position = new String(Base64.getUrlDecoder().decode(snapshot.getPostsCursor()), StandardCharsets.UTF_8)
+            .split("\\|", 2);
+        List<Map<String, Object>> rest = postRepository.findPageProjected(ACCOUNT, List.of("id", "postedAt", "postId"),
+            LocalDateTime.parse(position[0]), Long.parseLong(position[1]), InstagramService.MAX_POSTS_PAGE_SIZE);
+        Set<String> seen = new HashSet<>();
+        snapshot.getPosts().forEach(post -> seen.add(post.getPostId()));
+        rest.forEach(row -> seen.add((String) row.get("postId")));
+        assertThat(rest).hasSize(total - KpiSnapshotService.SNAPSHOT_POSTS);
+        assertThat(seen).hasSize(total);
+    }
+
+    @Test
+    void smallAccountsGetEveryPostWithoutACursor() {
+        InstagramPost post = new InstagramPost();
+        post.setAccountId(ACCOUNT);
+        post.setPostId("snapshot-only");
+        post.setPostedAt(FIRST_POST);
+        postRepository.save(post);
+
+        KpiUpdateMessage snapshot = snapshots.snapshot(ACCOUNT);
+
+        assertThat(snapshot.getPosts()).extracting(InstagramPost::getPostId).containsExactly("snapshot-only");
+        assertThat(snapshot.getPostsCursor()).isNull();
+    }
+
+    // Not in a test transaction, so the snapshot opens its own and the refresh really commits
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void refreshCommittedDuringASnapshotIsLeftForTheNextDelta() {
+        String account = "17840000000000778";
+        postRepository.save(post(account, "before-refresh", FIRST_POST));
+        AtomicLong sequence = new AtomicLong(7);
+        when(publisher.currentSequence(account)).thenAnswer(call -> sequence.get());
+        // Reads and writes through the shared EntityManager, so inside whichever transaction is active
+        InstagramAccountKpiRepository kpis = new JpaRepositoryFactory(entityManager).getRepository(InstagramAccountKpiRepository.class);
+        TransactionTemplate refresh = new TransactionTemplate(transactionManager);
+        // Between the posts and the KPI query a refresh commits a post and today's KPIs, then publishes delta 8
+        when(kpiRepository.findByAccountIdAndDateBetweenOrderByDateAsc(eq(account), any(), any())).thenAnswer(call -> {
+            CompletableFuture.runAsync(() -> refresh.executeWithoutResult(status -> {
+                postRepository.save(post(account, "during-snapshot", FIRST_POST.plusHours(1)));
+                InstagramAccountKpi kpi = new InstagramAccountKpi();
+                kpi.setAccountId(account);
+                kpi.setDate(LocalDate.now());
+                kpi.setFollowers(1_000);
+                kpis.save(kpi);
+            })).join();
+            sequence.incrementAndGet();
+            return kpis.findByAccountIdAndDateBetweenOrderByDateAsc(account, call.getArgument(1), call.getArgument(2));
+        });
+
+        try {
+            KpiUpdateMessage snapshot = snapshots.snapshot(account);
+
+            // Everything as of delta 7; delta 8 brings the refresh
+            assertThat(snapshot.getSequence()).isEqualTo(7L);
+            assertThat(snapshot.getPosts()).extracting(InstagramPost::getPostId).containsExactly("before-refresh");
+            assertThat(snapshot.getAccountKpis()).isEmpty();
+        } finally {
+            refresh.executeWithoutResult(status -> {
+                kpis.deleteAll(kpis.findByAccountId(account));
+                postRepository.deleteAll(postRepository.findByAccountId(account));
+            });
+        }
+    }
+
+    private static InstagramPost post(String accountId, String postId, LocalDateTime postedAt) {
+        InstagramPost post = new InstagramPost();
+        post.setAccountId(accountId);
+        post.setPostId(postId);
+        post.setPostedAt(postedAt);
+        return post;
+    }
+
+    /**
+     * H2's REPEATABLE READ fixes each table's view when the table is first read, so a row
+     * committed before the KPI query would still show up there. Its SNAPSHOT level fixes the
+     * whole database at the first read, as PostgreSQL's REPEATABLE READ does, so that is what
+     * the transactions asking for REPEATABLE READ get here.
+     */
+    @TestConfiguration
+    static class PostgresRepeatableRead {
+        private static final int H2_SNAPSHOT = 6;
+
+        @Bean
+        static BeanPostProcessor snapshotIsolation() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (!(bean instanceof DataSource dataSource)) {
+                        return bean;
+                    }
+                    return new DelegatingDataSource(dataSource) {
+                        @Override
+                        public Connection getConnection() throws SQLException {
+                            Connection connection = super.getConnection();
+                            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                                    if (method.getName().equals("setTransactionIsolation")
+                                        && (int) args[0] == Connection.TRANSACTION_REPEATABLE_READ) {
+                                        args = new Object[]{H2_SNAPSHOT};
+                                    }
+                                    try {
+                                        return method.invoke(connection, args);
+                                    } catch (InvocationTargetException e) {
+                                        throw e.getCause();
+                                    }
+                                });
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.instagram.kpi.service;
+
+import com.instagram.kpi.service.KpiPayloadEncoder.Encoding;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class KpiSubscriptionRegistryTest {
+
+    private final KpiSubscriptionRegistry registry = new KpiSubscriptionRegistry();
+
+    @Test
+    void headerMovesTheSubscriptionToTheEncodingsDestination() {
+        Message<?> routed = registry.preSend(subscribe("/topic/kpi-updates", "cbor", true), null);
+
+        assertThat(StompHeaderAccessor.wrap(routed).getDestination()).isEqualTo("/topic/kpi-updates.cbor");
+        assertThat(registry.encodingsInUse()).containsExactlyInAnyOrder(Encoding.JSON, Encoding.CBOR);
+    }
+
+    @Test
+    void binaryDestinationsNamedDirectlyAreCounted() {
+        Message<?> routed = registry.preSend(subscribe("/topic/kpi-updates/17840000000000001.deflate", null, true), null);
+
+        assertThat(StompHeaderAccessor.wrap(routed).getDestination()).isEqualTo("/topic/kpi-updates/17840000000000001.deflate");
+        assertThat(registry.encodingsInUse()).containsExactlyInAnyOrder(Encoding.JSON, Encoding.DEFLATE);
+    }
+
+    @Test
+    void binaryDestinationsAreRefusedOutsideTheBinaryEndpoint() {
+        assertThatThrownBy(() -> registry.preSend(subscribe("/topic/kpi-updates.cbor", null, false), null))
+            .isInstanceOf(MessagingException.class);
+        assertThatThrownBy(() -> registry.preSend(subscribe("/topic/kpi-updates", "deflate", false), null))
+            .isInstanceOf(MessagingException.class);
+        // The header cannot contradict the destination either
+        assertThatThrownBy(() -> registry.preSend(subscribe("/topic/kpi-updates.cbor", "json", true), null))
+            .isInstanceOf(MessagingException.class);
+        assertThat(registry.encodingsInUse()).containsExactly(Encoding.JSON);
+    }
+
+    @Test
+    void disconnectReleasesTheSubscriptions() {
+        registry.preSend(subscribe("/topic/kpi-updates.cbor", null, true), null);
+
+        StompHeaderAccessor disconnect = StompHeaderAccessor.create(StompCommand.DISCONNECT);
+        disconnect.setSessionId("session-1");
+        registry.preSend(MessageBuilder.createMessage(new byte[0], disconnect.getMessageHeaders()), null);
+
+        assertThat(registry.encodingsInUse()).containsExactly(Encoding.JSON);
+    }
+
+    private static Message<byte[]> subscribe(String destination, String encoding, boolean binaryEndpoint) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+        accessor.setSessionId("session-1");
+        accessor.setSubscriptionId("sub-0");
+        accessor.setDestination(destination);
+        if (encoding != null) {
+            accessor.addNativeHeader(Encoding.HEADER, encoding);
+        }
+        Map<String, Object> attributes = new HashMap<>();
+        if (binaryEndpoint) {
+            attributes.put(KpiSubscriptionRegistry.BINARY_FRAMES_ATTRIBUTE, Boolean.TRUE);
+        }
+        accessor.setSessionAttributes(attributes);
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
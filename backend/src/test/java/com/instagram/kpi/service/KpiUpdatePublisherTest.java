@@ -0,0 +1,98 @@
+package com.instagram.kpi.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.instagram.kpi.model.InstagramPost;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KpiUpdatePublisherTest {
+
+    private static final String PRIMARY = "17840000000000001";
+    private static final String OTHER = "17840000000000002";
+
+    private final List<String> destinations = new ArrayList<>();
+    private final CountDownLatch otherAccountSending = new CountDownLatch(1);
+    private volatile CountDownLatch otherAccountSend;
+
+    private final KpiUpdatePublisher publisher = new KpiUpdatePublisher(
+        new SimpMessagingTemplate((message, timeout) -> {
+            String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+            if (otherAccountSend != null && destination.endsWith(OTHER)) {
+                otherAccountSending.countDown();
+                try {
+                    otherAccountSend.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            synchronized (destinations) {
+                destinations.add(destination);
+            }
+            return true;
+        }),
+        new InstagramAccountRegistry(null, null, null, null, PRIMARY, "token"),
+        new KpiMetrics(new SimpleMeterRegistry()),
+        new KpiPayloadEncoder(new ObjectMapper().findAndRegisterModules()),
+        new KpiSubscriptionRegistry(),
+        new KpiUpdateStream(32));
+
+    @Test
+    void onlyChangedPostsArePublished() {
+        InstagramPost post = post("media-1", 100, 10);
+        assertThat(publisher.publishPosts(PRIMARY, List.of(post))).isEqualTo(1);
+        assertThat(publisher.publishPosts(PRIMARY, List.of(post("media-1", 100, 10)))).isZero();
+        // Changes that would cancel out in a 31-polynomial hash are still seen
+        assertThat(publisher.publishPosts(PRIMARY, List.of(post("media-1", 101, -21)))).isEqualTo(1);
+        assertThat(publisher.currentSequence(PRIMARY)).isEqualTo(2);
+    }
+
+    @Test
+    void postsBeyondTheTrackedWindowAreForgotten() {
+        publisher.publishPosts(PRIMARY, List.of(post("media-0", 100, 10)));
+        List<InstagramPost> newer = new ArrayList<>();
+        for (int i = 1; i <= KpiUpdatePublisher.TRACKED_POSTS; i++) {
+            newer.add(post("media-" + i, 100, 10));
+        }
+        publisher.publishPosts(PRIMARY, newer);
+
+        // The oldest post was evicted, so it is sent again although unchanged
+        assertThat(publisher.publishPosts(PRIMARY, List.of(post("media-0", 100, 10)))).isEqualTo(1);
+        assertThat(publisher.publishPosts(PRIMARY, List.of(post("media-" + KpiUpdatePublisher.TRACKED_POSTS, 100, 10)))).isZero();
+    }
+
+    @Test
+    void slowSendOnOneAccountDoesNotBlockAnother() throws Exception {
+        otherAccountSend = new CountDownLatch(1);
+        CompletableFuture<Integer> blocked = CompletableFuture.supplyAsync(
+            () -> publisher.publishPosts(OTHER, List.of(post("media-2", 5, 1))));
+        assertThat(otherAccountSending.await(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(publisher.publishPosts(PRIMARY, List.of(post("media-1", 100, 10)))).isEqualTo(1);
+        assertThat(blocked).isNotDone();
+
+        otherAccountSend.countDown();
+        assertThat(blocked.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+        assertThat(destinations).containsExactly(KpiUpdatePublisher.TOPIC, KpiUpdatePublisher.TOPIC + "/" + OTHER);
+    }
+
+    private static InstagramPost post(String postId, int likes, int comments) {
+        InstagramPost post = new InstagramPost();
+        post.setPostId(postId);
+        post.setCaption("caption of " + postId);
+        post.setPostedAt(LocalDateTime.of(2024, 6, 30, 7, 0));
+        post.setLikes(likes);
+        post.setComments(comments);
+        return post;
+    }
+}
@@ -0,0 +1,129 @@
+package com.instagram.kpi.service;
+
+import com.instagram.kpi.model.InstagramAccountKpi;
+import com.instagram.kpi.repository.MetricSnapshotBlockRepository;
+import com.instagram.kpi.service.MetricHistoryStore.EntityType;
+import com.instagram.kpi.service.MetricHistoryStore.History;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DataJpaTest(showSql = false)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("test")
+@Import({MetricHistoryStore.class, MetricHistoryStoreTest.FixedClock.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class MetricHistoryStoreTest {
+
+    // A server zone far from UTC, so stored times that depended on it would be off by hours
+    static final Clock CLOCK = Clock.fixed(Instant.parse("2024-06-30T07:00:00Z"), ZoneId.of("Asia/Kolkata"));
+
+    @TestConfiguration
+    static class FixedClock {
+        @Bean
+        Clock clock() {
+            return CLOCK;
+        }
+    }
+
+    @Autowired
+    private MetricHistoryStore historyStore;
+
+    @Autowired
+    private MetricSnapshotBlockRepository blockRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    void clear() {
+        blockRepository.deleteAll();
+    }
+
+    @Test
+    void samplesKeepNegativeValuesAndUtcTimes() {
+        InstagramAccountKpi kpi = kpi(1_000, -1);
+        kpi.setProfileViews(null);
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> historyStore.recordAccountKpis(List.of(kpi)));
+
+        History history = historyStore.history(EntityType.ACCOUNT_KPI, entityId(), null, null);
+
+        assertThat(history.observedAt()).containsExactly(LocalDateTime.of(2024, 6, 30, 7, 0));
+        assertThat(history.values().get("followers")).containsExactly(1_000);
+        assertThat(history.values().get("newFollowers")).containsExactly(-1);
+        assertThat(history.values().get("profileViews")).containsExactly((Integer) null);
+    }
+
+    @Test
+    void concurrentAppendToTheOpenBlockFailsInsteadOfLosingSamples() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.executeWithoutResult(status -> historyStore.recordAccountKpis(List.of(kpi(1_000, 0))));
+
+        TransactionTemplate concurrent = new TransactionTemplate(transactionManager);
+        concurrent.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        // The outer append reads the open block, then another transaction appends to it and commits first
+        assertThatThrownBy(() -> transaction.executeWithoutResult(status -> {
+            historyStore.recordAccountKpis(List.of(kpi(1_010, 10)));
+            concurrent.executeWithoutResult(inner -> historyStore.recordAccountKpis(List.of(kpi(1_020, 20))));
+        })).isInstanceOf(OptimisticLockingFailureException.class);
+
+        History history = historyStore.history(EntityType.ACCOUNT_KPI, entityId(), null, null);
+        assertThat(history.values().get("followers")).containsExactly(1_000, 1_020);
+        assertThat(blockRepository.findAll()).singleElement().extracting(block -> block.getVersion()).isEqualTo(1L);
+    }
+
+    @Test
+    void secondOpenBlockOfAnEntityIsSealed() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        TransactionTemplate concurrent = new TransactionTemplate(transactionManager);
+        concurrent.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        // Both transactions start the entity's first block, which no version check can catch
+        transaction.executeWithoutResult(status -> {
+            historyStore.recordAccountKpis(List.of(kpi(1_000, 0)));
+            concurrent.executeWithoutResult(inner -> historyStore.recordAccountKpis(List.of(kpi(1_005, 5))));
+        });
+        transaction.executeWithoutResult(status -> historyStore.recordAccountKpis(List.of(kpi(1_010, 10))));
+
+        assertThat(blockRepository.findAll()).filteredOn(block -> !block.isSealed()).singleElement()
+            .extracting(block -> block.getSampleCount()).isEqualTo(2);
+        History history = historyStore.history(EntityType.ACCOUNT_KPI, entityId(), null, null);
+        assertThat(history.values().get("followers")).containsExactlyInAnyOrder(1_000, 1_005, 1_010);
+    }
+
+    private static InstagramAccountKpi kpi(int followers, int newFollowers) {
+        InstagramAccountKpi kpi = new InstagramAccountKpi();
+        kpi.setAccountId("17840000000000001");
+        kpi.setDate(LocalDate.of(2024, 6, 30));
+        kpi.setFollowers(followers);
+        kpi.setNewFollowers(newFollowers);
+        kpi.setProfileViews(50);
+        kpi.setReach(700);
+        return kpi;
+    }
+
+    private static String entityId() {
+        return MetricHistoryStore.kpiEntityId("17840000000000001", LocalDate.of(2024, 6, 30));
+    }
+}
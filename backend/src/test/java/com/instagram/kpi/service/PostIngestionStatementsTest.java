@@ -0,0 +1,199 @@
+package com.instagram.kpi.service;
+
+import com.instagram.kpi.model.InstagramPost;
+import com.instagram.kpi.repository.InstagramPostRepository;
+import com.instagram.kpi.service.StubGraphApiServer.Request;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Counts the JDBC statements a posts refresh sends to the database: every execute call on a
+ * statement from the application's DataSource, where a JDBC batch is one. Persisting used to
+ * be a findByPostId and a save per post; now it is one lookup and a few batches per 500 posts.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class PostIngestionStatementsTest {
+
+    private static final String ACCOUNT = "17840000000000001";
+
+    private static volatile int posts;
+    private static volatile int likesOffset;
+    private static final StubGraphApiServer stub = new StubGraphApiServer(Duration.ZERO, PostIngestionStatementsTest::respond);
+
+    @Autowired
+    private InstagramService instagramService;
+
+    @Autowired
+    private InstagramPostRepository postRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @DynamicPropertySource
+    static void graphApi(DynamicPropertyRegistry registry) {
+        registry.add("instagram.api.client.base-url", stub::baseUrl);
+        registry.add("instagram.api.client.requests-per-second", () -> 1_000);
+        registry.add("spring.datasource.url",
+            () -> "jdbc:h2:mem:kpi-statements-test;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH");
+    }
+
+    @AfterAll
+    static void stopStub() {
+        stub.close();
+    }
+
+    @AfterEach
+    void removePosts() {
+        jdbcTemplate.execute("TRUNCATE TABLE instagram_posts");
+        jdbcTemplate.execute("TRUNCATE TABLE instagram_metric_snapshot_block");
+    }
+
+    @Test
+    void statementsPerRefreshGrowWithBatchesNotPosts() {
+        long loop = perPostLoopStatements(1_000);
+        long hundred = refreshStatements(100);
+        long thousand = refreshStatements(1_000);
+        long tenThousand = refreshStatements(10_000);
+        System.out.printf("Statements for new posts: per-post loop 1,000 posts %d;"
+            + " refresh 100 posts %d, 1,000 posts %d, 10,000 posts %d%n", loop, hundred, thousand, tenThousand);
+
+        // Posts and their history blocks each take a lookup per 500, and a sequence call and an insert batch per 50
+        assertThat(loop).isGreaterThanOrEqualTo(2 * 1_000);
+        assertThat(thousand).isLessThan(loop / 20);
+        assertThat(tenThousand).isLessThan(10_000 / 10);
+    }
+
+    private long refreshStatements(int count) {
+        removePosts();
+        posts = count;
+        long before = StatementCounter.executions.get();
+        instagramService.fetchLatestPosts();
+        return StatementCounter.executions.get() - before;
+    }
+
+    @Test
+    void unchangedPostsAreNotWrittenAgain() {
+        long inserted = System.nanoTime();
+        long insertStatements = refreshStatements(10_000);
+        inserted = System.nanoTime() - inserted;
+        long unchanged = System.nanoTime();
+        long unchangedStatements = rerunStatements(0);
+        unchanged = System.nanoTime() - unchanged;
+        // Every like count moves, so every post and its history block are updated
+        long changed = System.nanoTime();
+        long changedStatements = rerunStatements(1);
+        changed = System.nanoTime() - changed;
+        likesOffset = 0;
+        System.out.printf("10,000-post refresh: insert %d statements in %d ms, nothing changed %d statements in %d ms,"
+                + " everything changed %d statements in %d ms%n", insertStatements, inserted / 1_000_000,
+            unchangedStatements, unchanged / 1_000_000, changedStatements, changed / 1_000_000);
+
+        // Only the post lookups are left when nothing changed
+        assertThat(unchangedStatements).isEqualTo(10_000 / 500);
+        assertThat(changedStatements).isLessThan(10_000 / 10);
+        assertThat(unchanged).isLessThan(changed / 2);
+    }
+
+    private long rerunStatements(int offset) {
+        likesOffset = offset;
+        long before = StatementCounter.executions.get();
+        instagramService.fetchLatestPosts();
+        return StatementCounter.executions.get() - before;
+    }
+
+    // What fetchLatestPosts did before: findByPostId, then save, for every post in one transaction
+    private long perPostLoopStatements(int count) {
+        removePosts();
+        long before = StatementCounter.executions.get();
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int i = 0; i < count; i++) {
+                String postId = String.valueOf(1790000000000000L + i);
+                InstagramPost post = postRepository.findByPostId(postId).orElseGet(InstagramPost::new);
+                post.setAccountId(ACCOUNT);
+                post.setPostId(postId);
+                post.setPostedAt(LocalDateTime.of(2024, 6, 30, 7, 0));
+                post.setLikes(i);
+                postRepository.save(post);
+            }
+        });
+        return StatementCounter.executions.get() - before;
+    }
+
+    /**
+     * Wraps the DataSource so that every statement it hands out counts its execute calls.
+     */
+    @TestConfiguration
+    static class StatementCounter implements BeanPostProcessor {
+        static final AtomicLong executions = new AtomicLong();
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            return bean instanceof DataSource dataSource ? counting(DataSource.class, dataSource) : bean;
+        }
+
+        private static <T> T counting(Class<T> type, T target) {
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+                if (target instanceof Statement && method.getName().startsWith("execute")) {
+                    executions.incrementAndGet();
+                }
+                Object result;
+                try {
+                    result = method.invoke(target, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+                Class<?> returned = method.getReturnType();
+                if (result != null && (returned == Connection.class || Statement.class.isAssignableFrom(returned))) {
+                    return counting(cast(returned), result);
+                }
+                return result;
+            }));
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> Class<T> cast(Class<?> type) {
+            return (Class<T>) type;
+        }
+    }
+
+    private static String respond(Request request) {
+        if (!request.path().equals("/v23.0/" + ACCOUNT + "/media") || request.query().containsKey("limit")) {
+            return null;
+        }
+        StringBuilder data = new StringBuilder();
+        for (int i = 0; i < posts; i++) {
+            data.append(i == 0 ? "" : ",")
+                .append("{\"id\": \"").append(1790000000000000L + i).append("\", \"caption\": \"post ").append(i)
+                .append("\", \"media_type\": \"IMAGE\", \"timestamp\": \"2024-06-30T07:00:00+0000\", \"like_count\": ")
+                .append(i + likesOffset).append(", \"comments_count\": 1, \"insights\": {\"data\": [")
+                .append("{\"name\": \"reach\", \"values\": [{\"value\": 500}]},")
+                .append("{\"name\": \"shares\", \"values\": [{\"value\": 5}]}]}}");
+        }
+        return "{\"data\": [" + data + "]}";
+    }
+}
@@ -0,0 +1,35 @@
+package com.instagram.kpi.service;
+
+import com.instagram.kpi.service.SnapshotBlockCodec.Columns;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SnapshotBlockCodecTest {
+
+    @Test
+    void negativeValuesAreNotReadAsMissing() {
+        Columns columns = new Columns(2, 1);
+        columns.append(1_719_730_800L, new int[] {-1, SnapshotBlockCodec.MISSING});
+        columns.append(1_719_734_400L, new int[] {SnapshotBlockCodec.MISSING, -3});
+        columns.append(1_719_738_000L, new int[] {12, Integer.MAX_VALUE});
+
+        Columns decoded = SnapshotBlockCodec.decode(SnapshotBlockCodec.encode(columns));
+
+        assertThat(decoded.size).isEqualTo(3);
+        assertThat(decoded.times).startsWith(1_719_730_800L, 1_719_734_400L, 1_719_738_000L);
+        assertThat(decoded.values[0]).startsWith(-1, SnapshotBlockCodec.MISSING, 12);
+        assertThat(decoded.values[1]).startsWith(SnapshotBlockCodec.MISSING, -3, Integer.MAX_VALUE);
+    }
+
+    @Test
+    void legacyBlocksReadMinusOneAsMissing() {
+        // Old layout: sampleCount 2, metricCount 1, times 100 and 160, values -1 then 5 (zigzag deltas)
+        byte[] legacy = {2, 1, (byte) 200, 1, 120, 1, 12};
+
+        Columns decoded = SnapshotBlockCodec.decode(legacy);
+
+        assertThat(decoded.times).startsWith(100L, 160L);
+        assertThat(decoded.values[0]).startsWith(SnapshotBlockCodec.MISSING, 5);
+    }
+}
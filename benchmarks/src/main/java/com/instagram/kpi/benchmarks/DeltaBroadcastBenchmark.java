@@ -0,0 +1,162 @@
+package com.instagram.kpi.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.instagram.kpi.model.InstagramAccountKpi;
+import com.instagram.kpi.model.InstagramPost;
+import com.instagram.kpi.service.InstagramAccountRegistry;
+import com.instagram.kpi.service.KpiMetrics;
+import com.instagram.kpi.service.KpiPayloadEncoder;
+import com.instagram.kpi.service.KpiPayloadEncoder.Encoding;
+import com.instagram.kpi.service.KpiSubscriptionRegistry;
+import com.instagram.kpi.service.KpiUpdatePublisher;
+import com.instagram.kpi.service.KpiUpdateStream;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bytes on the wire for one refresh with every subscriber on /topic/kpi-updates. The delta
+ * side runs the real KpiUpdatePublisher, whose messages are framed once per subscriber as
+ * the simple broker does; the full side sends what the refresh broadcast before deltas, the
+ * fetched posts and the whole KPI table. Each refresh changes changedPosts posts and today's
+ * KPI row. The returned byte count is what all subscribers receive together.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DeltaBroadcastBenchmark {
+    private static final String ACCOUNT = "17841400000000001";
+
+    @Param({"1000"})
+    public int subscribers;
+
+    @Param({"1", "10", "100"})
+    public int changedPosts;
+
+    @Param({"30", "365"})
+    public int kpiDays;
+
+    private ObjectMapper objectMapper;
+    private StompEncoder stompEncoder;
+    private KpiUpdatePublisher publisher;
+    private List<InstagramPost> posts;
+    private List<InstagramAccountKpi> kpis;
+    private long sentBytes;
+    private int refresh;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = Fixtures.objectMapper();
+        stompEncoder = new StompEncoder();
+        posts = Fixtures.posts(objectMapper, Fixtures.load(Fixtures.MEDIA_PAGE));
+
+        Random random = new Random(7);
+        LocalDate today = LocalDate.now();
+        kpis = new ArrayList<>(kpiDays);
+        for (int i = kpiDays - 1; i >= 0; i--) {
+            InstagramAccountKpi kpi = new InstagramAccountKpi();
+            kpi.setId((long) kpiDays - i);
+            kpi.setAccountId(ACCOUNT);
+            kpi.setDate(today.minusDays(i));
+            kpi.setFollowers(90_000 + random.nextInt(10_000));
+            kpi.setNewFollowers(random.nextInt(200));
+            kpi.setProfileViews(random.nextInt(3_000));
+            kpi.setReach(8_000 + random.nextInt(32_000));
+            kpis.add(kpi);
+        }
+
+        // Only the primary account's topic is used, so the registry never touches its repositories
+        InstagramAccountRegistry accounts = new InstagramAccountRegistry(null, null, null, null, ACCOUNT, "token");
+        SimpMessagingTemplate template = new SimpMessagingTemplate((message, timeout) -> {
+            sentBytes += fanOut(message);
+            return true;
+        });
+        publisher = new KpiUpdatePublisher(template, accounts, new KpiMetrics(new SimpleMeterRegistry()),
+            new KpiPayloadEncoder(objectMapper), new KpiSubscriptionRegistry(), new KpiUpdateStream(32));
+        // The first refresh publishes everything; later ones only what changed
+        publisher.publishPosts(ACCOUNT, posts);
+        publisher.publishAccountKpis(ACCOUNT, kpis);
+
+        System.out.printf("%nBytes per refresh for %d subscribers: delta=%d, full=%d%n",
+            subscribers, delta(), full());
+    }
+
+    @Benchmark
+    public long delta() {
+        changeOnePollWorth();
+        sentBytes = 0;
+        publisher.publishPosts(ACCOUNT, posts);
+        publisher.publishAccountKpis(ACCOUNT, kpis);
+        return sentBytes;
+    }
+
+    @Benchmark
+    public long full() throws IOException {
+        changeOnePollWorth();
+        // Serialized once per convertAndSend, then framed for every session
+        return fanOut(MimeTypeUtils.APPLICATION_JSON, objectMapper.writeValueAsBytes(posts), Map.of())
+            + fanOut(MimeTypeUtils.APPLICATION_JSON, objectMapper.writeValueAsBytes(kpis), Map.of());
+    }
+
+    private void changeOnePollWorth() {
+        refresh++;
+        for (int i = 0; i < changedPosts; i++) {
+            InstagramPost post = posts.get(i);
+            post.setLikes((post.getLikes() == null ? 0 : post.getLikes()) + 1);
+        }
+        InstagramAccountKpi today = kpis.get(kpis.size() - 1);
+        today.setFollowers(today.getFollowers() + 1);
+    }
+
+    private long fanOut(Message<?> message) {
+        MessageHeaders headers = message.getHeaders();
+        String encoding = SimpMessageHeaderAccessor.getFirstNativeHeader(Encoding.HEADER, headers);
+        return fanOut((MimeType) headers.get(MessageHeaders.CONTENT_TYPE), (byte[]) message.getPayload(),
+            encoding == null ? Map.of() : Map.of(Encoding.HEADER, encoding));
+    }
+
+    // One MESSAGE frame per session with the headers the broker adds
+    private long fanOut(MimeType contentType, byte[] payload, Map<String, String> nativeHeaders) {
+        long bytes = 0;
+        for (int session = 0; session < subscribers; session++) {
+            StompHeaderAccessor headers = StompHeaderAccessor.create(StompCommand.MESSAGE);
+            headers.setSubscriptionId("sub-0");
+            headers.setDestination(KpiUpdatePublisher.TOPIC);
+            headers.setMessageId("session-" + session + "-" + refresh);
+            headers.setContentType(contentType);
+            nativeHeaders.forEach(headers::setNativeHeader);
+            bytes += stompEncoder.encode(MessageBuilder.createMessage(payload, headers.getMessageHeaders())).length;
+        }
+        return bytes;
+    }
+}
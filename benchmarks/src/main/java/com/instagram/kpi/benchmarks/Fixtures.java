@@ -0,0 +1,52 @@
+package com.instagram.kpi.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.instagram.kpi.model.InstagramPost;
+import com.instagram.kpi.service.GraphApiJsonDecoder;
+import com.instagram.kpi.service.MediaPageMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Recorded Graph API payloads under src/main/resources/fixtures, and an ObjectMapper set up
+ * the way Spring Boot configures the one the backend gets injected.
+ */
+final class Fixtures {
+    // One /media page with inline insights (100 posts, every tenth without insights)
+    static final String MEDIA_PAGE = "fixtures/media-page.json";
+    // 30 days of /insights?metric=reach&period=day
+    static final String INSIGHTS_REACH = "fixtures/insights-reach.json";
+
+    private Fixtures() {
+    }
+
+    static byte[] load(String name) {
+        try (InputStream in = Fixtures.class.getClassLoader().getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing fixture " + name);
+            }
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Posts of a /media page decoded the way the refresh decodes them, for benchmarks that only need them as input
+    static List<InstagramPost> posts(ObjectMapper objectMapper, byte[] mediaPage) {
+        return new MediaPageMapper(new GraphApiJsonDecoder(objectMapper), ForkJoinPool.commonPool())
+            .map(mediaPage).block().posts();
+    }
+
+    static ObjectMapper objectMapper() {
+        return JsonMapper.builder()
+            .findAndAddModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+    }
+}
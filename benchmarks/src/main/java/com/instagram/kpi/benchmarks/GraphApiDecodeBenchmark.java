@@ -0,0 +1,163 @@
+package com.instagram.kpi.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.instagram.kpi.model.InstagramPost;
+import com.instagram.kpi.service.GraphApiJsonDecoder;
+import com.instagram.kpi.service.GraphApiJsonDecoder.MediaPage;
+import com.instagram.kpi.service.GraphApiTimestamps;
+import com.instagram.kpi.service.MediaPageMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding one recorded /media page into InstagramPost entities, and the daily reach
+ * insights into dates, the way the refresh does it: mediaPageMapper goes through
+ * MediaPageMapper on a pool sized as the default mediaDecodePool. The JsonNode variants are
+ * the tree-based mapping the service used before GraphApiJsonDecoder and stay here as the
+ * baseline, as does timestampFormatter for GraphApiTimestamps.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GraphApiDecodeBenchmark {
+
+    private ObjectMapper objectMapper;
+    private ForkJoinPool pool;
+    private MediaPageMapper mapper;
+    private byte[] mediaPage;
+    private byte[] reachInsights;
+    private String[] timestamps;
+    private char[][] timestampChars;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = Fixtures.objectMapper();
+        pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        mapper = new MediaPageMapper(new GraphApiJsonDecoder(objectMapper), pool);
+        mediaPage = Fixtures.load(Fixtures.MEDIA_PAGE);
+        reachInsights = Fixtures.load(Fixtures.INSIGHTS_REACH);
+        List<String> texts = new ArrayList<>();
+        for (JsonNode media : objectMapper.readTree(mediaPage).get("data")) {
+            texts.add(media.get("timestamp").asText());
+        }
+        timestamps = texts.toArray(new String[0]);
+        timestampChars = new char[timestamps.length][];
+        for (int i = 0; i < timestamps.length; i++) {
+            timestampChars[i] = timestamps[i].toCharArray();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public List<InstagramPost> mediaPageJsonNode() throws IOException {
+        List<InstagramPost> posts = new ArrayList<>();
+        for (JsonNode postNode : objectMapper.readTree(mediaPage).get("data")) {
+            posts.add(parsePost(postNode));
+        }
+        return posts;
+    }
+
+    @Benchmark
+    public MediaPage mediaPageMapper() {
+        return mapper.map(mediaPage).block();
+    }
+
+    // As persistAccountKpis reads the reach response
+    @Benchmark
+    public void reachInsightsJsonNode(Blackhole blackhole) throws IOException {
+        JsonNode reachResponse = objectMapper.readTree(reachInsights);
+        for (JsonNode dailyReach : reachResponse.get("data").get(0).get("values")) {
+            blackhole.consume(GraphApiTimestamps.parseLocalDate(dailyReach.get("end_time").asText()));
+            blackhole.consume(dailyReach.get("value").asInt());
+        }
+    }
+
+    // The timestamps of one page on their own, the part of decoding that allocates the most per field
+    @Benchmark
+    public void timestampFormatter(Blackhole blackhole) {
+        for (String timestamp : timestamps) {
+            blackhole.consume(ZonedDateTime.parse(timestamp, GraphApiTimestamps.FORMATTER).toLocalDateTime());
+        }
+    }
+
+    @Benchmark
+    public void timestampParser(Blackhole blackhole) {
+        for (String timestamp : timestamps) {
+            blackhole.consume(GraphApiTimestamps.parseLocalDateTime(timestamp));
+        }
+    }
+
+    // As GraphApiJsonDecoder reads them, straight from the parser's char buffer
+    @Benchmark
+    public void timestampParserChars(Blackhole blackhole) {
+        for (char[] timestamp : timestampChars) {
+            blackhole.consume(GraphApiTimestamps.parseLocalDateTime(timestamp, 0, timestamp.length));
+        }
+    }
+
+    @Benchmark
+    public void timestampParserEpochSecond(Blackhole blackhole) {
+        for (String timestamp : timestamps) {
+            blackhole.consume(GraphApiTimestamps.parseEpochSecond(timestamp));
+        }
+    }
+
+    private static InstagramPost parsePost(JsonNode postNode) {
+        InstagramPost post = new InstagramPost();
+        post.setPostId(postNode.get("id").asText());
+        if (postNode.has("caption")) {
+            post.setCaption(postNode.get("caption").asText());
+        }
+        if (postNode.has("timestamp")) {
+            post.setPostedAt(ZonedDateTime.parse(postNode.get("timestamp").asText(), GraphApiTimestamps.FORMATTER).toLocalDateTime());
+        }
+        if (postNode.has("like_count")) {
+            post.setLikes(postNode.get("like_count").asInt());
+        }
+        if (postNode.has("comments_count")) {
+            post.setComments(postNode.get("comments_count").asInt());
+        }
+        if (postNode.has("insights") && postNode.get("insights").has("data")) {
+            for (JsonNode insightNode : postNode.get("insights").get("data")) {
+                int value = insightNode.get("values").get(0).get("value").asInt();
+                switch (insightNode.get("name").asText()) {
+                    case "reach":
+                        post.setReach(value);
+                        break;
+                    case "impressions":
+                        post.setImpressions(value);
+                        break;
+                    case "saved":
+                        post.setSaves(value);
+                        break;
+                }
+            }
+        }
+        return post;
+    }
+}
@@ -0,0 +1,68 @@
+package com.instagram.kpi.benchmarks;
+
+import com.instagram.kpi.service.GraphApiJsonDecoder;
+import com.instagram.kpi.service.GraphApiJsonDecoder.MediaPage;
+import com.instagram.kpi.service.KpiMetrics;
+import com.instagram.kpi.service.MediaPageMapper;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the KpiMetrics timers and counters on the smallest unit they wrap: decoding one
+ * media page through MediaPageMapper, as the refresh does. The instrumented variant should
+ * stay within a few percent of the bare one; a larger gap means a meter lookup or tag
+ * allocation crept into the recording path.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InstrumentationOverheadBenchmark {
+
+    private ForkJoinPool pool;
+    private MediaPageMapper mapper;
+    private KpiMetrics metrics;
+    private byte[] mediaPage;
+
+    @Setup
+    public void setUp() {
+        pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        mapper = new MediaPageMapper(new GraphApiJsonDecoder(Fixtures.objectMapper()), pool);
+        metrics = new KpiMetrics(new PrometheusMeterRegistry(PrometheusConfig.DEFAULT));
+        mediaPage = Fixtures.load(Fixtures.MEDIA_PAGE);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public MediaPage decode() {
+        return mapper.map(mediaPage).block();
+    }
+
+    // As the posts refresh wraps it: the fetch timer around getMediaPage, which counts the parsed items
+    @Benchmark
+    public MediaPage decodeTimed() {
+        return metrics.timeFetch("posts", mapper.map(mediaPage))
+            .doOnNext(page -> metrics.itemsParsed("media", page.posts().size()))
+            .block();
+    }
+}
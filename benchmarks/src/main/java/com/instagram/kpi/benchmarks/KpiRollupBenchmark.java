@@ -0,0 +1,91 @@
+package com.instagram.kpi.benchmarks;
+
+import com.instagram.kpi.model.InstagramAccountKpi;
+import com.instagram.kpi.repository.InstagramAccountKpiRepository;
+import com.instagram.kpi.service.InstagramAccountRegistry;
+import com.instagram.kpi.service.KpiRollupStore;
+import com.instagram.kpi.service.KpiRollupStore.Bucket;
+import com.instagram.kpi.service.KpiRollupStore.Metric;
+import com.instagram.kpi.service.KpiRollupStore.Rollup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * /rollup over ten years of daily KPIs, the longest history the store answers in one
+ * request at day granularity. Every bucket size covers the whole range for all metrics with
+ * a 4-bucket moving average; updateDay is the cost of one ingested KPI row.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KpiRollupBenchmark {
+
+    private static final String ACCOUNT = "17840000000000001";
+    private static final LocalDate FIRST_DAY = LocalDate.of(2015, 1, 1);
+    private static final int DAYS = 3_650;
+
+    @Param({"DAY", "WEEK", "MONTH"})
+    public Bucket bucket;
+
+    private KpiRollupStore store;
+    private InstagramAccountKpi update;
+    private int updates;
+
+    @Setup
+    public void setUp() {
+        List<InstagramAccountKpi> rows = new ArrayList<>(DAYS);
+        for (int day = 0; day < DAYS; day++) {
+            InstagramAccountKpi kpi = new InstagramAccountKpi();
+            kpi.setAccountId(ACCOUNT);
+            kpi.setDate(FIRST_DAY.plusDays(day));
+            kpi.setFollowers(10_000 + 7 * day);
+            kpi.setNewFollowers(7 + day % 5);
+            kpi.setProfileViews(300 + day % 40);
+            kpi.setReach(5_000 + day % 700);
+            rows.add(kpi);
+        }
+        // Only findByAccountId is called, once, when the store loads
+        InstagramAccountKpiRepository kpiRepository = (InstagramAccountKpiRepository) Proxy.newProxyInstance(
+            getClass().getClassLoader(), new Class<?>[] {InstagramAccountKpiRepository.class},
+            (proxy, method, args) -> rows);
+        store = new KpiRollupStore(kpiRepository, new InstagramAccountRegistry(null, null, null, kpiRepository, ACCOUNT, "token"));
+        Rollup rollup = rollup();
+        System.out.printf("%n%d %s buckets from %s to %s%n", rollup.starts().size(), bucket, rollup.from(), rollup.to());
+
+        update = new InstagramAccountKpi();
+        update.setAccountId(ACCOUNT);
+        update.setDate(FIRST_DAY.plusDays(DAYS - 1));
+        update.setFollowers(40_000);
+    }
+
+    @Benchmark
+    public Rollup rollup() {
+        return store.rollup(bucket, Arrays.asList(Metric.values()), null, null, 4);
+    }
+
+    @Benchmark
+    public int updateDay() {
+        update.setReach(5_000 + updates++ % 700);
+        store.record(List.of(update));
+        return updates;
+    }
+}
@@ -0,0 +1,209 @@
+package com.instagram.kpi.benchmarks;
+
+import org.flywaydb.core.Flyway;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The hot lookups against the migrated schema in H2 (PostgreSQL mode), with the V2 indexes
+ * dropped and in place. Posts are spread over 10 accounts, with 10 years of daily KPIs and
+ * 1,000 stories per account; run with -p posts=1000000 for the 1M-post scale. H2 reads the
+ * post indexes to find an account's rows but then sorts them for the ordered lookups, so the
+ * ordered timings are an upper bound: PostgreSQL 16 reads the same indexes in order.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@State(Scope.Benchmark)
+public class LookupIndexBenchmark {
+
+    private static final int ACCOUNTS = 10;
+    private static final int KPI_DAYS = 3_650;
+    private static final int STORIES_PER_ACCOUNT = 1_000;
+    private static final LocalDateTime NEWEST = LocalDateTime.of(2024, 6, 30, 7, 0);
+    private static final LocalDate LAST_DAY = LocalDate.of(2024, 6, 30);
+    private static final Pattern CREATE_INDEX = Pattern.compile("CREATE (?:UNIQUE )?INDEX (\\w+)");
+
+    @Param({"none", "v2"})
+    public String indexes;
+
+    @Param({"100000"})
+    public int posts;
+
+    private Connection connection;
+    private PreparedStatement postsPage;
+    private PreparedStatement kpiByDate;
+    private PreparedStatement kpiWindow;
+    private PreparedStatement latestStory;
+    private PreparedStatement topByEngagementRate;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException, IOException {
+        String url = "jdbc:h2:mem:lookup-" + indexes + "-" + posts
+            + ";MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1";
+        Flyway.configure().dataSource(url, "sa", "").load().migrate();
+        connection = DriverManager.getConnection(url, "sa", "");
+        insertRows();
+        if (indexes.equals("none")) {
+            String script = new ClassPathResource("db/migration/V2__Lookup_indexes.sql").getContentAsString(StandardCharsets.UTF_8);
+            Matcher matcher = CREATE_INDEX.matcher(script);
+            try (Statement statement = connection.createStatement()) {
+                while (matcher.find()) {
+                    statement.execute("DROP INDEX IF EXISTS " + matcher.group(1));
+                }
+            }
+        }
+
+        // The SQL the repositories issue for /posts, /account-kpis, /latest-story and /posts/top
+        postsPage = connection.prepareStatement("SELECT id, post_id, posted_at, likes FROM instagram_posts"
+            + " WHERE account_id = ? ORDER BY posted_at DESC, id DESC LIMIT 100");
+        kpiByDate = connection.prepareStatement("SELECT * FROM instagram_account_kpi WHERE account_id = ? AND date = ?");
+        kpiWindow = connection.prepareStatement("SELECT * FROM instagram_account_kpi"
+            + " WHERE account_id = ? AND date BETWEEN ? AND ? ORDER BY date");
+        latestStory = connection.prepareStatement("SELECT * FROM instagram_story"
+            + " WHERE account_id = ? ORDER BY posted_at DESC LIMIT 1");
+        topByEngagementRate = connection.prepareStatement("SELECT * FROM instagram_posts"
+            + " WHERE account_id = ? AND engagement_rate IS NOT NULL ORDER BY engagement_rate DESC, id DESC LIMIT 20");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SHUTDOWN");
+        }
+    }
+
+    @Benchmark
+    public void postsPage(Blackhole blackhole) throws SQLException {
+        postsPage.setString(1, account(next++));
+        consume(postsPage, blackhole);
+    }
+
+    @Benchmark
+    public void kpiByAccountAndDate(Blackhole blackhole) throws SQLException {
+        int i = next++;
+        kpiByDate.setString(1, account(i));
+        kpiByDate.setDate(2, Date.valueOf(LAST_DAY.minusDays(i % KPI_DAYS)));
+        consume(kpiByDate, blackhole);
+    }
+
+    @Benchmark
+    public void kpi30DayWindow(Blackhole blackhole) throws SQLException {
+        kpiWindow.setString(1, account(next++));
+        kpiWindow.setDate(2, Date.valueOf(LAST_DAY.minusDays(29)));
+        kpiWindow.setDate(3, Date.valueOf(LAST_DAY));
+        consume(kpiWindow, blackhole);
+    }
+
+    @Benchmark
+    public void latestStory(Blackhole blackhole) throws SQLException {
+        latestStory.setString(1, account(next++));
+        consume(latestStory, blackhole);
+    }
+
+    @Benchmark
+    public void topByEngagementRate(Blackhole blackhole) throws SQLException {
+        topByEngagementRate.setString(1, account(next++));
+        consume(topByEngagementRate, blackhole);
+    }
+
+    private static void consume(PreparedStatement statement, Blackhole blackhole) throws SQLException {
+        try (ResultSet rows = statement.executeQuery()) {
+            while (rows.next()) {
+                blackhole.consume(rows.getObject(1));
+            }
+        }
+    }
+
+    private static String account(int i) {
+        return String.valueOf(17840000000000001L + Math.floorMod(i, ACCOUNTS));
+    }
+
+    // Rows as ingestion stores them, in batches of 10,000
+    private void insertRows() throws SQLException {
+        connection.setAutoCommit(false);
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO instagram_posts (id, account_id, post_id,"
+            + " posted_at, likes, reach, engagement_rate) VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < posts; i++) {
+                int reach = 1_000 + i % 100_000;
+                int likes = (i * 7) % 5_000;
+                insert.setLong(1, i + 1);
+                insert.setString(2, account(i));
+                insert.setString(3, "media-" + i);
+                insert.setTimestamp(4, Timestamp.valueOf(NEWEST.minusMinutes(i)));
+                insert.setInt(5, likes);
+                insert.setInt(6, reach);
+                insert.setDouble(7, (double) likes / reach);
+                addBatch(insert, i);
+            }
+            flush(insert);
+        }
+        try (PreparedStatement insert = connection.prepareStatement(
+            "INSERT INTO instagram_account_kpi (id, account_id, date, followers) VALUES (?, ?, ?, ?)")) {
+            for (int i = 0; i < ACCOUNTS * KPI_DAYS; i++) {
+                insert.setLong(1, i + 1);
+                insert.setString(2, account(i));
+                insert.setDate(3, Date.valueOf(LAST_DAY.minusDays(i / ACCOUNTS)));
+                insert.setInt(4, 90_000 + i % 1_000);
+                addBatch(insert, i);
+            }
+            flush(insert);
+        }
+        try (PreparedStatement insert = connection.prepareStatement(
+            "INSERT INTO instagram_story (id, account_id, story_id, posted_at) VALUES (?, ?, ?, ?)")) {
+            for (int i = 0; i < ACCOUNTS * STORIES_PER_ACCOUNT; i++) {
+                insert.setLong(1, i + 1);
+                insert.setString(2, account(i));
+                insert.setString(3, "story-" + i);
+                insert.setTimestamp(4, Timestamp.valueOf(NEWEST.minusHours(i)));
+                addBatch(insert, i);
+            }
+            flush(insert);
+        }
+        connection.setAutoCommit(true);
+    }
+
+    private void addBatch(PreparedStatement insert, int i) throws SQLException {
+        insert.addBatch();
+        if (i % 10_000 == 9_999) {
+            flush(insert);
+        }
+    }
+
+    private void flush(PreparedStatement insert) throws SQLException {
+        insert.executeBatch();
+        connection.commit();
+    }
+}
@@ -0,0 +1,92 @@
+package com.instagram.kpi.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.instagram.kpi.service.GraphApiJsonDecoder;
+import com.instagram.kpi.service.GraphApiJsonDecoder.MediaPage;
+import com.instagram.kpi.service.MediaPageMapper;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Posts decoded per second from one large /media page through MediaPageMapper.map, by the
+ * number of fork/join threads it gets (instagram.refresh.decode-parallelism). The page is the
+ * fixture's entries repeated up to postCount with distinct ids. parallelism=1 is the
+ * single-threaded baseline; the "posts" counter is the rate to compare.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MediaPageMapperBenchmark {
+
+    @Param({"100", "1000"})
+    public int postCount;
+
+    @Param({"1", "2", "4", "8"})
+    public int parallelism;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class DecodedPosts {
+        public long posts;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            posts = 0;
+        }
+    }
+
+    private ForkJoinPool pool;
+    private MediaPageMapper mapper;
+    private byte[] page;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = Fixtures.objectMapper();
+        pool = new ForkJoinPool(parallelism);
+        mapper = new MediaPageMapper(new GraphApiJsonDecoder(objectMapper), pool);
+
+        ObjectNode fixture = (ObjectNode) objectMapper.readTree(Fixtures.load(Fixtures.MEDIA_PAGE));
+        ArrayNode entries = (ArrayNode) fixture.get("data");
+        ArrayNode data = objectMapper.createArrayNode();
+        for (int i = 0; i < postCount; i++) {
+            ObjectNode entry = entries.get(i % entries.size()).deepCopy();
+            entry.put("id", entry.get("id").asText() + i);
+            data.add(entry);
+        }
+        fixture.set("data", data);
+        page = objectMapper.writeValueAsBytes(fixture);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public MediaPage forkJoin(DecodedPosts counter) {
+        MediaPage decoded = mapper.map(page).block();
+        counter.posts += decoded.posts().size();
+        return decoded;
+    }
+}
@@ -0,0 +1,121 @@
+package com.instagram.kpi.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.instagram.kpi.model.AccountKpiSeries;
+import com.instagram.kpi.model.InstagramAccountKpi;
+import com.instagram.kpi.model.InstagramPost;
+import com.instagram.kpi.model.KpiUpdateMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization of what the REST endpoints and the STOMP topic send: the posts
+ * list, the daily KPI rows as objects and as the columnar AccountKpiSeries, and the update
+ * envelope. Posts are the decoded fixture page repeated up to postCount with distinct ids.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+
+    @Param({"100", "1000"})
+    public int postCount;
+
+    // A month, a year, and the few years of history findAll() used to send
+    @Param({"30", "365", "1825"})
+    public int kpiDays;
+
+    private ObjectMapper objectMapper;
+    private List<InstagramPost> posts;
+    private List<InstagramAccountKpi> kpis;
+    private AccountKpiSeries kpiSeries;
+    private KpiUpdateMessage snapshot;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = Fixtures.objectMapper();
+        List<InstagramPost> page = Fixtures.posts(objectMapper, Fixtures.load(Fixtures.MEDIA_PAGE));
+        posts = new ArrayList<>(postCount);
+        for (int i = 0; i < postCount; i++) {
+            InstagramPost source = page.get(i % page.size());
+            InstagramPost post = new InstagramPost();
+            post.setId((long) i + 1);
+            post.setPostId(source.getPostId() + "-" + i);
+            post.setCaption(source.getCaption());
+            post.setPostedAt(source.getPostedAt());
+            post.setLikes(source.getLikes());
+            post.setComments(source.getComments());
+            post.setReach(source.getReach());
+            post.setImpressions(source.getImpressions());
+            post.setSaves(source.getSaves());
+            post.setCreatedAt(LocalDateTime.of(2024, 7, 1, 0, 0));
+            post.setUpdatedAt(LocalDateTime.of(2024, 7, 1, 0, 0));
+            posts.add(post);
+        }
+
+        Random random = new Random(7);
+        LocalDate to = LocalDate.of(2024, 6, 30);
+        LocalDate from = to.minusDays(kpiDays - 1);
+        kpis = new ArrayList<>(kpiDays);
+        int followers = 90_000;
+        for (int i = 0; i < kpiDays; i++) {
+            InstagramAccountKpi kpi = new InstagramAccountKpi();
+            kpi.setId((long) i + 1);
+            kpi.setAccountId("17841400000000000");
+            kpi.setDate(from.plusDays(i));
+            int newFollowers = random.nextInt(200) - 20;
+            followers += newFollowers;
+            kpi.setFollowers(followers);
+            kpi.setNewFollowers(newFollowers);
+            kpi.setProfileViews(random.nextInt(3_000));
+            kpi.setReach(8_000 + random.nextInt(32_000));
+            kpis.add(kpi);
+        }
+        kpiSeries = AccountKpiSeries.of(from, to, kpis);
+        snapshot = new KpiUpdateMessage(KpiUpdateMessage.Type.SNAPSHOT, 42, posts, kpis);
+
+        // Payload sizes don't change between iterations, so they're reported once per trial
+        System.out.printf("%nPayload bytes: posts=%d, kpi rows=%d, kpi series=%d, snapshot=%d%n",
+            postsList().length, accountKpiRows().length, accountKpiSeries().length, snapshotMessage().length);
+    }
+
+    @Benchmark
+    public byte[] postsList() throws IOException {
+        return objectMapper.writeValueAsBytes(posts);
+    }
+
+    @Benchmark
+    public byte[] accountKpiRows() throws IOException {
+        return objectMapper.writeValueAsBytes(kpis);
+    }
+
+    @Benchmark
+    public byte[] accountKpiSeries() throws IOException {
+        return objectMapper.writeValueAsBytes(kpiSeries);
+    }
+
+    @Benchmark
+    public byte[] snapshotMessage() throws IOException {
+        return objectMapper.writeValueAsBytes(snapshot);
+    }
+}
@@ -0,0 +1,111 @@
+package com.instagram.kpi.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.instagram.kpi.model.InstagramPost;
+import com.instagram.kpi.model.KpiUpdateMessage;
+import com.instagram.kpi.service.KpiPayloadEncoder;
+import com.instagram.kpi.service.KpiPayloadEncoder.Encoding;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One refresh fanned out to every subscriber of a topic: the update is serialized and each
+ * session gets its own STOMP MESSAGE frame, as the simple broker does. Compares serializing
+ * per session, serializing once (what KpiUpdatePublisher does for every encoding) and the
+ * CBOR and deflate payloads; the returned byte count is what goes over the wire.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StompFanOutBenchmark {
+
+    @Param({"1000", "5000"})
+    public int subscribers;
+
+    private ObjectMapper objectMapper;
+    private KpiPayloadEncoder payloadEncoder;
+    private StompEncoder stompEncoder;
+    private KpiUpdateMessage update;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Fixtures.objectMapper();
+        payloadEncoder = new KpiPayloadEncoder(objectMapper);
+        stompEncoder = new StompEncoder();
+        List<InstagramPost> posts = Fixtures.posts(objectMapper, Fixtures.load(Fixtures.MEDIA_PAGE));
+        // A refresh in which every post on the first page changed
+        update = new KpiUpdateMessage(KpiUpdateMessage.Type.POSTS, 42, posts, List.of());
+
+        Map<Encoding, byte[]> encoded = payloadEncoder.encode(update, EnumSet.allOf(Encoding.class));
+        System.out.printf("%nPayload bytes per subscriber: json=%d, cbor=%d, deflate=%d%n",
+            encoded.get(Encoding.JSON).length, encoded.get(Encoding.CBOR).length, encoded.get(Encoding.DEFLATE).length);
+    }
+
+    @Benchmark
+    public long jsonPerSession() throws IOException {
+        long bytes = 0;
+        for (int i = 0; i < subscribers; i++) {
+            bytes += frame(i, Encoding.JSON, objectMapper.writeValueAsBytes(update)).length;
+        }
+        return bytes;
+    }
+
+    @Benchmark
+    public long jsonOnce() {
+        return fanOut(Encoding.JSON);
+    }
+
+    @Benchmark
+    public long cborOnce() {
+        return fanOut(Encoding.CBOR);
+    }
+
+    @Benchmark
+    public long deflateOnce() {
+        return fanOut(Encoding.DEFLATE);
+    }
+
+    private long fanOut(Encoding encoding) {
+        byte[] payload = payloadEncoder.encode(update, EnumSet.of(encoding)).get(encoding);
+        long bytes = 0;
+        for (int i = 0; i < subscribers; i++) {
+            bytes += frame(i, encoding, payload).length;
+        }
+        return bytes;
+    }
+
+    // The headers the broker and KpiUpdatePublisher put on every frame
+    private byte[] frame(int session, Encoding encoding, byte[] payload) {
+        StompHeaderAccessor headers = StompHeaderAccessor.create(StompCommand.MESSAGE);
+        headers.setSubscriptionId("sub-0");
+        headers.setDestination(encoding.destination("/topic/kpi-updates"));
+        headers.setMessageId("session-" + session + "-" + 42);
+        headers.setContentType(encoding.contentType());
+        headers.setNativeHeader(Encoding.HEADER, encoding.headerValue());
+        Message<byte[]> message = MessageBuilder.createMessage(payload, headers.getMessageHeaders());
+        return stompEncoder.encode(message);
+    }
+}
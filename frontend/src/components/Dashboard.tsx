@@ -33,6 +33,9 @@ interface InstagramPost {
   saves: number;
   reach: number;
   impressions: number;
+  engagementRate: number | null;
+  saveRate: number | null;
+  virality: number | null;
   createdAt: string;
   updatedAt: string;
 }
@@ -46,6 +49,38 @@ interface InstagramStory {
   profileVisits: number;
 }
 
+// Columnar response of /api/instagram/account-kpis: entry i of every metric belongs to dates[i]
+interface AccountKpiSeries {
+  from: string;
+  to: string;
+  dates: string[];
+  followers: number[];
+  newFollowers: number[];
+  profileViews: number[];
+  reach: number[];
+  pinnedReelComments: number[];
+  pinnedReelShares: number[];
+  pinnedReelLikes: number[];
+  pinnedReelSaves: number[];
+  pinnedReelWatchTime: number[];
+}
+
+interface KpiUpdateMessage {
+  type: 'POSTS' | 'ACCOUNT_KPIS' | 'STORY' | 'SNAPSHOT';
+  sequence: number;
+  posts?: InstagramPost[];
+  postsCursor?: string;
+  accountKpis?: AccountKpi[];
+  story?: InstagramStory;
+}
+
+// Replaces rows that share a key with an incoming row and appends the rest
+const mergeByKey = <T,>(current: T[], changes: T[], key: (item: T) => string): T[] => {
+  const merged = new Map(current.map(item => [key(item), item]));
+  changes.forEach(item => merged.set(key(item), item));
+  return Array.from(merged.values());
+};
+
 const kpiOptions = [
   { value: 'likes', label: 'Likes' },
   { value: 'comments', label: 'Comments' },
@@ -64,6 +99,41 @@ const timeRanges = [
   { value: 'two_years', label: 'Past 2 Years', days: 730 },
 ];
 
+// Rebuilds the per-day rows the charts work with; the backend only sends the last 30 days by default
+const fromSeries = (series: AccountKpiSeries): AccountKpi[] =>
+  series.dates.map((date, i) => ({
+    id: i,
+    date,
+    followers: series.followers[i],
+    newFollowers: series.newFollowers[i],
+    profileViews: series.profileViews[i],
+    reach: series.reach[i],
+    pinnedReelComments: series.pinnedReelComments[i],
+    pinnedReelShares: series.pinnedReelShares[i],
+    pinnedReelLikes: series.pinnedReelLikes[i],
+    pinnedReelSaves: series.pinnedReelSaves[i],
+    pinnedReelWatchTime: series.pinnedReelWatchTime[i],
+  }));
+
+// Follows the X-Next-Cursor header, from the first page or the given cursor, until the backend reports no further page
+const fetchAllPosts = async (after: string | null = null): Promise<InstagramPost[]> => {
+  const allPosts: InstagramPost[] = [];
+  let cursor: string | null = after;
+  do {
+    const query: string = cursor ? `?after=${encodeURIComponent(cursor)}` : '';
+    const res: Response = await fetch(`${apiUrl}/api/instagram/posts${query}`);
+    allPosts.push(...(await res.json()));
+    cursor = res.headers.get('X-Next-Cursor');
+  } while (cursor);
+  return allPosts;
+};
+
+// Rankings are computed by the backend from indexed columns, so only the top rows are transferred
+const fetchTopPosts = async (metric: string, limit: number): Promise<InstagramPost[]> => {
+  const res = await fetch(`${apiUrl}/api/instagram/posts/top?metric=${metric}&limit=${limit}`);
+  return res.json();
+};
+
 const Dashboard: React.FC = () => {
   const [accountKpis, setAccountKpis] = useState<AccountKpi[]>([]);
   const [posts, setPosts] = useState<InstagramPost[]>([]);
@@ -72,22 +142,24 @@ const Dashboard: React.FC = () => {
   const [, setLoading] = useState(true);
   const [isRefreshing, setIsRefreshing] = useState(false);
   const [latestStory, setLatestStory] = useState<InstagramStory | null>(null);
+  const [topPost, setTopPost] = useState<InstagramPost | null>(null);
 
   useEffect(() => {
     const fetchData = async () => {
       setLoading(true);
       try {
-        const [kpiRes, postsRes, storyRes] = await Promise.all([
+        const [kpiRes, postsData, storyRes, topPosts] = await Promise.all([
           fetch(`${apiUrl}/api/instagram/account-kpis`),
-          fetch(`${apiUrl}/api/instagram/posts`),
+          fetchAllPosts(),
           fetch(`${apiUrl}/api/instagram/latest-story`),
+          fetchTopPosts('likes', 1),
         ]);
-        const kpiData = await kpiRes.json();
-        const postsData = await postsRes.json();
+        const kpiData: AccountKpiSeries = await kpiRes.json();
         const storyData = await storyRes.json();
-        setAccountKpis(kpiData);
+        setAccountKpis(fromSeries(kpiData));
         setPosts(postsData);
         setLatestStory(storyData);
+        setTopPost(topPosts[0] ?? null);
       } catch (error) {
         console.error("Failed to fetch initial data", error);
       } finally {
@@ -100,18 +172,58 @@ const Dashboard: React.FC = () => {
       webSocketFactory: () => new SockJS(wsUrl),
       onConnect: () => {
         console.log('WebSocket Connected');
-        client.subscribe('/topic/kpi-updates', message => {
-          const updatedData = JSON.parse(message.body);
-          // Check if it's post data or account kpi data
-          if (Array.isArray(updatedData) && updatedData.length > 0) {
-            if ('postId' in updatedData[0]) {
-              console.log('Received post updates via WebSocket');
-              setPosts(updatedData);
-            } else if ('followers' in updatedData[0]) {
-              console.log('Received account KPI updates via WebSocket');
-              setAccountKpis(updatedData);
+        // The backend only pushes rows that changed, numbered so missed messages can be detected
+        let lastSequence: number | null = null;
+
+        const applyUpdate = (update: KpiUpdateMessage) => {
+          if (update.posts) {
+            setPosts(prev => mergeByKey(prev, update.posts!, post => post.postId));
+            fetchTopPosts('likes', 1)
+              .then(topPosts => setTopPost(topPosts[0] ?? null))
+              .catch(error => console.error('Failed to fetch top post', error));
+          }
+          if (update.accountKpis) {
+            setAccountKpis(prev => mergeByKey(prev, update.accountKpis!, kpi => kpi.date)
+              .sort((a, b) => a.date.localeCompare(b.date)));
+          }
+          if (update.story) {
+            setLatestStory(update.story);
+          }
+        };
+
+        const requestSnapshot = () => {
+          const subscription = client.subscribe('/app/kpi-snapshot', message => {
+            const snapshot: KpiUpdateMessage = JSON.parse(message.body);
+            console.log('Resynchronised from snapshot at sequence', snapshot.sequence);
+            lastSequence = snapshot.sequence;
+            setPosts(snapshot.posts ?? []);
+            // Snapshots carry only the newest posts; the older ones are paged in over REST
+            if (snapshot.postsCursor) {
+              fetchAllPosts(snapshot.postsCursor)
+                .then(olderPosts => setPosts(prev => mergeByKey(prev, olderPosts, post => post.postId)))
+                .catch(error => console.error('Failed to fetch older posts', error));
+            }
+            setAccountKpis([...(snapshot.accountKpis ?? [])].sort((a, b) => a.date.localeCompare(b.date)));
+            if (snapshot.story) {
+              setLatestStory(snapshot.story);
             }
+            subscription.unsubscribe();
+          });
+        };
+
+        client.subscribe('/topic/kpi-updates', message => {
+          const update: KpiUpdateMessage = JSON.parse(message.body);
+          if (lastSequence !== null && update.sequence <= lastSequence) {
+            return;
+          }
+          if (lastSequence !== null && update.sequence !== lastSequence + 1) {
+            console.log(`Missed updates ${lastSequence + 1}..${update.sequence - 1}, requesting snapshot`);
+            requestSnapshot();
+            return;
           }
+          lastSequence = update.sequence;
+          console.log(`Received ${update.type} update #${update.sequence} via WebSocket`);
+          applyUpdate(update);
         });
       },
       onStompError: (frame) => {
@@ -146,8 +258,6 @@ const Dashboard: React.FC = () => {
 
   // Get the latest post (by postedAt)
   const latestPost = posts.length > 0 ? posts.reduce((a, b) => new Date(a.postedAt) > new Date(b.postedAt) ? a : b) : null;
-  // Get the top post (by likes)
-  const topPost = posts.length > 0 ? posts.reduce((a, b) => (a.likes || 0) > (b.likes || 0) ? a : b) : null;
 
   const now = new Date();
   const selectedRange = timeRanges.find(r => r.value === selectedTimeRange);
@@ -0,0 +1,27 @@
+package com.instagram.kpi.loadtest;
+
+import com.instagram.kpi.service.AccountRefreshCoordinator;
+
+/**
+ * Runs one refresh round over every registered account in the backend started by the harness
+ * and reports how long it took. Compare runs with --workers=1, which refreshes the accounts
+ * one after the other, against the default worker count.
+ */
+final class AccountRoundRun {
+
+    private final AccountRefreshCoordinator coordinator;
+    private final int workers;
+
+    AccountRoundRun(AccountRefreshCoordinator coordinator, int workers) {
+        this.coordinator = coordinator;
+        this.workers = workers;
+    }
+
+    void run() {
+        long start = System.nanoTime();
+        Integer refreshed = coordinator.refreshDueAccounts().block();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%nAccount round: %d accounts refreshed by %d workers in %.1f s (%.1f accounts/s)%n",
+            refreshed, workers, seconds, refreshed / seconds);
+    }
+}
@@ -0,0 +1,56 @@
+package com.instagram.kpi.loadtest;
+
+import com.instagram.kpi.service.InstagramService;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a full media backfill of the primary account in the backend started by the harness
+ * and reports items, duration and heap. Heap is read in this JVM, which also holds the stub
+ * and, with an in-memory database, the stored rows, so the numbers are an upper bound for
+ * the backend alone. The live heap is the occupancy right after each collection.
+ */
+final class BackfillRun {
+
+    private final InstagramService instagramService;
+
+    BackfillRun(InstagramService instagramService) {
+        this.instagramService = instagramService;
+    }
+
+    void run() {
+        List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+            .filter(pool -> pool.getType() == MemoryType.HEAP)
+            .toList();
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+        AtomicLong peakLive = new AtomicLong();
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(() -> peakLive.accumulateAndGet(heapPools.stream()
+            .map(MemoryPoolMXBean::getCollectionUsage)
+            .filter(usage -> usage != null)
+            .mapToLong(MemoryUsage::getUsed)
+            .sum(), Math::max), 0, 100, TimeUnit.MILLISECONDS);
+
+        long start = System.nanoTime();
+        Long items;
+        try {
+            items = instagramService.backfillMediaHistory().block();
+        } finally {
+            sampler.shutdownNow();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long peakUsed = heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+        System.out.printf("%nBackfill: %d items in %.1f s (%.0f items/s)%n", items, seconds, items / seconds);
+        System.out.printf("Heap: max %d MB, peak used %.1f MB, peak live after GC %.1f MB%n",
+            Runtime.getRuntime().maxMemory() >> 20, peakUsed / (double) (1 << 20), peakLive.get() / (double) (1 << 20));
+    }
+}
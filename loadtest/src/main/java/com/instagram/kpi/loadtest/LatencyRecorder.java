@@ -0,0 +1,57 @@
+package com.instagram.kpi.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Latencies of one operation, in nanoseconds, and the bytes of its responses. Each driver
+ * thread owns its recorder, and the recorders of the same operation are merged once the run
+ * is over, so recording needs no synchronization.
+ */
+final class LatencyRecorder {
+    private long[] samples = new long[1024];
+    private int count;
+    private long errors;
+    private long bytes;
+
+    void record(long nanos, long responseBytes) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = nanos;
+        bytes += responseBytes;
+    }
+
+    void recordError() {
+        errors++;
+    }
+
+    void mergeFrom(LatencyRecorder other) {
+        for (int i = 0; i < other.count; i++) {
+            record(other.samples[i], 0);
+        }
+        errors += other.errors;
+        bytes += other.bytes;
+    }
+
+    int count() {
+        return count;
+    }
+
+    long errors() {
+        return errors;
+    }
+
+    double averageBytes() {
+        return count == 0 ? 0 : (double) bytes / count;
+    }
+
+    // Nearest-rank percentile in milliseconds; sorts in place, so call once recording is done
+    double percentileMillis(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        Arrays.sort(samples, 0, count);
+        int rank = (int) Math.ceil(percentile / 100.0 * count);
+        return samples[Math.max(rank - 1, 0)] / 1_000_000.0;
+    }
+}
@@ -0,0 +1,249 @@
+package com.instagram.kpi.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs REST readers, STOMP and SSE subscribers and periodic refreshes against a running
+ * backend for a warmup and a measured phase, then reports throughput, p50/p99 latency and the
+ * average (uncompressed) response size per endpoint, the number of pushed updates, and the backend heap as sampled through the
+ * actuator. The heap is also sampled right before and after the SSE clients connect, which
+ * gives the cost of an open stream.
+ */
+final class LoadDriver {
+    private static final Logger log = LoggerFactory.getLogger(LoadDriver.class);
+
+    // What the dashboard reads on load and after every update
+    private static final List<String> READ_ENDPOINTS = List.of(
+        "/api/instagram/posts?limit=500",
+        "/api/instagram/posts/top?metric=engagementRate&limit=10",
+        "/api/instagram/account-kpis",
+        "/api/instagram/latest-story");
+
+    private static final String REFRESH = "POST /api/instagram/refresh";
+
+    record Settings(int readers, int subscribers, int sseSubscribers, Duration warmup, Duration duration,
+                    Duration refreshInterval) {
+    }
+
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String baseUrl;
+    private final Settings settings;
+
+    LoadDriver(HttpClient httpClient, String baseUrl, Settings settings) {
+        this.httpClient = httpClient;
+        this.baseUrl = baseUrl;
+        this.settings = settings;
+    }
+
+    void run() throws Exception {
+        List<StompSubscriber> subscribers = new ArrayList<>();
+        List<CompletableFuture<Void>> connections = new ArrayList<>();
+        for (int i = 0; i < settings.subscribers(); i++) {
+            StompSubscriber subscriber = new StompSubscriber("/topic/kpi-updates");
+            subscribers.add(subscriber);
+            connections.add(subscriber.connect(httpClient, baseUrl));
+        }
+        CompletableFuture.allOf(connections.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+        log.info("{} STOMP subscribers connected", subscribers.size());
+
+        List<SseSubscriber> streams = new ArrayList<>();
+        Double sseHeapBytes = null;
+        if (settings.sseSubscribers() > 0) {
+            Double before = settledHeapUsedBytes();
+            List<CompletableFuture<Void>> snapshots = new ArrayList<>();
+            for (int i = 0; i < settings.sseSubscribers(); i++) {
+                SseSubscriber stream = new SseSubscriber();
+                streams.add(stream);
+                snapshots.add(stream.connect(httpClient, baseUrl));
+            }
+            CompletableFuture.allOf(snapshots.toArray(new CompletableFuture[0])).get(60, TimeUnit.SECONDS);
+            Double after = settledHeapUsedBytes();
+            sseHeapBytes = before != null && after != null ? after - before : null;
+            log.info("{} SSE subscribers received their snapshot", streams.size());
+        }
+
+        long start = System.nanoTime();
+        long measureFrom = start + settings.warmup().toNanos();
+        long deadline = measureFrom + settings.duration().toNanos();
+
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        List<Double> heapSamples = new ArrayList<>();
+        sampler.scheduleAtFixedRate(() -> {
+            if (System.nanoTime() >= measureFrom) {
+                Double heap = heapUsedBytes();
+                if (heap != null) {
+                    synchronized (heapSamples) {
+                        heapSamples.add(heap);
+                    }
+                }
+            }
+        }, 0, 1, TimeUnit.SECONDS);
+
+        ExecutorService workers = Executors.newFixedThreadPool(settings.readers() + 1);
+        List<Future<Map<String, LatencyRecorder>>> results = new ArrayList<>();
+        results.add(workers.submit(() -> refresher(measureFrom, deadline)));
+        for (int i = 0; i < settings.readers(); i++) {
+            int offset = i;
+            results.add(workers.submit(() -> reader(offset, measureFrom, deadline)));
+        }
+
+        Map<String, LatencyRecorder> merged = new TreeMap<>();
+        for (Future<Map<String, LatencyRecorder>> result : results) {
+            result.get().forEach((operation, recorder) ->
+                merged.computeIfAbsent(operation, key -> new LatencyRecorder()).mergeFrom(recorder));
+        }
+        workers.shutdown();
+        sampler.shutdownNow();
+        // Messages are counted from connect onwards, so they are reported as a rate over the whole run
+        long messages = subscribers.stream().mapToLong(StompSubscriber::messageCount).sum();
+        long messageBytes = subscribers.stream().mapToLong(StompSubscriber::byteCount).sum();
+        subscribers.forEach(StompSubscriber::close);
+        long events = streams.stream().mapToLong(SseSubscriber::eventCount).sum();
+        long resyncs = streams.stream().mapToLong(stream -> Math.max(0, stream.snapshotCount() - 1)).sum();
+        streams.forEach(SseSubscriber::close);
+
+        report(merged, messages, messageBytes, heapSamples, (System.nanoTime() - start) / 1e9);
+        reportStreams(events, resyncs, sseHeapBytes);
+    }
+
+    private Map<String, LatencyRecorder> reader(int offset, long measureFrom, long deadline) {
+        Map<String, LatencyRecorder> recorders = new TreeMap<>();
+        for (int i = offset; System.nanoTime() < deadline; i++) {
+            String path = READ_ENDPOINTS.get(i % READ_ENDPOINTS.size());
+            call("GET " + path, HttpRequest.newBuilder(URI.create(baseUrl + path)).GET(), measureFrom, recorders);
+        }
+        return recorders;
+    }
+
+    private Map<String, LatencyRecorder> refresher(long measureFrom, long deadline) throws InterruptedException {
+        Map<String, LatencyRecorder> recorders = new TreeMap<>();
+        while (System.nanoTime() < deadline) {
+            call(REFRESH, HttpRequest.newBuilder(URI.create(baseUrl + "/api/instagram/refresh"))
+                .POST(HttpRequest.BodyPublishers.noBody()), measureFrom, recorders);
+            Thread.sleep(settings.refreshInterval().toMillis());
+        }
+        return recorders;
+    }
+
+    private void call(String operation, HttpRequest.Builder request, long measureFrom,
+                      Map<String, LatencyRecorder> recorders) {
+        long begin = System.nanoTime();
+        boolean ok;
+        int bytes = 0;
+        try {
+            HttpResponse<byte[]> response = httpClient.send(request.timeout(Duration.ofSeconds(60)).build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+            ok = response.statusCode() < 400 || response.statusCode() == 404;
+            bytes = response.body().length;
+        } catch (IOException e) {
+            ok = false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        long elapsed = System.nanoTime() - begin;
+        if (begin >= measureFrom) {
+            LatencyRecorder recorder = recorders.computeIfAbsent(operation, key -> new LatencyRecorder());
+            if (ok) {
+                recorder.record(elapsed, bytes);
+            } else {
+                recorder.recordError();
+            }
+        }
+    }
+
+    private Double heapUsedBytes() {
+        try {
+            HttpResponse<byte[]> response = httpClient.send(HttpRequest.newBuilder(
+                    URI.create(baseUrl + "/actuator/metrics/jvm.memory.used?tag=area:heap")).GET().build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+            if (response.statusCode() != 200) {
+                return null;
+            }
+            JsonNode value = objectMapper.readTree(response.body()).path("measurements").path(0).path("value");
+            return value.isNumber() ? value.asDouble() : null;
+        } catch (IOException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    // Lowest of a few samples, which leaves out most of the garbage not yet collected
+    private Double settledHeapUsedBytes() throws InterruptedException {
+        Double lowest = null;
+        for (int i = 0; i < 5; i++) {
+            Double heap = heapUsedBytes();
+            if (heap != null && (lowest == null || heap < lowest)) {
+                lowest = heap;
+            }
+            Thread.sleep(200);
+        }
+        return lowest;
+    }
+
+    private void report(Map<String, LatencyRecorder> operations, long messages, long messageBytes,
+                        List<Double> heapSamples, double totalSeconds) {
+        double seconds = settings.duration().toNanos() / 1e9;
+        StringBuilder out = new StringBuilder(String.format(
+            "%nLoad test: %d readers, %d subscribers, %ds measured after %ds warmup%n",
+            settings.readers(), settings.subscribers(), settings.duration().toSeconds(), settings.warmup().toSeconds()));
+        out.append(String.format("%-62s %9s %9s %9s %9s %9s %7s%n",
+            "operation", "count", "req/s", "p50 ms", "p99 ms", "avg KB", "errors"));
+        operations.forEach((operation, recorder) -> out.append(String.format("%-62s %9d %9.1f %9.2f %9.2f %9.1f %7d%n",
+            operation, recorder.count(), recorder.count() / seconds, recorder.percentileMillis(50),
+            recorder.percentileMillis(99), recorder.averageBytes() / 1024, recorder.errors())));
+        out.append(String.format("STOMP: %d messages (%.1f/s per subscriber), %.1f KB average%n",
+            messages, settings.subscribers() == 0 ? 0 : messages / totalSeconds / settings.subscribers(),
+            messages == 0 ? 0 : messageBytes / 1024.0 / messages));
+        synchronized (heapSamples) {
+            if (heapSamples.isEmpty()) {
+                out.append("Heap: not available (actuator metrics endpoint unreachable)\n");
+            } else {
+                double max = heapSamples.stream().mapToDouble(Double::doubleValue).max().orElse(0);
+                double avg = heapSamples.stream().mapToDouble(Double::doubleValue).average().orElse(0);
+                out.append(String.format("Heap used: %.1f MB average, %.1f MB max over %d samples%n",
+                    avg / (1 << 20), max / (1 << 20), heapSamples.size()));
+            }
+        }
+        System.out.print(out);
+    }
+
+    private void reportStreams(long events, long resyncs, Double heapBytes) {
+        int connections = settings.sseSubscribers();
+        if (connections == 0) {
+            return;
+        }
+        StringBuilder out = new StringBuilder(String.format("SSE: %d connections, %d events, %d resyncs after overflow%n",
+            connections, events, resyncs));
+        if (heapBytes == null || heapBytes <= 0) {
+            out.append("SSE heap: not measurable (actuator unreachable or heap shrank while connecting)\n");
+        } else {
+            out.append(String.format("SSE heap: %.1f KB per connection, %.0f connections per MB%n",
+                heapBytes / 1024 / connections, connections / (heapBytes / (1 << 20))));
+        }
+        System.out.print(out);
+    }
+}
@@ -0,0 +1,170 @@
+package com.instagram.kpi.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.instagram.kpi.KpiDashboardApplication;
+import com.instagram.kpi.service.AccountRefreshCoordinator;
+import com.instagram.kpi.service.InstagramService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Starts the stub Graph API, points a backend at it and drives it with {@link LoadDriver}.
+ * Without --target the backend runs in this JVM against the database configured through
+ * SPRING_DATASOURCE_URL/USERNAME/PASSWORD; with --target=http://host:port an already running
+ * backend is used, which must have been started with INSTAGRAM_GRAPH_API_BASE_URL pointing at
+ * --stub-port and INSTAGRAM_BUSINESS_ACCOUNT_ID=17841400000000001, and given its
+ * INSTAGRAM_ACCOUNTS_ADMIN_KEY as --admin-key.
+ *
+ * With --backfill=true the in-process backend first backfills the primary account's whole
+ * media history from the stub and {@link BackfillRun} reports time and heap; the load then
+ * runs against all of it, unless --duration-s=0.
+ *
+ * With --account-round=true the accounts are registered and {@link AccountRoundRun} times a
+ * single refresh round over all of them with --workers accounts in flight; the scheduled
+ * rounds are pushed out of the way so they don't overlap it.
+ *
+ * Options (all --name=value): accounts, media, latency-ms, error-rate, throttle-rate,
+ * readers, subscribers, sse-subscribers, warmup-s, duration-s, refresh-interval-ms, stub-port, target,
+ * admin-key, backfill, account-round, workers.
+ */
+public final class LoadTestHarness {
+    private static final Logger log = LoggerFactory.getLogger(LoadTestHarness.class);
+
+    // Synthetic business account ids; the first one is the backend's primary account
+    private static final long FIRST_ACCOUNT_ID = 17841400000000001L;
+
+    private static final String ADMIN_KEY = "load-test-admin-key";
+    // Any 32 bytes do for the in-process backend's token encryption
+    private static final String TOKEN_KEY = "bG9hZC10ZXN0LXRva2VuLWVuY3J5cHRpb24ta2V5ISE=";
+
+    private LoadTestHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        int accounts = Integer.parseInt(options.getOrDefault("accounts", "5"));
+        StubGraphApi.Settings stubSettings = new StubGraphApi.Settings(
+            Integer.parseInt(options.getOrDefault("media", "200")),
+            Long.parseLong(options.getOrDefault("latency-ms", "50")),
+            Double.parseDouble(options.getOrDefault("error-rate", "0")),
+            Double.parseDouble(options.getOrDefault("throttle-rate", "0")));
+        LoadDriver.Settings driverSettings = new LoadDriver.Settings(
+            Integer.parseInt(options.getOrDefault("readers", "16")),
+            Integer.parseInt(options.getOrDefault("subscribers", "100")),
+            Integer.parseInt(options.getOrDefault("sse-subscribers", "0")),
+            Duration.ofSeconds(Long.parseLong(options.getOrDefault("warmup-s", "10"))),
+            Duration.ofSeconds(Long.parseLong(options.getOrDefault("duration-s", "60"))),
+            Duration.ofMillis(Long.parseLong(options.getOrDefault("refresh-interval-ms", "5000"))));
+
+        boolean backfill = Boolean.parseBoolean(options.getOrDefault("backfill", "false"));
+        if (backfill && options.containsKey("target")) {
+            throw new IllegalArgumentException("--backfill runs against the in-process backend, without --target");
+        }
+        boolean accountRound = Boolean.parseBoolean(options.getOrDefault("account-round", "false"));
+        if (accountRound && options.containsKey("target")) {
+            throw new IllegalArgumentException("--account-round runs against the in-process backend, without --target");
+        }
+        int workers = Integer.parseInt(options.getOrDefault("workers", "8"));
+
+        try (StubGraphApi stub = new StubGraphApi(Integer.parseInt(options.getOrDefault("stub-port", "0")), stubSettings)) {
+            stub.start();
+            ConfigurableApplicationContext backend = null;
+            String target = options.get("target");
+            if (target == null) {
+                backend = startBackend(stub.baseUrl(), workers, accounts, accountRound);
+                target = "http://localhost:" + backend.getEnvironment().getProperty("local.server.port");
+            }
+            try {
+                if (backfill) {
+                    new BackfillRun(backend.getBean(InstagramService.class)).run();
+                }
+                HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+                if (accountRound) {
+                    registerAccounts(httpClient, target, options.getOrDefault("admin-key", ADMIN_KEY), accounts);
+                    new AccountRoundRun(backend.getBean(AccountRefreshCoordinator.class), workers).run();
+                    System.out.printf("Stub Graph API: %d requests, %d injected failures%n",
+                        stub.requestCount(), stub.failureCount());
+                    return;
+                }
+                if (driverSettings.duration().isZero()) {
+                    return;
+                }
+                registerAccounts(httpClient, target, options.getOrDefault("admin-key", ADMIN_KEY), accounts);
+                new LoadDriver(httpClient, target, driverSettings).run();
+                System.out.printf("Stub Graph API: %d requests, %d injected failures%n",
+                    stub.requestCount(), stub.failureCount());
+            } finally {
+                if (backend != null) {
+                    backend.close();
+                }
+            }
+        }
+    }
+
+    private static ConfigurableApplicationContext startBackend(String stubUrl, int workers, int accounts,
+                                                               boolean accountRound) {
+        // Passed as command line arguments so they win over the ${...} placeholders in application.yml
+        List<String> arguments = List.of(
+            "--server.port=0",
+            "--instagram.api.client.base-url=" + stubUrl,
+            "--instagram.api.business-account-id=" + FIRST_ACCOUNT_ID,
+            "--instagram.api.access-token=stub-token",
+            // Refreshes come from the driver only, so every run issues the same calls
+            "--instagram.polling.enabled=false",
+            "--instagram.api.client.requests-per-second=1000",
+            // A timed account round must be the only one running, so the scheduled ones wait an hour
+            "--instagram.accounts.refresh-interval-ms=" + (accountRound ? 3_600_000 : 5_000),
+            "--instagram.accounts.workers=" + workers,
+            "--instagram.accounts.max-per-round=" + Math.max(accounts, 100),
+            "--instagram.accounts.admin-key=" + ADMIN_KEY,
+            "--instagram.accounts.token-key=" + TOKEN_KEY,
+            "--facebook.app-id=stub",
+            "--facebook.app-secret=stub",
+            "--facebook.short-lived-token=stub",
+            "--logging.level.com.instagram.kpi=INFO");
+        log.info("Starting backend against {}", stubUrl);
+        return SpringApplication.run(KpiDashboardApplication.class, arguments.toArray(new String[0]));
+    }
+
+    // The primary account comes from configuration; the others are registered like a user would
+    private static void registerAccounts(HttpClient httpClient, String target, String adminKey, int accounts) throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        for (int i = 1; i < accounts; i++) {
+            String accountId = String.valueOf(FIRST_ACCOUNT_ID + i);
+            byte[] body = objectMapper.writeValueAsBytes(Map.of(
+                "accountId", accountId, "name", "Load test account " + i, "accessToken", "stub-token-" + i));
+            HttpResponse<Void> response = httpClient.send(HttpRequest.newBuilder(URI.create(target + "/api/instagram/accounts"))
+                    .header("Content-Type", "application/json")
+                    .header("X-Admin-Key", adminKey)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                    .build(),
+                HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() >= 400) {
+                log.warn("Registering account {} returned {}", accountId, response.statusCode());
+            }
+        }
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            int eq = arg.indexOf('=');
+            options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+}
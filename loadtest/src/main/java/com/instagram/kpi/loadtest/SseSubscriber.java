@@ -0,0 +1,93 @@
+package com.instagram.kpi.loadtest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads /api/instagram/kpi-stream line by line without a thread of its own and counts the
+ * events, so a few thousand can stay open from one driver process.
+ */
+final class SseSubscriber implements Flow.Subscriber<String> {
+    private static final Logger log = LoggerFactory.getLogger(SseSubscriber.class);
+
+    private final CompletableFuture<Void> snapshotReceived = new CompletableFuture<>();
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong snapshots = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private volatile Flow.Subscription subscription;
+    private String event;
+
+    // Completes once the first snapshot event has arrived
+    CompletableFuture<Void> connect(HttpClient httpClient, String baseUrl) {
+        httpClient.sendAsync(HttpRequest.newBuilder(URI.create(baseUrl + "/api/instagram/kpi-stream"))
+                    .header("Accept", "text/event-stream")
+                    .GET()
+                    .build(),
+                HttpResponse.BodyHandlers.fromLineSubscriber(this))
+            .exceptionally(e -> {
+                snapshotReceived.completeExceptionally(e);
+                return null;
+            });
+        return snapshotReceived;
+    }
+
+    long eventCount() {
+        return events.get();
+    }
+
+    // Snapshots after the first one mean the client was resynced after falling behind
+    long snapshotCount() {
+        return snapshots.get();
+    }
+
+    long byteCount() {
+        return bytes.get();
+    }
+
+    void close() {
+        if (subscription != null) {
+            subscription.cancel();
+        }
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(String line) {
+        if (line.startsWith("event:")) {
+            event = line.substring(6).trim();
+        } else if (line.startsWith("data:")) {
+            bytes.addAndGet(line.length());
+        } else if (line.isEmpty() && event != null) {
+            events.incrementAndGet();
+            if (event.equals("snapshot")) {
+                snapshots.incrementAndGet();
+                snapshotReceived.complete(null);
+            }
+            event = null;
+        }
+    }
+
+    @Override
+    public void onError(Throwable error) {
+        log.warn("SSE subscriber failed: {}", error.getMessage());
+        snapshotReceived.completeExceptionally(error);
+    }
+
+    @Override
+    public void onComplete() {
+        snapshotReceived.completeExceptionally(new IllegalStateException("Stream ended before a snapshot"));
+    }
+}
@@ -0,0 +1,93 @@
+package com.instagram.kpi.loadtest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal STOMP 1.2 client over the raw WebSocket transport of the SockJS endpoint
+ * (/ws/kpi/websocket). It subscribes to the KPI topic like the dashboard does and only
+ * counts what arrives, so a few hundred of them fit in one driver process.
+ */
+final class StompSubscriber implements WebSocket.Listener {
+    private static final Logger log = LoggerFactory.getLogger(StompSubscriber.class);
+
+    private final String topic;
+    private final StringBuilder frame = new StringBuilder();
+    private final AtomicLong messages = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final CompletableFuture<Void> connected = new CompletableFuture<>();
+    private WebSocket webSocket;
+
+    StompSubscriber(String topic) {
+        this.topic = topic;
+    }
+
+    // Completes once the broker has acknowledged CONNECT and the subscription was sent
+    CompletableFuture<Void> connect(HttpClient httpClient, String baseUrl) {
+        URI uri = URI.create(baseUrl.replaceFirst("^http", "ws") + "/ws/kpi/websocket");
+        httpClient.newWebSocketBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .buildAsync(uri, this)
+            .thenAccept(ws -> {
+                webSocket = ws;
+                ws.sendText("CONNECT\naccept-version:1.2\nhost:localhost\nheart-beat:0,0\n\n\0", true);
+            })
+            .exceptionally(e -> {
+                connected.completeExceptionally(e);
+                return null;
+            });
+        return connected;
+    }
+
+    long messageCount() {
+        return messages.get();
+    }
+
+    long byteCount() {
+        return bytes.get();
+    }
+
+    void close() {
+        if (webSocket != null) {
+            webSocket.sendText("DISCONNECT\n\n\0", true);
+            webSocket.sendClose(WebSocket.NORMAL_CLOSURE, "done");
+        }
+    }
+
+    @Override
+    public CompletionStage<?> onText(WebSocket ws, CharSequence data, boolean last) {
+        frame.append(data);
+        if (last) {
+            onFrame(frame.toString());
+            frame.setLength(0);
+        }
+        ws.request(1);
+        return null;
+    }
+
+    @Override
+    public void onError(WebSocket ws, Throwable error) {
+        log.warn("STOMP subscriber failed: {}", error.getMessage());
+        connected.completeExceptionally(error);
+    }
+
+    private void onFrame(String text) {
+        if (text.startsWith("CONNECTED")) {
+            webSocket.sendText("SUBSCRIBE\nid:0\ndestination:" + topic + "\n\n\0", true);
+            connected.complete(null);
+        } else if (text.startsWith("MESSAGE")) {
+            messages.incrementAndGet();
+            bytes.addAndGet(text.length());
+        } else if (text.startsWith("ERROR")) {
+            log.warn("Broker reported an error: {}", text.trim());
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.instagram.kpi.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.instagram.kpi.service.GraphApiTimestamps;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for graph.facebook.com serving the endpoints InstagramService calls: /media
+ * pages (posts and stories) with inline insights, account and per-post /insights, the
+ * followers_count field, and the batch endpoint. Content is derived from the object id, so
+ * every run sees the same accounts and posts; engagement grows with every media request so
+ * refreshes keep producing deltas. Latency, error and throttling rates are configurable.
+ */
+public class StubGraphApi implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(StubGraphApi.class);
+
+    // Fixed epoch for post timestamps so runs are comparable
+    private static final ZonedDateTime NEWEST_POST = ZonedDateTime.of(2024, 6, 30, 18, 0, 0, 0, ZoneOffset.UTC);
+
+    private static final int DEFAULT_PAGE_SIZE = 25;
+
+    public record Settings(int mediaPerAccount, long latencyMs, double errorRate, double throttleRate) {
+    }
+
+    private final Settings settings;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final HttpServer server;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong mediaRequests = new AtomicLong();
+
+    public StubGraphApi(int port, Settings settings) throws IOException {
+        this.settings = settings;
+        this.server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+    }
+
+    public void start() {
+        server.start();
+        log.info("Stub Graph API listening on {} with {}", baseUrl(), settings);
+    }
+
+    public String baseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public long requestCount() {
+        return requests.get();
+    }
+
+    public long failureCount() {
+        return failures.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            requests.incrementAndGet();
+            if (settings.latencyMs() > 0) {
+                Thread.sleep(settings.latencyMs());
+            }
+            double roll = ThreadLocalRandom.current().nextDouble();
+            if (roll < settings.throttleRate()) {
+                failures.incrementAndGet();
+                respond(exchange, 400, error(4, "Application request limit reached"));
+                return;
+            }
+            if (roll < settings.throttleRate() + settings.errorRate()) {
+                failures.incrementAndGet();
+                respond(exchange, 500, error(2, "An unexpected error has occurred"));
+                return;
+            }
+            respond(exchange, 200, route(exchange));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("Stub failed on {}", exchange.getRequestURI(), e);
+            respond(exchange, 500, error(1, e.getMessage()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private JsonNode route(HttpExchange exchange) throws IOException {
+        if ("POST".equals(exchange.getRequestMethod())) {
+            String form = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            return batch(query(form).get("batch"));
+        }
+        return get(exchange.getRequestURI().getRawPath(), query(exchange.getRequestURI().getRawQuery()));
+    }
+
+    // Paths look like /v23.0/{id}, /v23.0/{id}/media or /v23.0/{id}/insights
+    private JsonNode get(String path, Map<String, String> params) {
+        String[] segments = path.replaceFirst("^/", "").split("/");
+        if (segments.length >= 2 && "oauth".equals(segments[1])) {
+            // Token exchange is not simulated; the backend logs the failure and keeps its token
+            throw new IllegalArgumentException("Token exchange is not supported by the stub");
+        }
+        String objectId = segments.length >= 2 ? segments[1] : "";
+        String edge = segments.length >= 3 ? segments[2] : "";
+        switch (edge) {
+            case "media":
+                return "STORY".equals(params.get("media_type")) ? stories(objectId) : mediaPage(objectId, params);
+            case "insights":
+                return insights(objectId, params.getOrDefault("metric", ""));
+            default:
+                ObjectNode account = objectMapper.createObjectNode();
+                account.put("followers_count", 90_000 + Math.floorMod(objectId.hashCode(), 10_000)
+                    + (int) (mediaRequests.get() / 10));
+                account.put("id", objectId);
+                return account;
+        }
+    }
+
+    private JsonNode mediaPage(String accountId, Map<String, String> params) {
+        long generation = mediaRequests.incrementAndGet();
+        int limit = Integer.parseInt(params.getOrDefault("limit", String.valueOf(DEFAULT_PAGE_SIZE)));
+        int offset = params.containsKey("after") ? Integer.parseInt(params.get("after")) : 0;
+        int end = Math.min(offset + limit, settings.mediaPerAccount());
+
+        ObjectNode page = objectMapper.createObjectNode();
+        ArrayNode data = page.putArray("data");
+        for (int i = offset; i < end; i++) {
+            data.add(post(accountId, i, generation));
+        }
+        ObjectNode paging = page.putObject("paging");
+        paging.putObject("cursors").put("before", String.valueOf(offset)).put("after", String.valueOf(end));
+        if (end < settings.mediaPerAccount()) {
+            paging.put("next", "stub");
+        }
+        return page;
+    }
+
+    private ObjectNode post(String accountId, int index, long generation) {
+        String mediaId = accountId + String.format("%05d", index);
+        int seed = Math.floorMod(mediaId.hashCode(), 1_000);
+        int likes = 100 + seed * 3 + (int) (generation % 1_000);
+        int comments = seed / 10;
+        int reach = 2_000 + seed * 40;
+
+        ObjectNode post = objectMapper.createObjectNode();
+        post.put("id", mediaId);
+        post.put("caption", "Synthetic post " + index + " of account " + accountId + " #loadtest");
+        post.put("media_type", index % 3 == 0 ? "VIDEO" : "IMAGE");
+        post.put("timestamp", NEWEST_POST.minusHours(19L * index).format(GraphApiTimestamps.FORMATTER));
+        post.put("permalink", "https://www.instagram.com/p/" + mediaId);
+        post.put("like_count", likes);
+        post.put("comments_count", comments);
+        // Every tenth post comes without inline insights so the batch fallback is exercised too
+        if (index % 10 != 9) {
+            ArrayNode insights = post.putObject("insights").putArray("data");
+            metric(insights, "reach", reach);
+            metric(insights, "impressions", reach * 3 / 2);
+            metric(insights, "saved", seed / 5);
+            metric(insights, "comments", comments);
+            metric(insights, "shares", seed / 8);
+            metric(insights, "likes", likes);
+        }
+        return post;
+    }
+
+    private JsonNode stories(String accountId) {
+        ObjectNode page = objectMapper.createObjectNode();
+        ObjectNode story = page.putArray("data").addObject();
+        story.put("id", accountId + "99999");
+        story.put("media_type", "STORY");
+        story.put("timestamp", NEWEST_POST.format(GraphApiTimestamps.FORMATTER));
+        ArrayNode insights = story.putObject("insights").putArray("data");
+        long generation = mediaRequests.get();
+        metric(insights, "replies", (int) (generation % 50));
+        metric(insights, "shares", (int) (generation % 30));
+        metric(insights, "impressions", 5_000 + (int) (generation % 500));
+        metric(insights, "profile_visits", 300 + (int) (generation % 100));
+        return page;
+    }
+
+    private JsonNode insights(String objectId, String metric) {
+        ObjectNode response = objectMapper.createObjectNode();
+        ArrayNode data = response.putArray("data");
+        int seed = Math.floorMod(objectId.hashCode(), 1_000);
+        if ("reach".equals(metric)) {
+            // Account reach, one value per day as requested with period=day
+            ObjectNode daily = data.addObject().put("name", "reach").put("period", "day");
+            ArrayNode values = daily.putArray("values");
+            LocalDate today = LocalDate.now();
+            for (int day = 30; day >= 0; day--) {
+                values.addObject()
+                    .put("value", 8_000 + seed * 20 + day * 97)
+                    .put("end_time", today.minusDays(day).atTime(7, 0).atZone(ZoneOffset.UTC).format(GraphApiTimestamps.FORMATTER));
+            }
+        } else if ("profile_views".equals(metric)) {
+            data.addObject().put("name", "profile_views").putObject("total_value")
+                .put("value", 1_000 + seed + (int) (mediaRequests.get() % 100));
+        } else {
+            // Per-post insights requested through the batch endpoint
+            for (String name : metric.split(",")) {
+                metric(data, name, 1_000 + seed * 10);
+            }
+        }
+        return response;
+    }
+
+    // Answers each relative_url in order, the way the Graph API batch endpoint does
+    private JsonNode batch(String batchJson) throws IOException {
+        ArrayNode results = objectMapper.createArrayNode();
+        if (batchJson == null) {
+            return results;
+        }
+        for (JsonNode request : objectMapper.readTree(batchJson)) {
+            String relativeUrl = request.path("relative_url").asText();
+            int query = relativeUrl.indexOf('?');
+            String path = "/" + (query >= 0 ? relativeUrl.substring(0, query) : relativeUrl);
+            JsonNode body = get(path, query(query >= 0 ? relativeUrl.substring(query + 1) : null));
+            results.addObject()
+                .put("code", 200)
+                .put("body", objectMapper.writeValueAsString(body));
+        }
+        return results;
+    }
+
+    private static void metric(ArrayNode data, String name, int value) {
+        ObjectNode metric = data.addObject();
+        metric.put("name", name);
+        metric.put("period", "lifetime");
+        metric.putArray("values").addObject().put("value", value);
+    }
+
+    private JsonNode error(int code, String message) {
+        ObjectNode body = objectMapper.createObjectNode();
+        body.putObject("error").put("code", code).put("message", message).put("type", "OAuthException");
+        return body;
+    }
+
+    private void respond(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.getResponseHeaders().set("X-App-Usage", "{\"call_count\":1,\"total_time\":1,\"total_cputime\":1}");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, String> query(String raw) {
+        Map<String, String> params = new HashMap<>();
+        if (raw == null || raw.isEmpty()) {
+            return params;
+        }
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+}